@@ -0,0 +1,56 @@
+package ma.emsi.ketoun.benchmarks;
+
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.DocumentSplitter;
+import dev.langchain4j.data.document.splitter.DocumentSplitters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+//DocumentSplitters.recursive sur un corpus synthetique ; chevauchement = 10% de la taille (300/30 dans le projet)
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BenchDecoupage {
+
+    @Param({"10", "100"})
+    public int nbDocuments;
+
+    @Param({"2000"})
+    public int motsParDocument;
+
+    @Param({"150", "300", "600"})
+    public int tailleSegment;
+
+    private List<Document> documents;
+    private DocumentSplitter splitter;
+
+    @Setup
+    public void preparer() {
+        documents = DonneesSynthetiques.documents(nbDocuments, motsParDocument, 42);
+        splitter = DocumentSplitters.recursive(tailleSegment, tailleSegment / 10);
+    }
+
+    @Benchmark
+    public int decouper() {
+        int segments = 0;
+        for (Document document : documents) {
+            segments += splitter.split(document).size();
+        }
+        return segments;
+    }
+}
@@ -0,0 +1,61 @@
+package ma.emsi.ketoun.benchmarks;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.data.document.splitter.DocumentSplitters;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.embedding.onnx.allminilml6v2.AllMiniLmL6V2EmbeddingModel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+//debit d'embedAll (AllMiniLmL6V2) en segments/s, pour 32 segments envoyes par lots de tailleLot
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class BenchEmbedding {
+
+    private static final int SEGMENTS = 32;
+
+    @Param({"1", "8", "32"})
+    public int tailleLot;
+
+    @Param({"150", "300", "600"})
+    public int tailleSegment;
+
+    private EmbeddingModel embeddingModel;
+    private List<TextSegment> segments;
+
+    @Setup
+    public void preparer() {
+        embeddingModel = new AllMiniLmL6V2EmbeddingModel();
+        segments = DocumentSplitters.recursive(tailleSegment, tailleSegment / 10)
+                .split(DonneesSynthetiques.documents(1, SEGMENTS * tailleSegment / 4, 7).get(0))
+                .subList(0, SEGMENTS);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SEGMENTS)
+    public void embedAll(Blackhole trou) {
+        for (int debut = 0; debut < SEGMENTS; debut += tailleLot) {
+            List<Embedding> embeddings = embeddingModel.embedAll(segments.subList(debut, Math.min(debut + tailleLot, SEGMENTS))).content();
+            trou.consume(embeddings);
+        }
+    }
+}
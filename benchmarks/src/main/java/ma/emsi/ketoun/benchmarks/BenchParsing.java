@@ -0,0 +1,46 @@
+package ma.emsi.ketoun.benchmarks;
+
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.DocumentParser;
+import dev.langchain4j.data.document.parser.apache.tika.ApacheTikaDocumentParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+
+//parsing Tika des PDF du projet, lus une fois en memoire pour ne pas mesurer le disque
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BenchParsing {
+
+    @Param({"rag.pdf", "autre.pdf"})
+    public String fichier;
+
+    private byte[] octets;
+    private DocumentParser parser;
+
+    @Setup
+    public void preparer() {
+        octets = DonneesSynthetiques.ressource(fichier);
+        parser = new ApacheTikaDocumentParser();
+    }
+
+    @Benchmark
+    public Document parser() {
+        return parser.parse(new ByteArrayInputStream(octets));
+    }
+}
@@ -0,0 +1,102 @@
+package ma.emsi.ketoun.benchmarks;
+
+import dev.langchain4j.data.document.splitter.DocumentSplitters;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.embedding.onnx.allminilml6v2.AllMiniLmL6V2EmbeddingModel;
+import dev.langchain4j.rag.AugmentationRequest;
+import dev.langchain4j.rag.AugmentationResult;
+import dev.langchain4j.rag.DefaultRetrievalAugmentor;
+import dev.langchain4j.rag.RetrievalAugmentor;
+import dev.langchain4j.rag.content.retriever.EmbeddingStoreContentRetriever;
+import dev.langchain4j.rag.query.Metadata;
+import dev.langchain4j.service.AiServices;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
+import ma.emsi.ketoun.Interfaces.Assistant;
+import ma.emsi.ketoun.store.FloatArrayEmbeddingStore;
+import ma.emsi.ketoun.util.ChatModelFactice;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+//chaine RAG complete de RagNaif hors reseau : embedding de la question, recherche, injection, modele factice sans latence
+//augmenter = DefaultRetrievalAugmentor seul, assistant = AiServices complet (prompt, appel du modele, reponse)
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BenchRag {
+
+    @Param({"1000", "5000"})
+    public int nbSegments;
+
+    @Param({"memoire", "tableau"})
+    public String implementation;
+
+    private RetrievalAugmentor retrievalAugmentor;
+    private Assistant assistant;
+    private int suivante;
+
+    @Setup
+    public void preparer() {
+        EmbeddingModel embeddingModel = new AllMiniLmL6V2EmbeddingModel();
+        EmbeddingStore<TextSegment> embeddingStore = "memoire".equals(implementation)
+                ? new InMemoryEmbeddingStore<>()
+                : new FloatArrayEmbeddingStore();
+
+        //corpus synthetique decoupe comme le projet (300/30), embedde une seule fois
+        List<TextSegment> segments = DonneesSynthetiques.documents(nbSegments / 10 + 1, 500, 42).stream()
+                .flatMap(document -> DocumentSplitters.recursive(300, 30).split(document).stream())
+                .limit(nbSegments)
+                .toList();
+        List<Embedding> embeddings = embeddingModel.embedAll(segments).content();
+        embeddingStore.addAll(embeddings, segments);
+
+        retrievalAugmentor = DefaultRetrievalAugmentor.builder()
+                .contentRetriever(EmbeddingStoreContentRetriever.builder()
+                        .embeddingStore(embeddingStore)
+                        .embeddingModel(embeddingModel)
+                        .maxResults(2)
+                        .minScore(0.5)
+                        .build())
+                .build();
+
+        assistant = AiServices.builder(Assistant.class)
+                .chatModel(new ChatModelFactice(Duration.ZERO))
+                .retrievalAugmentor(retrievalAugmentor)
+                .build();
+    }
+
+    @Benchmark
+    public AugmentationResult augmenter() {
+        UserMessage message = UserMessage.from(question());
+        return retrievalAugmentor.augment(new AugmentationRequest(message, Metadata.from(message, null, List.of())));
+    }
+
+    @Benchmark
+    public String assistant() {
+        return assistant.chat(question());
+    }
+
+    private String question() {
+        suivante = (suivante + 1) % DonneesSynthetiques.QUESTIONS.size();
+        return DonneesSynthetiques.QUESTIONS.get(suivante);
+    }
+}
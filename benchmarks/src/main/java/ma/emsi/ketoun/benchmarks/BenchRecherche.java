@@ -0,0 +1,83 @@
+package ma.emsi.ketoun.benchmarks;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingSearchResult;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
+import ma.emsi.ketoun.store.FloatArrayEmbeddingStore;
+import ma.emsi.ketoun.store.ShardedEmbeddingStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+//recherche exacte top-5 sur des vecteurs aleatoires de dimension 384 (MiniLM)
+//"memoire" = InMemoryEmbeddingStore de langchain4j, "tableau" = FloatArrayEmbeddingStore du projet,
+//"fragmente" = ShardedEmbeddingStore avec un fragment par coeur
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class BenchRecherche {
+
+    private static final int DIMENSION = FloatArrayEmbeddingStore.DIMENSION_MINILM;
+    private static final int REQUETES = 64;
+
+    @Param({"10000", "100000", "1000000"})
+    public int nbVecteurs;
+
+    @Param({"memoire", "tableau", "fragmente"})
+    public String implementation;
+
+    private EmbeddingStore<TextSegment> embeddingStore;
+    private EmbeddingSearchRequest[] requetes;
+    private int suivante;
+
+    @Setup
+    public void preparer() {
+        embeddingStore = switch (implementation) {
+            case "memoire" -> new InMemoryEmbeddingStore<>();
+            case "fragmente" -> ShardedEmbeddingStore.builder().build();
+            default -> new FloatArrayEmbeddingStore(DIMENSION, nbVecteurs);
+        };
+        //ajout par tranches pour ne pas garder deux copies du corpus
+        int tranche = 10_000;
+        for (int debut = 0; debut < nbVecteurs; debut += tranche) {
+            float[][] vecteurs = DonneesSynthetiques.vecteurs(Math.min(tranche, nbVecteurs - debut), DIMENSION, debut);
+            List<Embedding> embeddings = new ArrayList<>(vecteurs.length);
+            for (float[] vecteur : vecteurs) {
+                embeddings.add(Embedding.from(vecteur));
+            }
+            embeddingStore.addAll(embeddings);
+        }
+        float[][] vecteursRequetes = DonneesSynthetiques.vecteurs(REQUETES, DIMENSION, -1);
+        requetes = new EmbeddingSearchRequest[REQUETES];
+        for (int i = 0; i < REQUETES; i++) {
+            requetes[i] = EmbeddingSearchRequest.builder()
+                    .queryEmbedding(Embedding.from(vecteursRequetes[i]))
+                    .maxResults(5)
+                    .build();
+        }
+    }
+
+    @Benchmark
+    public EmbeddingSearchResult<TextSegment> rechercher() {
+        suivante = (suivante + 1) % REQUETES;
+        return embeddingStore.search(requetes[suivante]);
+    }
+}
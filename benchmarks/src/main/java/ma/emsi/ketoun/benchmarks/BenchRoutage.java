@@ -0,0 +1,79 @@
+package ma.emsi.ketoun.benchmarks;
+
+import dev.langchain4j.model.embedding.onnx.allminilml6v2.AllMiniLmL6V2EmbeddingModel;
+import dev.langchain4j.rag.content.retriever.ContentRetriever;
+import dev.langchain4j.rag.query.Query;
+import dev.langchain4j.rag.query.router.LanguageModelQueryRouter;
+import dev.langchain4j.rag.query.router.QueryRouter;
+import ma.emsi.ketoun.cache.EmbeddingModelEnCache;
+import ma.emsi.ketoun.routage.RouteurEmbeddings;
+import ma.emsi.ketoun.util.ChatModelFactice;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+//routage de TestRoutage : routeur local par embeddings contre LanguageModelQueryRouter sur le modele factice
+//(le second ne mesure que le cout local du routage LLM, sans la latence reseau de Gemini)
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BenchRoutage {
+
+    private QueryRouter routeurEmbeddings;
+    private QueryRouter routeurLlm;
+    private int suivante;
+
+    @Setup
+    public void preparer() {
+        ContentRetriever retrieverIa = query -> List.of();
+        ContentRetriever retrieverOracle = query -> List.of();
+        Map<ContentRetriever, String> retrieverDescriptions = new LinkedHashMap<>();
+        retrieverDescriptions.put(retrieverIa,
+                "Ce retriever contient des informations sur l'intelligence artificielle, " +
+                        "le RAG (Retrieval Augmented Generation), " +
+                        "les embeddings et les modèles de langage.");
+        retrieverDescriptions.put(retrieverOracle, "Ce retriever contient des informations sur une certif oracle. ");
+
+        //le modele factice ne renvoie pas de numero de retriever : repli sur tous les retrievers
+        routeurLlm = new LanguageModelQueryRouter(new ChatModelFactice(Duration.ZERO), retrieverDescriptions,
+                LanguageModelQueryRouter.DEFAULT_PROMPT_TEMPLATE, LanguageModelQueryRouter.FallbackStrategy.ROUTE_TO_ALL);
+        //cache de requetes plus petit que le jeu de questions : chaque appel paie l'embedding
+        routeurEmbeddings = RouteurEmbeddings.builder()
+                .embeddingModel(new EmbeddingModelEnCache(new AllMiniLmL6V2EmbeddingModel(), 1))
+                .retrieverDescriptions(retrieverDescriptions)
+                .repli(routeurLlm)
+                .build();
+    }
+
+    @Benchmark
+    public Collection<ContentRetriever> embeddings() {
+        return routeurEmbeddings.route(Query.from(question()));
+    }
+
+    @Benchmark
+    public Collection<ContentRetriever> llmFactice() {
+        return routeurLlm.route(Query.from(question()));
+    }
+
+    private String question() {
+        suivante = (suivante + 1) % DonneesSynthetiques.QUESTIONS.size();
+        return DonneesSynthetiques.QUESTIONS.get(suivante);
+    }
+}
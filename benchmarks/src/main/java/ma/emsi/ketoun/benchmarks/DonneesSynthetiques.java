@@ -0,0 +1,99 @@
+package ma.emsi.ketoun.benchmarks;
+
+import dev.langchain4j.data.document.Document;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+//donnees reproductibles pour les benchmarks : aucun fichier ni reseau en dehors des PDF du projet
+final class DonneesSynthetiques {
+
+    private static final String[] VOCABULAIRE = {
+            "le", "la", "les", "un", "une", "des", "et", "ou", "dans", "pour", "avec", "sur", "par", "est", "sont",
+            "modele", "langage", "recherche", "generation", "document", "segment", "embedding", "vecteur", "requete",
+            "reponse", "contexte", "index", "similarite", "cosinus", "retriever", "routeur", "memoire", "assistant",
+            "question", "donnees", "apprentissage", "reseau", "neurones", "attention", "transformeur", "token",
+            "certification", "oracle", "java", "classe", "interface", "methode", "exception", "collection", "flux",
+            "performance", "latence", "debit", "cache", "parallele", "thread", "lot", "pipeline", "evaluation"
+    };
+
+    static final List<String> QUESTIONS = List.of(
+            "Qu'est-ce que le RAG ?",
+            "Comment fonctionnent les embeddings ?",
+            "A quoi sert un retriever ?",
+            "Quelle est la difference entre recherche et generation ?",
+            "Comment mesurer la similarite cosinus ?",
+            "Que contient la certification Oracle Java ?",
+            "Comment gerer les exceptions en Java ?",
+            "Qu'est-ce qu'un modele de langage ?",
+            "Comment reduire la latence d'un pipeline ?",
+            "A quoi sert la memoire de l'assistant ?",
+            "Quelle est la capitale de la France ?",
+            "Comment fonctionne l'attention dans un transformeur ?",
+            "Pourquoi decouper les documents en segments ?",
+            "Comment evaluer un systeme de recherche ?",
+            "Qu'est-ce qu'une interface en Java ?",
+            "Comment paralleliser l'indexation ?"
+    );
+
+    private DonneesSynthetiques() {
+    }
+
+    //phrases de 8 a 20 mots, paragraphes de 3 a 8 phrases
+    static List<Document> documents(int nombre, int motsParDocument, long graine) {
+        Random aleatoire = new Random(graine);
+        List<Document> documents = new ArrayList<>(nombre);
+        for (int d = 0; d < nombre; d++) {
+            StringBuilder texte = new StringBuilder(motsParDocument * 8);
+            int mots = 0;
+            while (mots < motsParDocument) {
+                int phrases = 3 + aleatoire.nextInt(6);
+                for (int p = 0; p < phrases && mots < motsParDocument; p++) {
+                    int longueur = 8 + aleatoire.nextInt(13);
+                    for (int m = 0; m < longueur; m++) {
+                        String mot = VOCABULAIRE[aleatoire.nextInt(VOCABULAIRE.length)];
+                        texte.append(m == 0 ? Character.toUpperCase(mot.charAt(0)) + mot.substring(1) : mot);
+                        texte.append(m == longueur - 1 ? ". " : " ");
+                    }
+                    mots += longueur;
+                }
+                texte.append("\n\n");
+            }
+            documents.add(Document.from(texte.toString()));
+        }
+        return documents;
+    }
+
+    //vecteurs gaussiens normalises
+    static float[][] vecteurs(int nombre, int dimension, long graine) {
+        Random aleatoire = new Random(graine);
+        float[][] vecteurs = new float[nombre][dimension];
+        for (float[] vecteur : vecteurs) {
+            double norme = 0;
+            for (int j = 0; j < dimension; j++) {
+                vecteur[j] = (float) aleatoire.nextGaussian();
+                norme += vecteur[j] * vecteur[j];
+            }
+            float inverse = (float) (1 / Math.sqrt(norme));
+            for (int j = 0; j < dimension; j++) {
+                vecteur[j] *= inverse;
+            }
+        }
+        return vecteurs;
+    }
+
+    static byte[] ressource(String nom) {
+        try (InputStream in = DonneesSynthetiques.class.getResourceAsStream("/" + nom)) {
+            if (in == null) {
+                throw new IllegalStateException("Impossible de trouver la ressource " + nom);
+            }
+            return in.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,28 @@
+#!/usr/bin/env bash
+# Archive AppCDS de ServeurRag : les classes du projet, de langchain4j, ONNX, Tika... sont chargees et verifiees
+# une fois pendant un run d'entrainement, puis mappees telles quelles par les demarrages suivants.
+#
+#   ./cds.sh            construit target/serveur-rag.jar puis target/serveur-rag.jsa
+#   ./cds.sh lancer     lance le serveur avec l'archive (arguments suivants passes a ServeurRag)
+#
+# L'archive est liee au jar et a la JVM qui l'ont produite : a refaire apres chaque build ou changement de JDK
+# (la JVM l'ignore avec un avertissement sinon, le serveur demarre alors sans).
+set -euo pipefail
+cd "$(dirname "$0")"
+
+JAR=target/serveur-rag.jar
+ARCHIVE=target/serveur-rag.jsa
+
+if [[ "${1:-}" == "lancer" ]]; then
+    shift
+    exec java -XX:SharedArchiveFile="$ARCHIVE" -Xshare:auto -jar "$JAR" "$@"
+fi
+
+mvn -B -q -Pcds package -DskipTests
+
+# run d'entrainement : modele local, port libre ; ServeurRag quitte une fois prechauffe et l'archive est ecrite
+# a la sortie de la JVM
+rm -f "$ARCHIVE"
+java -XX:ArchiveClassesAtExit="$ARCHIVE" -Xlog:cds=error -jar "$JAR" 0 --factice --entrainement
+
+echo "Archive ecrite dans $ARCHIVE ($(du -h "$ARCHIVE" | cut -f1)) ; lancement : ./cds.sh lancer [port]"
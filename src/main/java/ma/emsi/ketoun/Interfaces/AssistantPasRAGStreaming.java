@@ -0,0 +1,9 @@
+package ma.emsi.ketoun.Interfaces;
+
+import dev.langchain4j.service.SystemMessage;
+import dev.langchain4j.service.TokenStream;
+
+public interface AssistantPasRAGStreaming {
+    @SystemMessage(AssistantPasRAG.PROMPT_SYSTEME)
+    TokenStream chat(String userMessage);
+}
\ No newline at end of file
@@ -0,0 +1,10 @@
+package ma.emsi.ketoun.Interfaces;
+
+import dev.langchain4j.service.MemoryId;
+import dev.langchain4j.service.UserMessage;
+import dev.langchain4j.service.memory.ChatMemoryAccess;
+
+//ChatMemoryAccess : evictChatMemory retire une session de la table des memoires d'AiServices
+public interface AssistantSession extends ChatMemoryAccess {
+    String chat(@MemoryId String session, @UserMessage String userMessage);
+}
@@ -0,0 +1,7 @@
+package ma.emsi.ketoun.Interfaces;
+
+import dev.langchain4j.service.TokenStream;
+
+public interface AssistantStreaming {
+    TokenStream chat(String userMessage);
+}
\ No newline at end of file
@@ -0,0 +1,171 @@
+package ma.emsi.ketoun.cache;
+
+import dev.langchain4j.data.document.DocumentSplitter;
+import dev.langchain4j.data.document.loader.FileSystemDocumentLoader;
+import dev.langchain4j.data.document.parser.apache.tika.ApacheTikaDocumentParser;
+import dev.langchain4j.data.document.splitter.DocumentSplitters;
+import dev.langchain4j.data.segment.TextSegment;
+import ma.emsi.ketoun.ingestion.DecoupeurEnFlux;
+import ma.emsi.ketoun.store.IndexEmbeddings;
+import ma.emsi.ketoun.util.Hachage;
+import ma.emsi.ketoun.util.SegmentsBinaires;
+import org.apache.pdfbox.Loader;
+import org.apache.tika.parser.AutoDetectParser;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.CodeSource;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.Properties;
+
+//cache local des segments decoupes d'un document : evite de repasser par Tika a chaque demarrage
+//  entete (magique, version, cle, nombre) | segments encodes par SegmentsBinaires
+//la cle couvre le contenu du fichier, les versions du parser et les parametres du splitter :
+//si l'un change, le document est reparse et le cache reecrit
+public final class CacheSegments {
+
+    private static final int MAGIQUE = 0x54503453; // "TP4S"
+    private static final int VERSION = 1;
+    private static final int TAILLE_CLE = 32;
+    private static final int TAILLE_ENTETE = 4 + 4 + TAILLE_CLE + 4;
+
+    //au-dela, le parse se fait en flux (voir DecoupeurEnFlux)
+    private static final long SEUIL_FLUX = 64L * 1024 * 1024;
+
+    private static final String VERSION_PARSER = versionDe(AutoDetectParser.class, "org.apache.tika", "tika-core")
+            + "|" + versionDe(Loader.class, "org.apache.pdfbox", "pdfbox")
+            + "|" + versionDe(ApacheTikaDocumentParser.class, "dev.langchain4j", "langchain4j-document-parser-apache-tika");
+
+    private CacheSegments() {
+    }
+
+    public static List<TextSegment> chargerOuDecouper(Path source, int tailleSegment, int chevauchement) {
+        byte[] cle = cle(source, tailleSegment, chevauchement);
+        Path fichier = fichier(source);
+
+        Optional<List<TextSegment>> existants = charger(fichier, cle);
+        if (existants.isPresent()) {
+            return existants.get();
+        }
+        long debut = System.nanoTime();
+        List<TextSegment> segments = decouper(source, DocumentSplitters.recursive(tailleSegment, chevauchement));
+        System.out.printf("Decoupage de %s : %d segments en %.0f ms%n",
+                source.getFileName(), segments.size(), (System.nanoTime() - debut) / 1e6);
+        ecrire(fichier, cle, segments);
+        return segments;
+    }
+
+    //le nom seul ne suffit pas : deux rag.pdf de repertoires differents s'ecraseraient l'un l'autre
+    public static Path fichier(Path source) {
+        String chemin = Hachage.hex(Hachage.sha256(source.toAbsolutePath().normalize().toString())).substring(0, 16);
+        return IndexEmbeddings.repertoire().resolve(source.getFileName() + "-" + chemin + ".seg");
+    }
+
+    public static Optional<List<TextSegment>> charger(Path fichier, byte[] cle) {
+        if (!Files.isRegularFile(fichier)) {
+            return Optional.empty();
+        }
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(fichier));
+            if (buffer.remaining() < TAILLE_ENTETE || buffer.getInt() != MAGIQUE || buffer.getInt() != VERSION) {
+                return Optional.empty();
+            }
+            byte[] cleFichier = new byte[TAILLE_CLE];
+            buffer.get(cleFichier);
+            if (!Arrays.equals(cleFichier, cle)) {
+                return Optional.empty();
+            }
+            int nombre = buffer.getInt();
+            //un nombre aberrant (fichier abime) ne doit pas provoquer une allocation geante
+            if (nombre < 0 || nombre > buffer.remaining()) {
+                return Optional.empty();
+            }
+            List<TextSegment> segments = new ArrayList<>(nombre);
+            for (int i = 0; i < nombre; i++) {
+                segments.add(SegmentsBinaires.lire(buffer));
+            }
+            return Optional.of(segments);
+        } catch (IOException | RuntimeException e) {
+            //fichier tronque ou corrompu : on repasse par le parse complet
+            return Optional.empty();
+        }
+    }
+
+    //fichier temporaire puis renommage, comme pour les index d'embeddings
+    public static void ecrire(Path fichier, byte[] cle, List<TextSegment> segments) {
+        try {
+            Files.createDirectories(fichier.toAbsolutePath().getParent());
+            Path temporaire = Files.createTempFile(fichier.toAbsolutePath().getParent(), "segments", ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporaire)))) {
+                out.writeInt(MAGIQUE);
+                out.writeInt(VERSION);
+                out.write(cle);
+                out.writeInt(segments.size());
+                for (TextSegment segment : segments) {
+                    SegmentsBinaires.ecrire(segment, out);
+                }
+            }
+            Files.move(temporaire, fichier, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static byte[] cle(Path source, int tailleSegment, int chevauchement) {
+        String signature = Hachage.hex(Hachage.sha256(source))
+                + "|" + VERSION_PARSER
+                + "|recursive(" + tailleSegment + "," + chevauchement + ")";
+        return Hachage.sha256(signature);
+    }
+
+    private static List<TextSegment> decouper(Path source, DocumentSplitter splitter) {
+        try {
+            if (Files.size(source) >= SEUIL_FLUX) {
+                List<TextSegment> segments = new ArrayList<>();
+                new DecoupeurEnFlux(splitter).decouper(source, segments::add);
+                return segments;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return splitter.split(FileSystemDocumentLoader.loadDocument(source, new ApacheTikaDocumentParser()));
+    }
+
+    //version Maven (pom.properties, garde par le jar unique du profil cds ou le manifeste ne decrit plus que
+    //l'application), a defaut celle du manifeste, a defaut le nom du jar
+    private static String versionDe(Class<?> classe, String groupe, String artefact) {
+        String ressource = "META-INF/maven/" + groupe + "/" + artefact + "/pom.properties";
+        try (InputStream entree = classe.getClassLoader().getResourceAsStream(ressource)) {
+            if (entree != null) {
+                Properties proprietes = new Properties();
+                proprietes.load(entree);
+                String version = proprietes.getProperty("version");
+                if (version != null) {
+                    return groupe + ":" + artefact + " " + version;
+                }
+            }
+        } catch (IOException e) {
+            //illisible : on se rabat sur le manifeste
+        }
+        String version = classe.getPackage().getImplementationVersion();
+        if (version != null) {
+            return classe.getPackageName() + " " + version;
+        }
+        CodeSource source = classe.getProtectionDomain().getCodeSource();
+        if (source == null) {
+            return classe.getName();
+        }
+        String chemin = source.getLocation().getPath();
+        return chemin.substring(chemin.lastIndexOf('/', chemin.length() - 2) + 1);
+    }
+}
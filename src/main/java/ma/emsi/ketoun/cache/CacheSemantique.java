@@ -0,0 +1,188 @@
+package ma.emsi.ketoun.cache;
+
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import ma.emsi.ketoun.store.MappedEmbeddingStore;
+import ma.emsi.ketoun.store.Vecteurs;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+//cache de reponses devant l'assistant : une question proche (cosinus >= seuil) d'une question deja posee,
+//sur le meme index, reprend la reponse sans rappeler Gemini
+//usage : Assistant assistantCache = question -> cache.repondre(question, assistant::chat);
+//reserve aux assistants sans memoire de chat : la reponse ne depend alors que de la question et de l'index
+//(avec memoire, "et le second ?" n'a pas le meme sens d'une conversation a l'autre, et un hit sauterait la memoire)
+public class CacheSemantique {
+
+    private final EmbeddingModel embeddingModel;
+    private final double seuil;
+    private final Duration ttl;
+    private final int tailleMax;
+    private final Function<String, String> empreinteContexte;
+    private final Clock horloge;
+
+    //ordre d'acces : l'entree la moins recemment utilisee est en tete et part en premier
+    private final LinkedHashMap<Long, Entree> entrees = new LinkedHashMap<>(16, 0.75f, true);
+    private long prochainId;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    private CacheSemantique(Builder builder) {
+        this.embeddingModel = builder.embeddingModel;
+        this.seuil = builder.seuil;
+        this.ttl = builder.ttl;
+        this.tailleMax = builder.tailleMax;
+        this.empreinteContexte = builder.empreinteContexte;
+        this.horloge = builder.horloge;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public String repondre(String question, UnaryOperator<String> appel) {
+        float[] vecteur = Vecteurs.normaliser(embeddingModel.embed(question).content().vector());
+        String empreinte = empreinteContexte.apply(question);
+
+        String enCache = chercher(vecteur, empreinte);
+        if (enCache != null) {
+            hits.incrementAndGet();
+            return enCache;
+        }
+        misses.incrementAndGet();
+
+        //appel au modele hors verrou
+        String reponse = appel.apply(question);
+        ajouter(vecteur, empreinte, reponse);
+        return reponse;
+    }
+
+    public long hits() {
+        return hits.get();
+    }
+
+    public long misses() {
+        return misses.get();
+    }
+
+    public synchronized int taille() {
+        return entrees.size();
+    }
+
+    public synchronized void vider() {
+        entrees.clear();
+    }
+
+    private synchronized String chercher(float[] vecteur, String empreinte) {
+        long maintenant = horloge.millis();
+        Long meilleurId = null;
+        float meilleure = -2;
+        Iterator<Map.Entry<Long, Entree>> iterateur = entrees.entrySet().iterator();
+        while (iterateur.hasNext()) {
+            Map.Entry<Long, Entree> e = iterateur.next();
+            Entree entree = e.getValue();
+            if (entree.expiration() <= maintenant) {
+                iterateur.remove();
+                continue;
+            }
+            if (!entree.empreinte().equals(empreinte)) {
+                continue;
+            }
+            float similarite = Vecteurs.produitScalaire(vecteur, 0, entree.vecteur(), 0, vecteur.length);
+            if (similarite >= seuil && similarite > meilleure) {
+                meilleure = similarite;
+                meilleurId = e.getKey();
+            }
+        }
+        //get() remonte l'entree en fin de liste LRU
+        return meilleurId == null ? null : entrees.get(meilleurId).reponse();
+    }
+
+    private synchronized void ajouter(float[] vecteur, String empreinte, String reponse) {
+        entrees.put(prochainId++, new Entree(vecteur, empreinte, reponse, horloge.millis() + ttl.toMillis()));
+        Iterator<Long> plusAnciens = entrees.keySet().iterator();
+        while (entrees.size() > tailleMax && plusAnciens.hasNext()) {
+            plusAnciens.next();
+            plusAnciens.remove();
+        }
+    }
+
+    //empreinte du contexte : versions des index interroges, calculee une fois (les index mappes sont immuables)
+    //apres une reindexation la version change, donc les anciennes reponses ne sont plus servies
+    public static Function<String, String> empreinteStores(List<MappedEmbeddingStore> stores) {
+        StringBuilder versions = new StringBuilder();
+        for (MappedEmbeddingStore store : stores) {
+            versions.append(store.version()).append('|');
+        }
+        String empreinte = versions.toString();
+        return question -> empreinte;
+    }
+
+    private record Entree(float[] vecteur, String empreinte, String reponse, long expiration) {
+    }
+
+    public static class Builder {
+
+        private EmbeddingModel embeddingModel;
+        private double seuil = 0.95;
+        private Duration ttl = Duration.ofHours(1);
+        private int tailleMax = 1000;
+        private Function<String, String> empreinteContexte = question -> "";
+        private Clock horloge = Clock.systemUTC();
+
+        public Builder embeddingModel(EmbeddingModel embeddingModel) {
+            this.embeddingModel = embeddingModel;
+            return this;
+        }
+
+        //similarite cosinus minimale entre deux questions pour reutiliser la reponse
+        public Builder seuil(double seuil) {
+            this.seuil = seuil;
+            return this;
+        }
+
+        public Builder ttl(Duration ttl) {
+            this.ttl = ttl;
+            return this;
+        }
+
+        public Builder tailleMax(int tailleMax) {
+            this.tailleMax = tailleMax;
+            return this;
+        }
+
+        public Builder empreinteContexte(Function<String, String> empreinteContexte) {
+            this.empreinteContexte = empreinteContexte;
+            return this;
+        }
+
+        //stores interroges par l'assistant
+        public Builder stores(List<MappedEmbeddingStore> stores) {
+            this.empreinteContexte = empreinteStores(stores);
+            return this;
+        }
+
+        public Builder horloge(Clock horloge) {
+            this.horloge = horloge;
+            return this;
+        }
+
+        public CacheSemantique build() {
+            if (embeddingModel == null) {
+                throw new IllegalArgumentException("embeddingModel est obligatoire");
+            }
+            if (tailleMax < 1 || ttl.isNegative() || ttl.isZero()) {
+                throw new IllegalArgumentException("tailleMax et ttl doivent etre positifs");
+            }
+            return new CacheSemantique(this);
+        }
+    }
+}
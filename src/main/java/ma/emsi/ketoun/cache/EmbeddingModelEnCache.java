@@ -0,0 +1,97 @@
+package ma.emsi.ketoun.cache;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import ma.emsi.ketoun.metriques.MetriquesRag;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+//decorateur d'EmbeddingModel avec cache LRU borne, cle = texte
+//a partager entre tous les retrievers (et le routage) d'une meme question : un seul passage ONNX au lieu de N
+//a reserver aux requetes : l'indexation des documents passe par le modele brut pour ne pas vider le cache
+public class EmbeddingModelEnCache implements EmbeddingModel {
+
+    private final EmbeddingModel delegue;
+    private final int tailleMax;
+    private final LinkedHashMap<String, Embedding> cache;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public EmbeddingModelEnCache(EmbeddingModel delegue, int tailleMax) {
+        this.delegue = delegue;
+        this.tailleMax = tailleMax;
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Embedding> plusAncienne) {
+                return size() > EmbeddingModelEnCache.this.tailleMax;
+            }
+        };
+    }
+
+    @Override
+    public Response<List<Embedding>> embedAll(List<TextSegment> textSegments) {
+        long debut = System.nanoTime();
+        Embedding[] resultats = new Embedding[textSegments.size()];
+        List<TextSegment> manquants = new ArrayList<>();
+        List<Integer> positionsManquantes = new ArrayList<>();
+
+        synchronized (cache) {
+            for (int i = 0; i < textSegments.size(); i++) {
+                Embedding embedding = cache.get(textSegments.get(i).text());
+                if (embedding != null) {
+                    resultats[i] = embedding;
+                } else {
+                    manquants.add(textSegments.get(i));
+                    positionsManquantes.add(i);
+                }
+            }
+        }
+        hits.addAndGet(textSegments.size() - manquants.size());
+        MetriquesRag.EMBEDDING_CACHE_HITS.ajouter(textSegments.size() - manquants.size());
+        misses.addAndGet(manquants.size());
+
+        //les textes absents partent en un seul lot, hors verrou
+        if (!manquants.isEmpty()) {
+            List<Embedding> calcules = delegue.embedAll(manquants).content();
+            synchronized (cache) {
+                for (int j = 0; j < calcules.size(); j++) {
+                    resultats[positionsManquantes.get(j)] = calcules.get(j);
+                    cache.put(manquants.get(j).text(), calcules.get(j));
+                }
+            }
+        }
+        MetriquesRag.EMBEDDING_REQUETE.enregistrerDepuis(debut);
+        return Response.from(Arrays.asList(resultats));
+    }
+
+    @Override
+    public int dimension() {
+        return delegue.dimension();
+    }
+
+    public long hits() {
+        return hits.get();
+    }
+
+    public long misses() {
+        return misses.get();
+    }
+
+    public double tauxHits() {
+        long total = hits.get() + misses.get();
+        return total == 0 ? 0 : (double) hits.get() / total;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("EmbeddingModelEnCache[hits=%d, misses=%d, taux=%.2f]", hits(), misses(), tauxHits());
+    }
+}
@@ -0,0 +1,396 @@
+package ma.emsi.ketoun.cache;
+
+import dev.langchain4j.web.search.WebSearchEngine;
+import dev.langchain4j.web.search.WebSearchInformationResult;
+import dev.langchain4j.web.search.WebSearchOrganicResult;
+import dev.langchain4j.web.search.WebSearchRequest;
+import dev.langchain4j.web.search.WebSearchResults;
+import ma.emsi.ketoun.metriques.MetriquesRag;
+import ma.emsi.ketoun.util.Hachage;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.text.Normalizer;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+//decorateur de WebSearchEngine (Tavily) : la recherche web est la dependance la plus lente et la plus limitee
+//  - cache memoire LRU borne, avec duree de vie, cle = requete normalisee (casse, accents, espaces, ponctuation finale)
+//    + parametres de la requete
+//  - une seule recherche en vol par cle : les appels simultanes identiques attendent le meme resultat
+//  - niveau disque optionnel (un fichier par cle) qui survit aux redemarrages, borne a tailleMaxDisque fichiers
+//    (les plus anciens partent en premier) ; un fichier expire ou abime est supprime des qu'il est lu
+//les erreurs ne sont jamais mises en cache
+public class WebSearchEngineEnCache implements WebSearchEngine {
+
+    private static final int MAGIQUE = 0x54503457; // "TP4W"
+
+    private final WebSearchEngine delegue;
+    private final Duration ttl;
+    private final int tailleMax;
+    private final int tailleMaxDisque;
+    private final Path repertoire;
+    private final Clock horloge;
+
+    private final LinkedHashMap<String, Entree> cache;
+    private final ConcurrentHashMap<String, CompletableFuture<WebSearchResults>> enVol = new ConcurrentHashMap<>();
+    private final Object verrouDisque = new Object();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong hitsDisque = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong coalescees = new AtomicLong();
+
+    private WebSearchEngineEnCache(Builder builder) {
+        this.delegue = builder.delegue;
+        this.ttl = builder.ttl;
+        this.tailleMax = builder.tailleMax;
+        this.tailleMaxDisque = builder.tailleMaxDisque;
+        this.repertoire = builder.repertoire;
+        this.horloge = builder.horloge;
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entree> plusAncienne) {
+                return size() > WebSearchEngineEnCache.this.tailleMax;
+            }
+        };
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public WebSearchResults search(WebSearchRequest webSearchRequest) {
+        long debut = System.nanoTime();
+        String cle = cle(webSearchRequest);
+        long maintenant = horloge.millis();
+
+        WebSearchResults enMemoire = lireMemoire(cle, maintenant);
+        if (enMemoire != null) {
+            hits.incrementAndGet();
+            MetriquesRag.WEB_CACHE_HITS.incrementer();
+            MetriquesRag.WEB_RECHERCHE.enregistrerDepuis(debut);
+            return enMemoire;
+        }
+
+        CompletableFuture<WebSearchResults> nouvelle = new CompletableFuture<>();
+        CompletableFuture<WebSearchResults> existante = enVol.putIfAbsent(cle, nouvelle);
+        if (existante != null) {
+            coalescees.incrementAndGet();
+            MetriquesRag.WEB_COALESCEES.incrementer();
+            try {
+                return existante.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof Error erreur) {
+                    throw erreur;
+                }
+                throw e.getCause() instanceof RuntimeException cause ? cause : e;
+            } finally {
+                MetriquesRag.WEB_RECHERCHE.enregistrerDepuis(debut);
+            }
+        }
+
+        //ce thread est le seul a chercher cette cle
+        try {
+            //un meneur precedent a pu remplir la memoire et liberer la cle entre notre lecture et putIfAbsent
+            WebSearchResults entreTemps = lireMemoire(cle, maintenant);
+            if (entreTemps != null) {
+                hits.incrementAndGet();
+                MetriquesRag.WEB_CACHE_HITS.incrementer();
+                nouvelle.complete(entreTemps);
+                return entreTemps;
+            }
+            Entree entree = lireDisque(cle, maintenant);
+            if (entree != null) {
+                hitsDisque.incrementAndGet();
+                MetriquesRag.WEB_CACHE_HITS.incrementer();
+            } else {
+                misses.incrementAndGet();
+                entree = new Entree(delegue.search(webSearchRequest), maintenant + ttl.toMillis());
+                ecrireDisque(cle, entree);
+            }
+            synchronized (cache) {
+                cache.put(cle, entree);
+            }
+            nouvelle.complete(entree.resultats());
+            return entree.resultats();
+        } catch (Throwable e) {
+            //Error comprise : les appels en attente sur cette cle ne doivent pas rester bloques
+            nouvelle.completeExceptionally(e);
+            throw e;
+        } finally {
+            enVol.remove(cle, nouvelle);
+            MetriquesRag.WEB_RECHERCHE.enregistrerDepuis(debut);
+        }
+    }
+
+    public long hits() {
+        return hits.get();
+    }
+
+    public long hitsDisque() {
+        return hitsDisque.get();
+    }
+
+    public long misses() {
+        return misses.get();
+    }
+
+    public long coalescees() {
+        return coalescees.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("WebSearchEngineEnCache[hits=%d, hitsDisque=%d, misses=%d, coalescees=%d]",
+                hits(), hitsDisque(), misses(), coalescees());
+    }
+
+    static String normaliser(String requete) {
+        String sansAccents = Normalizer.normalize(requete, Normalizer.Form.NFD).replaceAll("\\p{M}", "");
+        return sansAccents.toLowerCase(Locale.ROOT)
+                .replaceAll("\\s+", " ")
+                .replaceAll("[\\s?!.;:]+$", "")
+                .strip();
+    }
+
+    private static String cle(WebSearchRequest requete) {
+        return normaliser(requete.searchTerms())
+                + "|" + requete.maxResults() + "|" + requete.language() + "|" + requete.geoLocation()
+                + "|" + requete.startPage() + "|" + requete.startIndex() + "|" + requete.safeSearch()
+                + "|" + requete.additionalParams();
+    }
+
+    private WebSearchResults lireMemoire(String cle, long maintenant) {
+        synchronized (cache) {
+            Entree entree = cache.get(cle);
+            if (entree == null) {
+                return null;
+            }
+            if (entree.expireA() <= maintenant) {
+                cache.remove(cle);
+                return null;
+            }
+            return entree.resultats();
+        }
+    }
+
+    private Path fichier(String cle) {
+        return repertoire.resolve(Hachage.hex(Hachage.sha256(cle)) + ".web");
+    }
+
+    //un fichier inutilisable (expire, abime, autre format) est supprime : il serait sinon garde indefiniment
+    private Entree lireDisque(String cle, long maintenant) {
+        if (repertoire == null || !Files.isRegularFile(fichier(cle))) {
+            return null;
+        }
+        Entree entree = lireFichier(cle, maintenant);
+        if (entree == null) {
+            supprimer(fichier(cle));
+        }
+        return entree;
+    }
+
+    private Entree lireFichier(String cle, long maintenant) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(fichier(cle))))) {
+            if (in.readInt() != MAGIQUE || !in.readUTF().equals(cle)) {
+                return null;
+            }
+            long expireA = in.readLong();
+            if (expireA <= maintenant) {
+                return null;
+            }
+            Long total = in.readBoolean() ? in.readLong() : null;
+            int nombre = in.readInt();
+            List<WebSearchOrganicResult> resultats = new ArrayList<>(nombre);
+            for (int i = 0; i < nombre; i++) {
+                String titre = lireChaine(in);
+                URI url = URI.create(in.readUTF());
+                String snippet = lireChaine(in);
+                String contenu = lireChaine(in);
+                int nbMetadonnees = in.readInt();
+                Map<String, String> metadonnees = new HashMap<>(nbMetadonnees * 2);
+                for (int j = 0; j < nbMetadonnees; j++) {
+                    metadonnees.put(in.readUTF(), lireChaine(in));
+                }
+                resultats.add(WebSearchOrganicResult.from(titre, url, snippet, contenu, metadonnees));
+            }
+            return new Entree(WebSearchResults.from(WebSearchInformationResult.from(total), resultats), expireA);
+        } catch (IOException | RuntimeException e) {
+            //fichier abime ou d'un autre format : on refait la recherche
+            return null;
+        }
+    }
+
+    private void ecrireDisque(String cle, Entree entree) {
+        if (repertoire == null) {
+            return;
+        }
+        try {
+            Files.createDirectories(repertoire);
+            Path temporaire = Files.createTempFile(repertoire, "web", ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporaire)))) {
+                out.writeInt(MAGIQUE);
+                out.writeUTF(cle);
+                out.writeLong(entree.expireA());
+                WebSearchResults resultats = entree.resultats();
+                Long total = resultats.searchInformation() == null ? null : resultats.searchInformation().totalResults();
+                out.writeBoolean(total != null);
+                if (total != null) {
+                    out.writeLong(total);
+                }
+                out.writeInt(resultats.results().size());
+                for (WebSearchOrganicResult resultat : resultats.results()) {
+                    ecrireChaine(resultat.title(), out);
+                    out.writeUTF(resultat.url().toString());
+                    ecrireChaine(resultat.snippet(), out);
+                    ecrireChaine(resultat.content(), out);
+                    Map<String, String> metadonnees = resultat.metadata() == null ? Map.of() : resultat.metadata();
+                    out.writeInt(metadonnees.size());
+                    for (Map.Entry<String, String> metadonnee : metadonnees.entrySet()) {
+                        out.writeUTF(metadonnee.getKey());
+                        ecrireChaine(metadonnee.getValue(), out);
+                    }
+                }
+            }
+            Files.move(temporaire, fichier(cle), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            //le resultat reste servi depuis la memoire, seul le niveau disque est perdu
+            System.err.println("Ecriture du cache web impossible : " + e.getMessage());
+            return;
+        }
+        bornerDisque();
+    }
+
+    //apres chaque ecriture, donc seulement sur un miss : le parcours du repertoire reste negligeable devant
+    //l'appel a la recherche web qui l'a precede
+    private void bornerDisque() {
+        synchronized (verrouDisque) {
+            List<Path> fichiers;
+            try (Stream<Path> liste = Files.list(repertoire)) {
+                fichiers = liste.filter(chemin -> chemin.getFileName().toString().endsWith(".web")).toList();
+            } catch (IOException e) {
+                return;
+            }
+            if (fichiers.size() <= tailleMaxDisque) {
+                return;
+            }
+            List<Path> parAnciennete = new ArrayList<>(fichiers);
+            parAnciennete.sort(Comparator.comparing(WebSearchEngineEnCache::dateModification));
+            for (int i = 0; i < parAnciennete.size() - tailleMaxDisque; i++) {
+                supprimer(parAnciennete.get(i));
+            }
+        }
+    }
+
+    private static FileTime dateModification(Path fichier) {
+        try {
+            return Files.getLastModifiedTime(fichier);
+        } catch (IOException e) {
+            //deja supprime : en tete, sa suppression ne coute rien
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    private static void supprimer(Path fichier) {
+        try {
+            Files.deleteIfExists(fichier);
+        } catch (IOException e) {
+            //sera retente a la prochaine lecture ou au prochain bornage
+        }
+    }
+
+    //chaines longues (contenu des pages) et nullables
+    private static void ecrireChaine(String valeur, DataOutputStream out) throws IOException {
+        out.writeBoolean(valeur != null);
+        if (valeur != null) {
+            byte[] octets = valeur.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(octets.length);
+            out.write(octets);
+        }
+    }
+
+    private static String lireChaine(DataInputStream in) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+        return new String(in.readNBytes(in.readInt()), StandardCharsets.UTF_8);
+    }
+
+    private record Entree(WebSearchResults resultats, long expireA) {
+    }
+
+    public static class Builder {
+
+        private WebSearchEngine delegue;
+        private Duration ttl = Duration.ofHours(1);
+        private int tailleMax = 500;
+        private int tailleMaxDisque = 5000;
+        private Path repertoire;
+        private Clock horloge = Clock.systemUTC();
+
+        public Builder delegue(WebSearchEngine delegue) {
+            this.delegue = delegue;
+            return this;
+        }
+
+        public Builder ttl(Duration ttl) {
+            this.ttl = ttl;
+            return this;
+        }
+
+        public Builder tailleMax(int tailleMax) {
+            this.tailleMax = tailleMax;
+            return this;
+        }
+
+        //nombre maximal de fichiers du niveau disque
+        public Builder tailleMaxDisque(int tailleMaxDisque) {
+            this.tailleMaxDisque = tailleMaxDisque;
+            return this;
+        }
+
+        //niveau disque, desactive par defaut
+        public Builder repertoire(Path repertoire) {
+            this.repertoire = repertoire;
+            return this;
+        }
+
+        public Builder horloge(Clock horloge) {
+            this.horloge = horloge;
+            return this;
+        }
+
+        public WebSearchEngineEnCache build() {
+            if (delegue == null || ttl == null || horloge == null) {
+                throw new IllegalArgumentException("delegue, ttl et horloge sont obligatoires");
+            }
+            if (tailleMax < 1 || tailleMaxDisque < 1 || ttl.isNegative() || ttl.isZero()) {
+                throw new IllegalArgumentException("tailleMax, tailleMaxDisque et ttl doivent etre positifs");
+            }
+            return new WebSearchEngineEnCache(this);
+        }
+    }
+}
@@ -0,0 +1,256 @@
+package ma.emsi.ketoun.contexte;
+
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.TokenCountEstimator;
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.content.aggregator.ContentAggregator;
+import dev.langchain4j.rag.content.aggregator.DefaultContentAggregator;
+import dev.langchain4j.rag.query.Query;
+import ma.emsi.ketoun.metriques.MetriquesRag;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+//agregation des contenus recuperes avec un budget de tokens par requete :
+//  1. ordre de priorite du delegue (fusion par rang reciproque de DefaultContentAggregator)
+//  2. doublons retires : meme segment (fichier + index) ou meme texte normalise, le mieux classe est garde
+//  3. segments consecutifs d'un meme document fusionnes, le chevauchement du splitter (300/30) n'est garde qu'une fois
+//  4. contenus pris par priorite tant que le budget le permet ; le premier qui deborde est tronque
+//     s'il reste au moins minimumTronque tokens, les suivants sont abandonnes
+public class AgregateurBudgete implements ContentAggregator {
+
+    private static final String INDEX = "index";
+    //en dessous, une fin de segment qui ressemble au debut du suivant est une coincidence
+    private static final int CHEVAUCHEMENT_MIN = 10;
+    private static final int CHEVAUCHEMENT_MAX = 200;
+
+    private final ContentAggregator delegue;
+    private final TokenCountEstimator estimateur;
+    private final int budgetTokens;
+    private final int minimumTronque;
+    private final Consumer<StatistiquesContexte> ecouteur;
+
+    private AgregateurBudgete(Builder builder) {
+        this.delegue = builder.delegue;
+        this.estimateur = builder.estimateur;
+        this.budgetTokens = builder.budgetTokens;
+        this.minimumTronque = builder.minimumTronque;
+        this.ecouteur = builder.ecouteur;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public List<Content> aggregate(Map<Query, Collection<List<Content>>> queryToContents) {
+        long debut = System.nanoTime();
+        List<Content> ordonnes = delegue.aggregate(queryToContents);
+        int tokensRecus = 0;
+        for (Content content : ordonnes) {
+            tokensRecus += estimateur.estimateTokenCountInText(content.textSegment().text());
+        }
+
+        //2. doublons
+        List<Candidat> candidats = new ArrayList<>(ordonnes.size());
+        Set<String> vus = new HashSet<>();
+        int doublons = 0;
+        for (Content content : ordonnes) {
+            Candidat candidat = new Candidat(content, candidats.size());
+            if (!vus.add(candidat.cle())) {
+                doublons++;
+                continue;
+            }
+            candidats.add(candidat);
+        }
+
+        //3. fusion des segments consecutifs, document par document
+        Map<String, List<Candidat>> parDocument = new LinkedHashMap<>();
+        for (Candidat candidat : candidats) {
+            if (candidat.document != null && candidat.index >= 0) {
+                parDocument.computeIfAbsent(candidat.document, d -> new ArrayList<>()).add(candidat);
+            }
+        }
+        int fusions = 0;
+        for (List<Candidat> segments : parDocument.values()) {
+            segments.sort(Comparator.comparingInt(candidat -> candidat.index));
+            Candidat courant = segments.get(0);
+            for (int i = 1; i < segments.size(); i++) {
+                Candidat suivant = segments.get(i);
+                if (suivant.index == courant.indexFin + 1) {
+                    courant.absorber(suivant);
+                    candidats.remove(suivant);
+                    fusions++;
+                } else {
+                    courant = suivant;
+                }
+            }
+        }
+        candidats.sort(Comparator.comparingInt(candidat -> candidat.priorite));
+
+        //4. budget
+        List<Content> retenus = new ArrayList<>(candidats.size());
+        int restant = budgetTokens;
+        int tronques = 0;
+        for (Candidat candidat : candidats) {
+            String texte = candidat.texte.toString();
+            int tokens = estimateur.estimateTokenCountInText(texte);
+            if (tokens <= restant) {
+                retenus.add(candidat.contenu(texte));
+                restant -= tokens;
+                continue;
+            }
+            if (restant >= minimumTronque) {
+                String tronque = tronquer(texte, restant);
+                if (!tronque.isEmpty()) {
+                    retenus.add(candidat.contenu(tronque));
+                    restant -= estimateur.estimateTokenCountInText(tronque);
+                    tronques++;
+                }
+            }
+            break;
+        }
+
+        StatistiquesContexte statistiques = new StatistiquesContexte(ordonnes.size(), retenus.size(), doublons,
+                fusions, tronques, tokensRecus, budgetTokens - restant, System.nanoTime() - debut);
+        MetriquesRag.CONTEXTE_TOKENS.enregistrer(statistiques.tokensInjectes());
+        MetriquesRag.CONTEXTE_TOKENS_ECONOMISES.enregistrer(statistiques.tokensEconomises());
+        ecouteur.accept(statistiques);
+        return retenus;
+    }
+
+    //coupe a la derniere fin de phrase (a defaut au dernier espace) qui tient dans le budget
+    private String tronquer(String texte, int tokens) {
+        int longueur = (int) ((long) texte.length() * tokens / Math.max(1, estimateur.estimateTokenCountInText(texte)));
+        while (longueur > 0 && estimateur.estimateTokenCountInText(texte.substring(0, longueur)) > tokens) {
+            longueur = longueur * 9 / 10;
+        }
+        String debut = texte.substring(0, longueur);
+        int finPhrase = Math.max(debut.lastIndexOf(". "), Math.max(debut.lastIndexOf(".\n"), debut.lastIndexOf('\n')));
+        if (finPhrase >= longueur / 2) {
+            return debut.substring(0, finPhrase + 1).strip();
+        }
+        int espace = debut.lastIndexOf(' ');
+        return (espace > 0 ? debut.substring(0, espace) : debut).strip();
+    }
+
+    //plus long suffixe de a qui est aussi un prefixe de b
+    static int chevauchement(String a, String b) {
+        for (int k = Math.min(CHEVAUCHEMENT_MAX, Math.min(a.length(), b.length())); k >= CHEVAUCHEMENT_MIN; k--) {
+            if (a.regionMatches(a.length() - k, b, 0, k)) {
+                return k;
+            }
+        }
+        return 0;
+    }
+
+    private static final class Candidat {
+        private final Content content;
+        private final String document;
+        private final int index;
+        private int indexFin;
+        private int priorite;
+        private final StringBuilder texte;
+
+        private Candidat(Content content, int priorite) {
+            this.content = content;
+            this.priorite = priorite;
+            TextSegment segment = content.textSegment();
+            this.texte = new StringBuilder(segment.text());
+            Map<String, Object> metadonnees = segment.metadata().toMap();
+            Object fichier = metadonnees.get(Document.FILE_NAME);
+            this.document = fichier == null ? null : fichier.toString();
+            this.index = entier(metadonnees.get(INDEX));
+            this.indexFin = index;
+        }
+
+        private String cle() {
+            if (document != null && index >= 0) {
+                return document + "#" + index;
+            }
+            return texte.toString().toLowerCase(Locale.ROOT).replaceAll("\\s+", " ").strip();
+        }
+
+        private void absorber(Candidat suivant) {
+            String aAjouter = suivant.texte.toString();
+            int commun = chevauchement(texte.toString(), aAjouter);
+            texte.append(commun > 0 ? "" : "\n").append(aAjouter, commun, aAjouter.length());
+            indexFin = suivant.indexFin;
+            priorite = Math.min(priorite, suivant.priorite);
+        }
+
+        private Content contenu(String texteFinal) {
+            if (texteFinal.equals(content.textSegment().text())) {
+                return content;
+            }
+            return Content.from(TextSegment.from(texteFinal, content.textSegment().metadata()), content.metadata());
+        }
+
+        private static int entier(Object valeur) {
+            if (valeur instanceof Number nombre) {
+                return nombre.intValue();
+            }
+            if (valeur != null) {
+                try {
+                    return Integer.parseInt(valeur.toString());
+                } catch (NumberFormatException e) {
+                    return -1;
+                }
+            }
+            return -1;
+        }
+    }
+
+    public static class Builder {
+
+        private ContentAggregator delegue = new DefaultContentAggregator();
+        private TokenCountEstimator estimateur = new EstimateurTokens();
+        private int budgetTokens = 800;
+        private int minimumTronque = 40;
+        private Consumer<StatistiquesContexte> ecouteur = statistiques -> { };
+
+        public Builder delegue(ContentAggregator delegue) {
+            this.delegue = delegue;
+            return this;
+        }
+
+        public Builder estimateur(TokenCountEstimator estimateur) {
+            this.estimateur = estimateur;
+            return this;
+        }
+
+        public Builder budgetTokens(int budgetTokens) {
+            this.budgetTokens = budgetTokens;
+            return this;
+        }
+
+        public Builder minimumTronque(int minimumTronque) {
+            this.minimumTronque = minimumTronque;
+            return this;
+        }
+
+        public Builder ecouteur(Consumer<StatistiquesContexte> ecouteur) {
+            this.ecouteur = ecouteur;
+            return this;
+        }
+
+        public AgregateurBudgete build() {
+            if (delegue == null || estimateur == null || ecouteur == null) {
+                throw new IllegalArgumentException("delegue, estimateur et ecouteur sont obligatoires");
+            }
+            if (budgetTokens < 1 || minimumTronque < 1) {
+                throw new IllegalArgumentException("budgetTokens et minimumTronque doivent etre >= 1");
+            }
+            return new AgregateurBudgete(this);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package ma.emsi.ketoun.contexte;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.TextContent;
+import dev.langchain4j.data.message.ToolExecutionResultMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.model.TokenCountEstimator;
+
+//estimation locale du nombre de tokens : ~4 caracteres par token (francais comme anglais chez Gemini)
+//pas d'appel reseau (l'estimateur Gemini compte les tokens par une requete a l'API), donc utilisable
+//sur le chemin de chaque requete ; l'ecart reste de l'ordre de 10-20 %
+public class EstimateurTokens implements TokenCountEstimator {
+
+    private static final int CARACTERES_PAR_TOKEN = 4;
+    //role, separateurs : cout fixe d'un message dans le prompt
+    private static final int TOKENS_PAR_MESSAGE = 4;
+
+    @Override
+    public int estimateTokenCountInText(String text) {
+        return text == null || text.isEmpty() ? 0 : (text.length() + CARACTERES_PAR_TOKEN - 1) / CARACTERES_PAR_TOKEN;
+    }
+
+    @Override
+    public int estimateTokenCountInMessage(ChatMessage message) {
+        return TOKENS_PAR_MESSAGE + estimateTokenCountInText(texte(message));
+    }
+
+    @Override
+    public int estimateTokenCountInMessages(Iterable<ChatMessage> messages) {
+        int total = 0;
+        for (ChatMessage message : messages) {
+            total += estimateTokenCountInMessage(message);
+        }
+        return total;
+    }
+
+    static String texte(ChatMessage message) {
+        if (message instanceof UserMessage userMessage) {
+            StringBuilder texte = new StringBuilder();
+            userMessage.contents().forEach(contenu -> {
+                if (contenu instanceof TextContent textContent) {
+                    texte.append(textContent.text());
+                }
+            });
+            return texte.toString();
+        }
+        if (message instanceof AiMessage aiMessage) {
+            return aiMessage.text() == null ? "" : aiMessage.text();
+        }
+        if (message instanceof SystemMessage systemMessage) {
+            return systemMessage.text();
+        }
+        if (message instanceof ToolExecutionResultMessage resultat) {
+            return resultat.text();
+        }
+        return "";
+    }
+}
@@ -0,0 +1,16 @@
+package ma.emsi.ketoun.contexte;
+
+public record StatistiquesContexte(int contenusRecus, int contenusInjectes, int doublons, int fusions, int tronques,
+                                   int tokensRecus, int tokensInjectes, long dureeNanos) {
+
+    public int tokensEconomises() {
+        return tokensRecus - tokensInjectes;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d contenus -> %d (%d doublons, %d fusions, %d tronques), %d -> %d tokens (-%d) en %.2f ms",
+                contenusRecus, contenusInjectes, doublons, fusions, tronques,
+                tokensRecus, tokensInjectes, tokensEconomises(), dureeNanos / 1e6);
+    }
+}
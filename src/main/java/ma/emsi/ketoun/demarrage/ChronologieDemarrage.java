@@ -0,0 +1,125 @@
+package ma.emsi.ketoun.demarrage;
+
+import ma.emsi.ketoun.metriques.MetriquesRag;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+//chronologie du demarrage d'un main : chaque etape (chargement du modele ONNX, mapping des stores, prechauffage...)
+//est datee depuis le lancement de la JVM, sur le thread qui l'execute
+//enParallele() lance une etape sur son propre thread ; attendre() mesure le temps ou le thread principal
+//est reste bloque dessus, c'est-a-dire ce que le parallelisme n'a pas pu cacher
+//pret() fixe la duree totale, publiee dans MetriquesRag.DEMARRAGE pour comparer les redemarrages
+public final class ChronologieDemarrage {
+
+    //threads plateforme : les chargements sont du CPU et du natif (ONNX), pas de l'attente
+    private final ExecutorService executor = Executors.newThreadPerTaskExecutor(
+            Thread.ofPlatform().daemon().name("demarrage-", 0).factory());
+
+    private final long lancementJvmMillis;
+    private final long origineMillis;
+    private final long origineNanos;
+    private final List<Etape> etapes = new ArrayList<>();
+    private volatile long pretNanos = -1;
+
+    private ChronologieDemarrage() {
+        this.lancementJvmMillis = ManagementFactory.getRuntimeMXBean().getStartTime();
+        this.origineNanos = System.nanoTime();
+        this.origineMillis = System.currentTimeMillis() - lancementJvmMillis;
+    }
+
+    //a creer en tout debut de main : la premiere ligne couvre le demarrage de la JVM et le chargement de main
+    public static ChronologieDemarrage depuisJvm() {
+        ChronologieDemarrage chronologie = new ChronologieDemarrage();
+        chronologie.ajouter(new Etape("jvm", "", 0, chronologie.origineMillis));
+        return chronologie;
+    }
+
+    public <T> T etape(String nom, Supplier<T> action) {
+        long debut = System.nanoTime();
+        try {
+            return action.get();
+        } finally {
+            enregistrer(nom, debut);
+        }
+    }
+
+    public void etape(String nom, Runnable action) {
+        etape(nom, () -> {
+            action.run();
+            return null;
+        });
+    }
+
+    public <T> CompletableFuture<T> enParallele(String nom, Supplier<T> action) {
+        return CompletableFuture.supplyAsync(() -> etape(nom, action), executor);
+    }
+
+    //bloque jusqu'au resultat ; l'attente n'apparait que si elle a dure
+    public <T> T attendre(String nom, CompletableFuture<T> future) {
+        long debut = System.nanoTime();
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException cause ? cause : e;
+        } finally {
+            if (System.nanoTime() - debut >= 1_000_000) {
+                enregistrer("attente " + nom, debut);
+            }
+        }
+    }
+
+    public void pret() {
+        pretNanos = System.nanoTime();
+        MetriquesRag.DEMARRAGE.enregistrer(dureeTotaleMillis() * 1_000_000);
+        executor.shutdown();
+    }
+
+    //du lancement de la JVM a pret() (ou a maintenant)
+    public long dureeTotaleMillis() {
+        long fin = pretNanos < 0 ? System.nanoTime() : pretNanos;
+        return origineMillis + (fin - origineNanos) / 1_000_000;
+    }
+
+    public void afficher(PrintStream sortie) {
+        List<Etape> copie;
+        synchronized (etapes) {
+            copie = new ArrayList<>(etapes);
+        }
+        copie.sort(Comparator.comparingLong(Etape::debutMillis));
+        sortie.println("Chronologie de demarrage (ms depuis le lancement de la JVM)");
+        sortie.printf("  %7s %7s  %-14s %s%n", "debut", "duree", "thread", "etape");
+        for (Etape etape : copie) {
+            sortie.printf("  %7d %7d  %-14s %s%n", etape.debutMillis(), etape.dureeMillis(), etape.thread(), etape.nom());
+        }
+        sortie.printf("  %s a %d ms%n", pretNanos < 0 ? "en cours" : "pret", dureeTotaleMillis());
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ChronologieDemarrage[etapes=%d, total=%d ms]", etapes.size(), dureeTotaleMillis());
+    }
+
+    private void enregistrer(String nom, long debutNanos) {
+        long fin = System.nanoTime();
+        ajouter(new Etape(nom, Thread.currentThread().getName(),
+                origineMillis + (debutNanos - origineNanos) / 1_000_000, (fin - debutNanos) / 1_000_000));
+    }
+
+    private void ajouter(Etape etape) {
+        synchronized (etapes) {
+            etapes.add(etape);
+        }
+    }
+
+    private record Etape(String nom, String thread, long debutMillis, long dureeMillis) {
+    }
+}
@@ -0,0 +1,129 @@
+package ma.emsi.ketoun.demarrage;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.font.Standard14Fonts;
+import org.apache.tika.exception.TikaException;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.parser.AutoDetectParser;
+import org.apache.tika.parser.ParseContext;
+import org.apache.tika.sax.BodyContentHandler;
+import org.xml.sax.SAXException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+//requetes synthetiques passees avant d'accepter du trafic : la premiere vraie requete ne paie ni
+//l'initialisation des sessions ONNX, ni la compilation JIT de l'embedding et de la recherche
+public final class Prechauffage {
+
+    private static final String[] PHRASES = {
+            "Qu'est-ce que le RAG",
+            "Comment fonctionnent les embeddings et la recherche semantique dans un modele de langage",
+            "Quelle est la difference entre le fine tuning et l'ingenierie des prompts",
+            "certification",
+            "Explique en detail comment un document est decoupe en segments, transforme en vecteurs, range dans "
+                    + "un magasin d'embeddings puis retrouve par similarite cosinus au moment de la question",
+    };
+
+    private Prechauffage() {
+    }
+
+    //alterne embeddings unitaires, par lots et recherches jusqu'a iterations ou budget ; renvoie le nombre d'iterations
+    //les textes sont tous differents (numerotes) pour ne pas tomber dans un cache
+    public static int embeddingEtRecherche(EmbeddingModel embeddingModel, EmbeddingStore<TextSegment> store,
+                                           int iterations, Duration budget) {
+        long limite = System.nanoTime() + budget.toNanos();
+        int faites = 0;
+        while (faites < iterations && System.nanoTime() < limite) {
+            Embedding embedding;
+            if (faites % 4 == 3) {
+                List<TextSegment> lot = new ArrayList<>(PHRASES.length);
+                for (String phrase : PHRASES) {
+                    lot.add(TextSegment.from(phrase + " " + faites));
+                }
+                embedding = embeddingModel.embedAll(lot).content().get(0);
+            } else {
+                embedding = embeddingModel.embed(PHRASES[faites % PHRASES.length] + " " + faites).content();
+            }
+            store.search(EmbeddingSearchRequest.builder()
+                    .queryEmbedding(embedding)
+                    .maxResults(2)
+                    .minScore(0.5)
+                    .build());
+            faites++;
+        }
+        return faites;
+    }
+
+    //meme principe sur toute la chaine d'un assistant (proxy AiServices, memoire, retrieval, prompt) ;
+    //a brancher sur un assistant construit avec un ChatModel local pour ne pas consommer d'appels au vrai modele
+    public static int questions(Function<String, String> chat, int iterations, Duration budget) {
+        long limite = System.nanoTime() + budget.toNanos();
+        int faites = 0;
+        while (faites < iterations && System.nanoTime() < limite) {
+            chat.apply(PHRASES[faites % PHRASES.length] + " " + faites + " ?");
+            faites++;
+        }
+        return faites;
+    }
+
+    //premieres requetes HTTP du serveur (sockets, HttpServer, threads virtuels) : GET /sante et POST /chat
+    //vide, refuse en 400 avant d'atteindre l'assistant
+    public static void http(int port) {
+        try {
+            for (String chemin : List.of("/sante", "/chat")) {
+                HttpURLConnection connexion = (HttpURLConnection) URI.create("http://localhost:" + port + chemin)
+                        .toURL().openConnection();
+                if (chemin.equals("/chat")) {
+                    connexion.setRequestMethod("POST");
+                    connexion.setDoOutput(true);
+                    connexion.getOutputStream().close();
+                }
+                connexion.getResponseCode();
+                connexion.disconnect();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    //charge le registre de parsers de Tika et le chemin PDF (PDFBox, polices standard) sur un petit PDF genere :
+    //une reindexation ou une ingestion apres le demarrage ne paie plus ce chargement
+    public static void tika() {
+        ByteArrayOutputStream pdf = new ByteArrayOutputStream();
+        try (PDDocument document = new PDDocument()) {
+            PDPage page = new PDPage();
+            document.addPage(page);
+            try (PDPageContentStream contenu = new PDPageContentStream(document, page)) {
+                contenu.beginText();
+                contenu.setFont(new PDType1Font(Standard14Fonts.FontName.HELVETICA), 12);
+                contenu.newLineAtOffset(72, 720);
+                contenu.showText(PHRASES[1]);
+                contenu.endText();
+            }
+            document.save(pdf);
+            new AutoDetectParser().parse(new ByteArrayInputStream(pdf.toByteArray()),
+                    new BodyContentHandler(-1), new Metadata(), new ParseContext());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (SAXException | TikaException e) {
+            throw new IllegalStateException("Prechauffage de Tika impossible", e);
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package ma.emsi.ketoun.embedding;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+//decorateur d'EmbeddingModel qui regroupe les appels concurrents en lots
+//chaque appelant depose ses textes dans une file et attend son futur ; un thread d'embedding prend le premier
+//texte arrive puis attend au plus attenteMax pour completer le lot (tailleLotMax textes) avant un seul passage ONNX
+//la latence ajoutee est bornee par attenteMax, le debit par coeur augmente avec la taille des lots
+//les appels deja gros (>= tailleLotMax textes, ex. indexation) passent directement au modele
+public class EmbeddingModelParLots implements EmbeddingModel, AutoCloseable {
+
+    private final EmbeddingModel delegue;
+    private final int tailleLotMax;
+    private final long attenteMaxNanos;
+    private final BlockingQueue<Demande> file = new LinkedBlockingQueue<>();
+    private final List<Thread> threads = new ArrayList<>();
+    private volatile boolean ferme;
+
+    //distribution des tailles de lot : lotsParTaille[t] = nombre de lots de t textes
+    private final AtomicLongArray lotsParTaille;
+    private final AtomicLong textes = new AtomicLong();
+    private final AtomicLong attenteFileNanos = new AtomicLong();
+
+    private EmbeddingModelParLots(Builder builder) {
+        this.delegue = builder.delegue;
+        this.tailleLotMax = builder.tailleLotMax;
+        this.attenteMaxNanos = builder.attenteMax.toNanos();
+        this.lotsParTaille = new AtomicLongArray(tailleLotMax + 1);
+        for (int i = 0; i < builder.threads; i++) {
+            Thread thread = new Thread(this::boucle, "embedding-lots-" + i);
+            thread.setDaemon(true);
+            thread.start();
+            threads.add(thread);
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public Response<List<Embedding>> embedAll(List<TextSegment> textSegments) {
+        if (textSegments.size() >= tailleLotMax) {
+            return delegue.embedAll(textSegments);
+        }
+        if (ferme) {
+            throw new IllegalStateException("EmbeddingModelParLots ferme");
+        }
+        List<CompletableFuture<Embedding>> futurs = new ArrayList<>(textSegments.size());
+        long maintenant = System.nanoTime();
+        for (TextSegment segment : textSegments) {
+            Demande demande = new Demande(segment, maintenant, new CompletableFuture<>());
+            futurs.add(demande.futur());
+            file.add(demande);
+        }
+        //close() a pu passer entre le test de ferme et le depot : plus personne ne viderait la file
+        if (ferme) {
+            vider();
+        }
+        List<Embedding> embeddings = new ArrayList<>(futurs.size());
+        try {
+            for (CompletableFuture<Embedding> futur : futurs) {
+                embeddings.add(futur.join());
+            }
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error cause) {
+                throw cause;
+            }
+            throw e;
+        }
+        return Response.from(embeddings);
+    }
+
+    private void boucle() {
+        List<Demande> lot = new ArrayList<>(tailleLotMax);
+        try {
+            while (!ferme) {
+                Demande premiere = file.take();
+                lot.add(premiere);
+                //on complete le lot jusqu'a tailleLotMax ou jusqu'a attenteMax apres la premiere demande
+                long echeance = System.nanoTime() + attenteMaxNanos;
+                while (lot.size() < tailleLotMax) {
+                    long reste = echeance - System.nanoTime();
+                    Demande suivante = reste <= 0 ? file.poll() : file.poll(reste, TimeUnit.NANOSECONDS);
+                    if (suivante == null) {
+                        break;
+                    }
+                    lot.add(suivante);
+                }
+                traiter(lot);
+                lot.clear();
+            }
+        } catch (InterruptedException e) {
+            //arret demande par close()
+        } finally {
+            for (Demande demande : lot) {
+                demande.futur().completeExceptionally(new IllegalStateException("EmbeddingModelParLots ferme"));
+            }
+            //thread mort sur une Error : on ferme plutot que de laisser les appelants attendre indefiniment
+            if (!ferme) {
+                ferme = true;
+                vider();
+            }
+        }
+    }
+
+    private void vider() {
+        Demande restante;
+        while ((restante = file.poll()) != null) {
+            restante.futur().completeExceptionally(new IllegalStateException("EmbeddingModelParLots ferme"));
+        }
+    }
+
+    private void traiter(List<Demande> lot) {
+        long debut = System.nanoTime();
+        List<TextSegment> segments = new ArrayList<>(lot.size());
+        long attente = 0;
+        for (Demande demande : lot) {
+            segments.add(demande.segment());
+            attente += debut - demande.depotNanos();
+        }
+        lotsParTaille.incrementAndGet(lot.size());
+        textes.addAndGet(lot.size());
+        attenteFileNanos.addAndGet(attente);
+        try {
+            List<Embedding> embeddings = delegue.embedAll(segments).content();
+            for (int i = 0; i < lot.size(); i++) {
+                lot.get(i).futur().complete(embeddings.get(i));
+            }
+        } catch (Throwable e) {
+            for (Demande demande : lot) {
+                demande.futur().completeExceptionally(e);
+            }
+            if (e instanceof Error erreur) {
+                throw erreur;
+            }
+        }
+    }
+
+    @Override
+    public int dimension() {
+        return delegue.dimension();
+    }
+
+    public long lots() {
+        long lots = 0;
+        for (int t = 1; t < lotsParTaille.length(); t++) {
+            lots += lotsParTaille.get(t);
+        }
+        return lots;
+    }
+
+    public long textes() {
+        return textes.get();
+    }
+
+    public double tailleMoyenneLot() {
+        long lots = lots();
+        return lots == 0 ? 0 : (double) textes.get() / lots;
+    }
+
+    public double attenteMoyenneMillis() {
+        long textes = this.textes.get();
+        return textes == 0 ? 0 : attenteFileNanos.get() / 1e6 / textes;
+    }
+
+    public long[] distributionTailles() {
+        long[] distribution = new long[lotsParTaille.length()];
+        for (int t = 0; t < distribution.length; t++) {
+            distribution[t] = lotsParTaille.get(t);
+        }
+        return distribution;
+    }
+
+    @Override
+    public void close() {
+        ferme = true;
+        threads.forEach(Thread::interrupt);
+        vider();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder distribution = new StringBuilder();
+        for (int t = 1; t < lotsParTaille.length(); t++) {
+            long nombre = lotsParTaille.get(t);
+            if (nombre > 0) {
+                distribution.append(distribution.isEmpty() ? "" : ", ").append(t).append('x').append(nombre);
+            }
+        }
+        return String.format("EmbeddingModelParLots[lots=%d, textes=%d, taille moyenne=%.1f, attente moyenne=%.2f ms, tailles={%s}]",
+                lots(), textes(), tailleMoyenneLot(), attenteMoyenneMillis(), distribution);
+    }
+
+    private record Demande(TextSegment segment, long depotNanos, CompletableFuture<Embedding> futur) {
+    }
+
+    public static class Builder {
+
+        private EmbeddingModel delegue;
+        private int tailleLotMax = 32;
+        private Duration attenteMax = Duration.ofMillis(3);
+        private int threads = 1;
+
+        public Builder delegue(EmbeddingModel delegue) {
+            this.delegue = delegue;
+            return this;
+        }
+
+        public Builder tailleLotMax(int tailleLotMax) {
+            this.tailleLotMax = tailleLotMax;
+            return this;
+        }
+
+        public Builder attenteMax(Duration attenteMax) {
+            this.attenteMax = attenteMax;
+            return this;
+        }
+
+        //threads d'embedding : 1 suffit en general, ONNX parallelise deja un lot sur les coeurs
+        public Builder threads(int threads) {
+            this.threads = threads;
+            return this;
+        }
+
+        public EmbeddingModelParLots build() {
+            if (delegue == null) {
+                throw new IllegalArgumentException("delegue est obligatoire");
+            }
+            if (tailleLotMax < 1 || threads < 1 || attenteMax.isNegative()) {
+                throw new IllegalArgumentException("tailleLotMax et threads doivent etre >= 1, attenteMax >= 0");
+            }
+            return new EmbeddingModelParLots(this);
+        }
+    }
+}
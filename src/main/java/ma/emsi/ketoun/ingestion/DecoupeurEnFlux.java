@@ -0,0 +1,127 @@
+package ma.emsi.ketoun.ingestion;
+
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.DocumentSplitter;
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.segment.TextSegment;
+import org.apache.tika.exception.TikaException;
+import org.apache.tika.io.TikaInputStream;
+import org.apache.tika.parser.AutoDetectParser;
+import org.apache.tika.parser.ParseContext;
+import org.apache.tika.parser.Parser;
+import org.apache.tika.sax.BodyContentHandler;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.function.Consumer;
+
+//parse + decoupage en flux pour les gros documents : Tika pousse le texte page par page dans un
+//ContentHandler SAX, le texte n'est jamais rassemble en un seul Document
+//des que le tampon depasse tailleTampon caracteres il passe dans le splitter ; tous les segments sauf
+//le dernier sont emis, le dernier (peut-etre coupe en plein mot) est reporte en tete du tampon suivant
+//le decoupage et le chevauchement restent ceux du splitter, la memoire est bornee par le tampon
+public class DecoupeurEnFlux {
+
+    public static final int TAILLE_TAMPON_DEFAUT = 16 * 1024;
+
+    private final DocumentSplitter splitter;
+    private final int tailleTampon;
+    private final Parser parser;
+
+    public DecoupeurEnFlux(DocumentSplitter splitter) {
+        this(splitter, new AutoDetectParser());
+    }
+
+    public DecoupeurEnFlux(DocumentSplitter splitter, int tailleTampon) {
+        this(splitter, new AutoDetectParser(), tailleTampon);
+    }
+
+    public DecoupeurEnFlux(DocumentSplitter splitter, Parser parser) {
+        this(splitter, parser, TAILLE_TAMPON_DEFAUT);
+    }
+
+    public DecoupeurEnFlux(DocumentSplitter splitter, Parser parser, int tailleTampon) {
+        if (tailleTampon < 1) {
+            throw new IllegalArgumentException("tailleTampon doit etre >= 1");
+        }
+        this.splitter = splitter;
+        this.parser = parser;
+        this.tailleTampon = tailleTampon;
+    }
+
+    //renvoie le nombre de segments emis ; memes metadonnees que FileSystemDocumentLoader + "index"
+    public long decouper(Path fichier, Consumer<TextSegment> sortie) {
+        Metadata metadata = new Metadata()
+                .put(Document.FILE_NAME, fichier.getFileName().toString())
+                .put(Document.ABSOLUTE_DIRECTORY_PATH, fichier.toAbsolutePath().getParent().toString());
+        Collecteur collecteur = new Collecteur(metadata, sortie);
+
+        ParseContext contexte = new ParseContext();
+        contexte.set(Parser.class, parser);
+        //TikaInputStream sur un fichier : le parser PDF lit le fichier directement, sans copie temporaire
+        try (InputStream entree = TikaInputStream.get(fichier)) {
+            parser.parse(entree, new BodyContentHandler(collecteur), new org.apache.tika.metadata.Metadata(), contexte);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (SAXException | TikaException e) {
+            throw new IllegalStateException("Echec du parsing de " + fichier, e);
+        }
+        collecteur.vider(true);
+        if (collecteur.index == 0) {
+            throw new IllegalStateException("Aucun texte dans " + fichier);
+        }
+        return collecteur.index;
+    }
+
+    private final class Collecteur extends DefaultHandler {
+
+        private final Metadata metadata;
+        private final Consumer<TextSegment> sortie;
+        private final StringBuilder tampon = new StringBuilder();
+        private long index;
+
+        private Collecteur(Metadata metadata, Consumer<TextSegment> sortie) {
+            this.metadata = metadata;
+            this.sortie = sortie;
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            tampon.append(ch, start, length);
+            if (tampon.length() >= tailleTampon) {
+                vider(false);
+            }
+        }
+
+        //les fins de paragraphes arrivent en espaces ignorables (XHTMLContentHandler)
+        @Override
+        public void ignorableWhitespace(char[] ch, int start, int length) {
+            characters(ch, start, length);
+        }
+
+        private void vider(boolean fin) {
+            if (tampon.isEmpty() || tampon.chars().allMatch(Character::isWhitespace)) {
+                return;
+            }
+            String texte = tampon.toString();
+            List<TextSegment> segments = splitter.split(Document.from(texte, metadata));
+            int aEmettre = fin ? segments.size() : segments.size() - 1;
+            for (int i = 0; i < aEmettre; i++) {
+                sortie.accept(TextSegment.from(segments.get(i).text(),
+                        metadata.copy().put("index", String.valueOf(index++))));
+            }
+            tampon.setLength(0);
+            if (!fin && !segments.isEmpty()) {
+                //report du texte brut du dernier segment (espaces compris) pour ne pas recoller deux mots
+                String dernier = segments.get(segments.size() - 1).text();
+                int debut = texte.lastIndexOf(dernier);
+                tampon.append(debut >= 0 ? texte.substring(debut) : dernier);
+            }
+        }
+    }
+}
@@ -0,0 +1,332 @@
+package ma.emsi.ketoun.ingestion;
+
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.DocumentParser;
+import dev.langchain4j.data.document.DocumentSplitter;
+import dev.langchain4j.data.document.loader.FileSystemDocumentLoader;
+import dev.langchain4j.data.document.parser.apache.tika.ApacheTikaDocumentParser;
+import dev.langchain4j.data.document.splitter.DocumentSplitters;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import ma.emsi.ketoun.util.Hachage;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+//indexation incrementale d'un repertoire de documents dans un store vivant
+//  - fichier au meme hash : rien a faire
+//  - fichier modifie : re-parse et re-split, mais seuls les segments dont le texte a change sont re-embeddes
+//  - fichier supprime : ses segments sont retires du store
+//l'id d'un segment est derive de (fichier, hash du texte, occurrence) : un segment inchange garde son id,
+//le diff entre deux versions est donc une simple difference d'ensembles d'ids
+//les ajouts sont appliques avant les suppressions : un lecteur concurrent ne voit jamais le document vide
+//(le store doit supporter les lectures concurrentes, ex. FloatArrayEmbeddingStore)
+public class IndexeurIncremental implements AutoCloseable {
+
+    private final EmbeddingModel embeddingModel;
+    private final EmbeddingStore<TextSegment> embeddingStore;
+    private final DocumentParser parser;
+    private final DocumentSplitter splitter;
+    private final Duration delaiRegroupement;
+    private final Consumer<StatistiquesSynchronisation> ecouteur;
+
+    //etat de l'index par fichier : hash du contenu et ids des segments presents dans le store
+    private final Map<Path, EtatDocument> documents = new HashMap<>();
+
+    private WatchService watchService;
+    private Thread surveillant;
+
+    private IndexeurIncremental(Builder builder) {
+        this.embeddingModel = builder.embeddingModel;
+        this.embeddingStore = builder.embeddingStore;
+        this.parser = builder.parser;
+        this.splitter = builder.splitter;
+        this.delaiRegroupement = builder.delaiRegroupement;
+        this.ecouteur = builder.ecouteur;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    //synchronise tous les fichiers du repertoire et retire ceux qui ont disparu
+    public synchronized List<StatistiquesSynchronisation> synchroniserRepertoire(Path repertoire) {
+        List<StatistiquesSynchronisation> resultats = new ArrayList<>();
+        Set<Path> presents = new HashSet<>();
+        try (Stream<Path> fichiers = Files.walk(repertoire)) {
+            for (Path fichier : fichiers.filter(Files::isRegularFile).toList()) {
+                presents.add(fichier.toAbsolutePath());
+                try {
+                    resultats.add(synchroniser(fichier));
+                } catch (RuntimeException e) {
+                    //un fichier illisible (vide, corrompu) est signale et saute, le reste du repertoire est indexe
+                    signalerEchec(fichier, e);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        Path racine = repertoire.toAbsolutePath();
+        for (Path connu : List.copyOf(documents.keySet())) {
+            if (connu.startsWith(racine) && !presents.contains(connu)) {
+                resultats.add(retirer(connu));
+            }
+        }
+        return resultats;
+    }
+
+    public synchronized StatistiquesSynchronisation synchroniser(Path fichier) {
+        long debut = System.nanoTime();
+        Path cle = fichier.toAbsolutePath();
+        EtatDocument ancien = documents.get(cle);
+        Set<String> anciensIds = ancien == null ? Set.of() : ancien.ids();
+
+        byte[] hashFichier = Hachage.sha256(fichier);
+        if (ancien != null && Arrays.equals(ancien.hashFichier(), hashFichier)) {
+            return StatistiquesSynchronisation.inchange(nom(cle), anciensIds.size(), System.nanoTime() - debut);
+        }
+
+        Document document = FileSystemDocumentLoader.loadDocument(fichier, parser);
+        List<TextSegment> segments = splitter.split(document);
+
+        //ids de la nouvelle version ; on ne garde pour l'embedding que les segments absents de l'ancienne
+        Set<String> nouveauxIds = new LinkedHashSet<>();
+        Map<String, Integer> occurrences = new HashMap<>();
+        List<String> idsAjoutes = new ArrayList<>();
+        List<TextSegment> segmentsAjoutes = new ArrayList<>();
+        for (TextSegment segment : segments) {
+            String hashTexte = Hachage.hex(Hachage.sha256(segment.text()));
+            int occurrence = occurrences.merge(hashTexte, 1, Integer::sum);
+            String id = idSegment(cle, hashTexte, occurrence);
+            nouveauxIds.add(id);
+            if (!anciensIds.contains(id)) {
+                idsAjoutes.add(id);
+                segmentsAjoutes.add(segment);
+            }
+        }
+        List<String> idsSupprimes = new ArrayList<>();
+        for (String id : anciensIds) {
+            if (!nouveauxIds.contains(id)) {
+                idsSupprimes.add(id);
+            }
+        }
+
+        if (!segmentsAjoutes.isEmpty()) {
+            List<Embedding> embeddings = embeddingModel.embedAll(segmentsAjoutes).content();
+            embeddingStore.addAll(idsAjoutes, embeddings, segmentsAjoutes);
+        }
+        if (!idsSupprimes.isEmpty()) {
+            embeddingStore.removeAll(idsSupprimes);
+        }
+        documents.put(cle, new EtatDocument(hashFichier, nouveauxIds));
+
+        return new StatistiquesSynchronisation(nom(cle), idsAjoutes.size(),
+                nouveauxIds.size() - idsAjoutes.size(), idsSupprimes.size(), System.nanoTime() - debut);
+    }
+
+    public synchronized StatistiquesSynchronisation retirer(Path fichier) {
+        long debut = System.nanoTime();
+        Path cle = fichier.toAbsolutePath();
+        EtatDocument ancien = documents.remove(cle);
+        if (ancien == null) {
+            return StatistiquesSynchronisation.inchange(nom(cle), 0, System.nanoTime() - debut);
+        }
+        if (!ancien.ids().isEmpty()) {
+            embeddingStore.removeAll(ancien.ids());
+        }
+        return new StatistiquesSynchronisation(nom(cle), 0, 0, ancien.ids().size(), System.nanoTime() - debut);
+    }
+
+    //synchronisation initiale puis surveillance du repertoire (et de ses sous-repertoires) dans un thread dedie
+    public synchronized IndexeurIncremental surveiller(Path repertoire) {
+        if (surveillant != null) {
+            throw new IllegalStateException("Surveillance deja demarree");
+        }
+        try {
+            watchService = repertoire.getFileSystem().newWatchService();
+            enregistrer(repertoire);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        synchroniserRepertoire(repertoire).forEach(ecouteur);
+
+        surveillant = new Thread(() -> boucleSurveillance(repertoire), "indexeur-incremental");
+        surveillant.setDaemon(true);
+        surveillant.start();
+        return this;
+    }
+
+    private void boucleSurveillance(Path repertoire) {
+        try {
+            while (true) {
+                WatchKey premiere = watchService.take();
+                Set<Path> modifies = new LinkedHashSet<>();
+                boolean debordement = collecter(premiere, modifies);
+                //un enregistrement d'editeur produit plusieurs evenements : on attend le calme avant de traiter
+                WatchKey suivante;
+                while ((suivante = watchService.poll(delaiRegroupement.toMillis(), TimeUnit.MILLISECONDS)) != null) {
+                    debordement |= collecter(suivante, modifies);
+                }
+                try {
+                    if (debordement) {
+                        synchroniserRepertoire(repertoire).forEach(ecouteur);
+                        continue;
+                    }
+                    for (Path fichier : modifies) {
+                        traiter(fichier);
+                    }
+                } catch (RuntimeException e) {
+                    //repertoire momentanement illisible, ecouteur en erreur... : la surveillance continue
+                    System.err.println("Echec de la synchronisation de " + repertoire + " : " + e.getMessage());
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            //arret demande par close()
+        }
+    }
+
+    private boolean collecter(WatchKey watchKey, Set<Path> modifies) {
+        boolean debordement = false;
+        Path dossier = (Path) watchKey.watchable();
+        for (WatchEvent<?> evenement : watchKey.pollEvents()) {
+            if (evenement.kind() == StandardWatchEventKinds.OVERFLOW) {
+                debordement = true;
+            } else {
+                modifies.add(dossier.resolve((Path) evenement.context()));
+            }
+        }
+        watchKey.reset();
+        return debordement;
+    }
+
+    private void traiter(Path fichier) {
+        try {
+            if (Files.isDirectory(fichier)) {
+                enregistrer(fichier);
+                synchroniserRepertoire(fichier).forEach(ecouteur);
+            } else if (Files.isRegularFile(fichier)) {
+                ecouteur.accept(synchroniser(fichier));
+            } else {
+                ecouteur.accept(retirer(fichier));
+            }
+        } catch (RuntimeException | IOException e) {
+            signalerEchec(fichier, e);
+        }
+    }
+
+    //fichier en cours d'ecriture ou illisible : on garde l'ancienne version dans le store
+    private static void signalerEchec(Path fichier, Exception e) {
+        System.err.println("Echec de la synchronisation de " + fichier + " : " + e.getMessage());
+    }
+
+    private void enregistrer(Path repertoire) throws IOException {
+        try (Stream<Path> dossiers = Files.walk(repertoire)) {
+            for (Path dossier : dossiers.filter(Files::isDirectory).toList()) {
+                dossier.register(watchService,
+                        StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY,
+                        StandardWatchEventKinds.ENTRY_DELETE);
+            }
+        }
+    }
+
+    private static String idSegment(Path fichier, String hashTexte, int occurrence) {
+        String cle = fichier + "|" + hashTexte + "|" + occurrence;
+        return UUID.nameUUIDFromBytes(cle.getBytes(StandardCharsets.UTF_8)).toString();
+    }
+
+    private static String nom(Path fichier) {
+        return fichier.getFileName().toString();
+    }
+
+    @Override
+    public void close() {
+        Thread thread;
+        synchronized (this) {
+            thread = surveillant;
+            surveillant = null;
+        }
+        if (thread != null) {
+            thread.interrupt();
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private record EtatDocument(byte[] hashFichier, Set<String> ids) {
+    }
+
+    public static class Builder {
+
+        private EmbeddingModel embeddingModel;
+        private EmbeddingStore<TextSegment> embeddingStore;
+        private DocumentParser parser = new ApacheTikaDocumentParser();
+        private DocumentSplitter splitter = DocumentSplitters.recursive(300, 30);
+        private Duration delaiRegroupement = Duration.ofMillis(500);
+        private Consumer<StatistiquesSynchronisation> ecouteur = statistiques -> { };
+
+        public Builder embeddingModel(EmbeddingModel embeddingModel) {
+            this.embeddingModel = embeddingModel;
+            return this;
+        }
+
+        public Builder embeddingStore(EmbeddingStore<TextSegment> embeddingStore) {
+            this.embeddingStore = embeddingStore;
+            return this;
+        }
+
+        public Builder parser(DocumentParser parser) {
+            this.parser = parser;
+            return this;
+        }
+
+        public Builder splitter(DocumentSplitter splitter) {
+            this.splitter = splitter;
+            return this;
+        }
+
+        public Builder delaiRegroupement(Duration delaiRegroupement) {
+            this.delaiRegroupement = delaiRegroupement;
+            return this;
+        }
+
+        //appele apres chaque synchronisation faite par la surveillance
+        public Builder ecouteur(Consumer<StatistiquesSynchronisation> ecouteur) {
+            this.ecouteur = ecouteur;
+            return this;
+        }
+
+        public IndexeurIncremental build() {
+            if (embeddingModel == null || embeddingStore == null) {
+                throw new IllegalArgumentException("embeddingModel et embeddingStore sont obligatoires");
+            }
+            return new IndexeurIncremental(this);
+        }
+    }
+}
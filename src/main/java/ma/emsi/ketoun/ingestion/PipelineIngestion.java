@@ -0,0 +1,389 @@
+package ma.emsi.ketoun.ingestion;
+
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.DocumentParser;
+import dev.langchain4j.data.document.DocumentSplitter;
+import dev.langchain4j.data.document.loader.FileSystemDocumentLoader;
+import dev.langchain4j.data.document.parser.apache.tika.ApacheTikaDocumentParser;
+import dev.langchain4j.data.document.splitter.DocumentSplitters;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import ma.emsi.ketoun.util.SegmentsBinaires;
+import org.apache.tika.parser.AutoDetectParser;
+import org.apache.tika.parser.Parser;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+//pipeline d'ingestion en trois etages paralleles relies par des files bornees :
+//  parse (Tika) -> split (recursive 300/30) -> embed (micro-lots)
+//les files bornees font la contre-pression : un etage rapide attend l'etage suivant au lieu de remplir le heap
+//au-dela de seuilFlux octets un fichier est parse en flux (DecoupeurEnFlux) : ses segments, sans Document complet
+//en memoire, sont mis de cote dans un brouillon sur disque et ne rejoignent la file des segments qu'une fois
+//le parse termine, un fichier qui echoue en cours de route n'est donc pas indexe a moitie
+public class PipelineIngestion {
+
+    private static final Document FIN_DOCUMENTS = Document.from("<fin>");
+    private static final TextSegment FIN_SEGMENTS = TextSegment.from("<fin>");
+
+    private final EmbeddingModel embeddingModel;
+    private final Supplier<DocumentParser> parsers;
+    private final Supplier<Parser> parsersFlux;
+    private final Supplier<DocumentSplitter> splitters;
+    private final int threadsParse;
+    private final int threadsSplit;
+    private final int threadsEmbed;
+    private final int tailleLot;
+    private final int capaciteFiles;
+    private final long seuilFlux;
+
+    private PipelineIngestion(Builder builder) {
+        this.embeddingModel = builder.embeddingModel;
+        this.parsers = builder.parsers;
+        this.parsersFlux = builder.parsersFlux;
+        this.splitters = builder.splitters;
+        this.threadsParse = builder.threadsParse;
+        this.threadsSplit = builder.threadsSplit;
+        this.threadsEmbed = builder.threadsEmbed;
+        this.tailleLot = builder.tailleLot;
+        this.capaciteFiles = builder.capaciteFiles;
+        this.seuilFlux = builder.seuilFlux;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public StatistiquesIngestion ingererRepertoire(Path repertoire, EmbeddingStore<TextSegment> embeddingStore) {
+        try (Stream<Path> fichiers = Files.walk(repertoire)) {
+            return ingerer(fichiers.filter(Files::isRegularFile).toList(), embeddingStore);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public StatistiquesIngestion ingerer(List<Path> fichiers, EmbeddingStore<TextSegment> embeddingStore) {
+        return ingerer(fichiers, (embeddings, segments) -> embeddingStore.addAll(embeddings, segments));
+    }
+
+    //le consommateur recoit chaque lot (embeddings, segments) ; les appels sont serialises
+    public StatistiquesIngestion ingerer(List<Path> fichiers, BiConsumer<List<Embedding>, List<TextSegment>> consommateur) {
+        long debut = System.nanoTime();
+        BlockingQueue<Document> documents = new ArrayBlockingQueue<>(capaciteFiles);
+        BlockingQueue<TextSegment> segments = new ArrayBlockingQueue<>(capaciteFiles * tailleLot);
+        AtomicInteger documentsLus = new AtomicInteger();
+        AtomicInteger echecs = new AtomicInteger();
+        AtomicLong segmentsEmbeddes = new AtomicLong();
+        Object verrouConsommateur = new Object();
+
+        //au premier echec d'un etage on annule tout, sinon les autres etages resteraient bloques sur les files
+        AtomicReference<Throwable> erreur = new AtomicReference<>();
+        List<Future<?>> toutes = new CopyOnWriteArrayList<>();
+        Runnable annuler = () -> toutes.forEach(tache -> tache.cancel(true));
+
+        ExecutorService poolParse = Executors.newFixedThreadPool(threadsParse);
+        ExecutorService poolSplit = Executors.newFixedThreadPool(threadsSplit);
+        ExecutorService poolEmbed = Executors.newFixedThreadPool(threadsEmbed);
+        try {
+            //etage 1 : une tache par fichier, un parser par thread (Tika n'est pas garanti thread-safe)
+            ThreadLocal<DocumentParser> parserParThread = ThreadLocal.withInitial(parsers);
+            ThreadLocal<DecoupeurEnFlux> decoupeurParThread = ThreadLocal.withInitial(
+                    () -> new DecoupeurEnFlux(splitters.get(), parsersFlux.get()));
+            List<Future<?>> tachesParse = new ArrayList<>(fichiers.size());
+            for (Path fichier : fichiers) {
+                tachesParse.add(poolParse.submit(() -> {
+                    if (parsersFlux != null && taille(fichier) >= seuilFlux) {
+                        Path brouillon = Files.createTempFile("ingestion", ".seg");
+                        try {
+                            long nombre;
+                            try (DataOutputStream out = new DataOutputStream(
+                                    new BufferedOutputStream(Files.newOutputStream(brouillon)))) {
+                                ByteArrayOutputStream tampon = new ByteArrayOutputStream();
+                                nombre = decoupeurParThread.get().decouper(fichier,
+                                        segment -> ecrireBrouillon(segment, tampon, out));
+                            } catch (RuntimeException e) {
+                                if (Thread.currentThread().isInterrupted()) {
+                                    throw new CancellationException("Ingestion interrompue");
+                                }
+                                echecs.incrementAndGet();
+                                System.err.println("Echec du parsing de " + fichier + " : " + e.getMessage());
+                                return null;
+                            }
+                            publierBrouillon(brouillon, nombre, segments);
+                            documentsLus.incrementAndGet();
+                            return null;
+                        } finally {
+                            Files.deleteIfExists(brouillon);
+                        }
+                    }
+                    Document document;
+                    try {
+                        document = FileSystemDocumentLoader.loadDocument(fichier, parserParThread.get());
+                    } catch (RuntimeException e) {
+                        //un fichier illisible ne doit pas arreter tout le corpus
+                        echecs.incrementAndGet();
+                        System.err.println("Echec du parsing de " + fichier + " : " + e.getMessage());
+                        return null;
+                    }
+                    documentsLus.incrementAndGet();
+                    documents.put(document);
+                    return null;
+                }));
+            }
+            toutes.addAll(tachesParse);
+
+            //etage 2 : decoupage, jusqu'a recevoir le marqueur de fin
+            List<Future<?>> tachesSplit = new ArrayList<>(threadsSplit);
+            for (int i = 0; i < threadsSplit; i++) {
+                tachesSplit.add(poolSplit.submit(() -> {
+                    try {
+                        DocumentSplitter splitter = splitters.get();
+                        while (true) {
+                            Document document = documents.take();
+                            if (document == FIN_DOCUMENTS) {
+                                return null;
+                            }
+                            for (TextSegment segment : splitter.split(document)) {
+                                segments.put(segment);
+                            }
+                        }
+                    } catch (RuntimeException e) {
+                        erreur.compareAndSet(null, e);
+                        annuler.run();
+                        throw e;
+                    }
+                }));
+            }
+            toutes.addAll(tachesSplit);
+
+            //etage 3 : embeddings par micro-lots
+            List<Future<?>> tachesEmbed = new ArrayList<>(threadsEmbed);
+            for (int i = 0; i < threadsEmbed; i++) {
+                tachesEmbed.add(poolEmbed.submit(() -> {
+                    try {
+                        List<TextSegment> lot = new ArrayList<>(tailleLot);
+                        boolean termine = false;
+                        while (!termine) {
+                            lot.add(segments.take());
+                            segments.drainTo(lot, tailleLot - 1);
+                            //chaque thread consomme exactement un marqueur de fin, les autres sont remis dans la file
+                            int marqueurs = 0;
+                            for (int j = lot.size() - 1; j >= 0; j--) {
+                                if (lot.get(j) == FIN_SEGMENTS) {
+                                    lot.remove(j);
+                                    marqueurs++;
+                                }
+                            }
+                            if (marqueurs > 0) {
+                                termine = true;
+                                for (int j = 1; j < marqueurs; j++) {
+                                    segments.put(FIN_SEGMENTS);
+                                }
+                            }
+                            if (!lot.isEmpty()) {
+                                List<Embedding> embeddings = embeddingModel.embedAll(lot).content();
+                                List<TextSegment> copie = List.copyOf(lot);
+                                synchronized (verrouConsommateur) {
+                                    consommateur.accept(embeddings, copie);
+                                }
+                                segmentsEmbeddes.addAndGet(copie.size());
+                                lot.clear();
+                            }
+                        }
+                        return null;
+                    } catch (RuntimeException e) {
+                        erreur.compareAndSet(null, e);
+                        annuler.run();
+                        throw e;
+                    }
+                }));
+            }
+            toutes.addAll(tachesEmbed);
+
+            attendre(tachesParse, erreur);
+            for (int i = 0; i < threadsSplit; i++) {
+                deposer(documents, FIN_DOCUMENTS, erreur);
+            }
+            attendre(tachesSplit, erreur);
+            for (int i = 0; i < threadsEmbed; i++) {
+                deposer(segments, FIN_SEGMENTS, erreur);
+            }
+            attendre(tachesEmbed, erreur);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Ingestion interrompue", e);
+        } finally {
+            poolParse.shutdownNow();
+            poolSplit.shutdownNow();
+            poolEmbed.shutdownNow();
+        }
+
+        return new StatistiquesIngestion(documentsLus.get(), echecs.get(), segmentsEmbeddes.get(),
+                System.nanoTime() - debut);
+    }
+
+    //un fichier dont la taille est illisible passe par le chemin normal, qui comptera l'echec
+    private static long taille(Path fichier) {
+        try {
+            return Files.size(fichier);
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    //un enregistrement par segment : longueur puis encodage SegmentsBinaires
+    private static void ecrireBrouillon(TextSegment segment, ByteArrayOutputStream tampon, DataOutputStream out) {
+        try {
+            tampon.reset();
+            SegmentsBinaires.ecrire(segment, new DataOutputStream(tampon));
+            out.writeInt(tampon.size());
+            tampon.writeTo(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void publierBrouillon(Path brouillon, long nombre, BlockingQueue<TextSegment> segments)
+            throws IOException, InterruptedException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(brouillon)))) {
+            for (long i = 0; i < nombre; i++) {
+                byte[] octets = new byte[in.readInt()];
+                in.readFully(octets);
+                segments.put(SegmentsBinaires.lire(ByteBuffer.wrap(octets)));
+            }
+        }
+    }
+
+    private static void attendre(List<Future<?>> taches, AtomicReference<Throwable> erreur) throws InterruptedException {
+        for (Future<?> tache : taches) {
+            try {
+                tache.get();
+            } catch (ExecutionException | CancellationException e) {
+                Throwable cause = erreur.get() != null ? erreur.get() : e;
+                throw new IllegalStateException("Echec de l'ingestion", cause);
+            }
+        }
+    }
+
+    //depot d'un marqueur de fin sans rester bloque si l'etage consommateur est mort
+    private static <T> void deposer(BlockingQueue<T> file, T marqueur, AtomicReference<Throwable> erreur)
+            throws InterruptedException {
+        while (!file.offer(marqueur, 100, TimeUnit.MILLISECONDS)) {
+            if (erreur.get() != null) {
+                throw new IllegalStateException("Echec de l'ingestion", erreur.get());
+            }
+        }
+    }
+
+    public static class Builder {
+
+        private EmbeddingModel embeddingModel;
+        private Supplier<DocumentParser> parsers = ApacheTikaDocumentParser::new;
+        private Supplier<Parser> parsersFlux = AutoDetectParser::new;
+        private boolean parsersFluxFixes;
+        private Supplier<DocumentSplitter> splitters = () -> DocumentSplitters.recursive(300, 30);
+        private int threadsParse = Runtime.getRuntime().availableProcessors();
+        private int threadsSplit = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        //le modele ONNX parallelise deja un lot en interne : peu de threads suffisent
+        private int threadsEmbed = Math.max(1, Runtime.getRuntime().availableProcessors() / 4);
+        private int tailleLot = 32;
+        private int capaciteFiles = 64;
+        private long seuilFlux = 64L * 1024 * 1024;
+
+        public Builder embeddingModel(EmbeddingModel embeddingModel) {
+            this.embeddingModel = embeddingModel;
+            return this;
+        }
+
+        //un DocumentParser personnalise ne sait pas parser en flux : sans parsersFlux explicite,
+        //tous les fichiers passent alors par lui, quelle que soit leur taille
+        public Builder parsers(Supplier<DocumentParser> parsers) {
+            this.parsers = parsers;
+            if (!parsersFluxFixes) {
+                this.parsersFlux = null;
+            }
+            return this;
+        }
+
+        //parser Tika utilise au-dela de seuilFlux (AutoDetectParser par defaut)
+        public Builder parsersFlux(Supplier<Parser> parsersFlux) {
+            this.parsersFlux = parsersFlux;
+            this.parsersFluxFixes = true;
+            return this;
+        }
+
+        public Builder splitters(Supplier<DocumentSplitter> splitters) {
+            this.splitters = splitters;
+            return this;
+        }
+
+        public Builder threadsParse(int threadsParse) {
+            this.threadsParse = threadsParse;
+            return this;
+        }
+
+        public Builder threadsSplit(int threadsSplit) {
+            this.threadsSplit = threadsSplit;
+            return this;
+        }
+
+        public Builder threadsEmbed(int threadsEmbed) {
+            this.threadsEmbed = threadsEmbed;
+            return this;
+        }
+
+        public Builder tailleLot(int tailleLot) {
+            this.tailleLot = tailleLot;
+            return this;
+        }
+
+        public Builder capaciteFiles(int capaciteFiles) {
+            this.capaciteFiles = capaciteFiles;
+            return this;
+        }
+
+        //taille de fichier (octets) a partir de laquelle le parse se fait en flux ; 0 = toujours
+        public Builder seuilFlux(long seuilFlux) {
+            this.seuilFlux = seuilFlux;
+            return this;
+        }
+
+        public PipelineIngestion build() {
+            if (embeddingModel == null) {
+                throw new IllegalArgumentException("embeddingModel est obligatoire");
+            }
+            if (threadsParse < 1 || threadsSplit < 1 || threadsEmbed < 1 || tailleLot < 1 || capaciteFiles < 1
+                    || seuilFlux < 0) {
+                throw new IllegalArgumentException("Les tailles et nombres de threads doivent etre >= 1");
+            }
+            return new PipelineIngestion(this);
+        }
+    }
+}
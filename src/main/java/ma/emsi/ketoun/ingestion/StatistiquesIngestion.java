@@ -0,0 +1,14 @@
+package ma.emsi.ketoun.ingestion;
+
+public record StatistiquesIngestion(int documents, int echecs, long segments, long dureeNanos) {
+
+    public double segmentsParSeconde() {
+        return dureeNanos == 0 ? 0 : segments * 1_000_000_000.0 / dureeNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d documents (%d echecs), %d segments en %.1f s -> %.1f segments/s",
+                documents, echecs, segments, dureeNanos / 1e9, segmentsParSeconde());
+    }
+}
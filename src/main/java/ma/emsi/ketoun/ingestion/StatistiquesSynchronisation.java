@@ -0,0 +1,14 @@
+package ma.emsi.ketoun.ingestion;
+
+public record StatistiquesSynchronisation(String document, int ajoutes, int conserves, int supprimes, long dureeNanos) {
+
+    public static StatistiquesSynchronisation inchange(String document, int conserves, long dureeNanos) {
+        return new StatistiquesSynchronisation(document, 0, conserves, 0, dureeNanos);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s : %d segments embeddes, %d conserves, %d supprimes en %.1f ms",
+                document, ajoutes, conserves, supprimes, dureeNanos / 1e6);
+    }
+}
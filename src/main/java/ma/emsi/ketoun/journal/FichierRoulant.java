@@ -0,0 +1,73 @@
+package ma.emsi.ketoun.journal;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+//fichier journal tournant par taille : prefixe.log -> prefixe.1.log -> ... -> prefixe.<fichiersMax>.log
+//au-dela de fichiersMax archives la plus ancienne est supprimee
+//utilise par un seul thread (l'ecrivain du journal)
+final class FichierRoulant implements AutoCloseable {
+
+    private final Path repertoire;
+    private final String prefixe;
+    private final long tailleMax;
+    private final int fichiersMax;
+
+    private BufferedWriter sortie;
+    private long taille;
+
+    FichierRoulant(Path repertoire, String prefixe, long tailleMax, int fichiersMax) throws IOException {
+        this.repertoire = repertoire;
+        this.prefixe = prefixe;
+        this.tailleMax = tailleMax;
+        this.fichiersMax = fichiersMax;
+        Files.createDirectories(repertoire);
+        ouvrir();
+    }
+
+    void ecrireLigne(String ligne) throws IOException {
+        //approximation : 1 octet par caractere, suffisant pour declencher la rotation
+        if (taille > 0 && taille + ligne.length() + 1 > tailleMax) {
+            tourner();
+        }
+        sortie.write(ligne);
+        sortie.newLine();
+        taille += ligne.length() + 1;
+    }
+
+    void vider() throws IOException {
+        sortie.flush();
+    }
+
+    private void ouvrir() throws IOException {
+        Path courant = fichier(0);
+        sortie = Files.newBufferedWriter(courant, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        taille = Files.size(courant);
+    }
+
+    private void tourner() throws IOException {
+        sortie.close();
+        Files.deleteIfExists(fichier(fichiersMax));
+        for (int i = fichiersMax - 1; i >= 0; i--) {
+            if (Files.exists(fichier(i))) {
+                Files.move(fichier(i), fichier(i + 1), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        ouvrir();
+    }
+
+    private Path fichier(int numero) {
+        return repertoire.resolve(numero == 0 ? prefixe + ".log" : prefixe + "." + numero + ".log");
+    }
+
+    @Override
+    public void close() throws IOException {
+        sortie.close();
+    }
+}
@@ -0,0 +1,370 @@
+package ma.emsi.ketoun.journal;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.ToolExecutionResultMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.model.chat.listener.ChatModelErrorContext;
+import dev.langchain4j.model.chat.listener.ChatModelListener;
+import dev.langchain4j.model.chat.listener.ChatModelRequestContext;
+import dev.langchain4j.model.chat.listener.ChatModelResponseContext;
+import dev.langchain4j.model.chat.request.ChatRequest;
+import dev.langchain4j.model.chat.response.ChatResponse;
+import dev.langchain4j.model.output.TokenUsage;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.regex.Pattern;
+
+//journal des echanges avec le modele de chat, a brancher comme listener a la place de logRequestsAndResponses(true)
+//le thread de la requete ne fait que tirer l'echantillonnage et deposer une reference dans un tampon circulaire ;
+//mise en forme JSON, troncature, masquage et ecriture disque sont faits par un thread ecrivain dedie
+//tampon plein : l'echange est abandonne (compte) plutot que de ralentir la requete
+public class JournalEchanges implements ChatModelListener, AutoCloseable {
+
+    private static final Object DEBUT = new Object();
+    private static final Object ECHANTILLONNE = new Object();
+
+    private final double tauxEchantillonnage;
+    private final double tauxEchantillonnageErreurs;
+    private final int longueurMax;
+    private final List<Pattern> masques;
+    private final TamponCirculaire<Echange> tampon;
+    private final FichierRoulant fichier;
+    private final Thread ecrivain;
+    private volatile boolean ferme;
+
+    private final AtomicLong deposes = new AtomicLong();
+    private final AtomicLong abandonnes = new AtomicLong();
+    private final AtomicLong ecrits = new AtomicLong();
+    private final AtomicLong echecsEcriture = new AtomicLong();
+    //producteurs entre la lecture de ferme et la fin de leur depot : close() les attend
+    private final AtomicLong deposEnCours = new AtomicLong();
+
+    private JournalEchanges(Builder builder) {
+        this.tauxEchantillonnage = builder.tauxEchantillonnage;
+        this.tauxEchantillonnageErreurs = builder.tauxEchantillonnageErreurs;
+        this.longueurMax = builder.longueurMax;
+        this.masques = List.copyOf(builder.masques);
+        this.tampon = new TamponCirculaire<>(builder.capaciteTampon);
+        try {
+            this.fichier = new FichierRoulant(builder.repertoire, builder.prefixe, builder.tailleMaxFichier, builder.fichiersMax);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.ecrivain = new Thread(this::ecrire, "journal-echanges");
+        ecrivain.setDaemon(true);
+        ecrivain.start();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public void onRequest(ChatModelRequestContext requestContext) {
+        requestContext.attributes().put(DEBUT, System.nanoTime());
+        if (ThreadLocalRandom.current().nextDouble() < tauxEchantillonnage) {
+            requestContext.attributes().put(ECHANTILLONNE, Boolean.TRUE);
+        }
+    }
+
+    @Override
+    public void onResponse(ChatModelResponseContext responseContext) {
+        if (responseContext.attributes().containsKey(ECHANTILLONNE)) {
+            deposer(new Echange(Instant.now(), duree(responseContext.attributes().get(DEBUT)),
+                    responseContext.chatRequest(), responseContext.chatResponse(), null));
+        }
+    }
+
+    @Override
+    public void onError(ChatModelErrorContext errorContext) {
+        if (errorContext.attributes().containsKey(ECHANTILLONNE)
+                || ThreadLocalRandom.current().nextDouble() < tauxEchantillonnageErreurs) {
+            deposer(new Echange(Instant.now(), duree(errorContext.attributes().get(DEBUT)),
+                    errorContext.chatRequest(), null, errorContext.error()));
+        }
+    }
+
+    private void deposer(Echange echange) {
+        deposEnCours.incrementAndGet();
+        try {
+            if (!ferme && tampon.offrir(echange)) {
+                deposes.incrementAndGet();
+            } else {
+                abandonnes.incrementAndGet();
+            }
+        } finally {
+            deposEnCours.decrementAndGet();
+        }
+    }
+
+    private static long duree(Object debut) {
+        return debut instanceof Long nanos ? System.nanoTime() - nanos : -1;
+    }
+
+    private void ecrire() {
+        while (true) {
+            Echange echange = tampon.prendre();
+            if (echange == null) {
+                try {
+                    fichier.vider();
+                } catch (IOException e) {
+                    System.err.println("Journal des echanges : " + e.getMessage());
+                }
+                if (ferme) {
+                    return;
+                }
+                LockSupport.parkNanos(2_000_000);
+                continue;
+            }
+            ecrireEchange(echange);
+        }
+    }
+
+    private void ecrireEchange(Echange echange) {
+        try {
+            fichier.ecrireLigne(json(echange));
+            ecrits.incrementAndGet();
+        } catch (IOException | RuntimeException e) {
+            echecsEcriture.incrementAndGet();
+            System.err.println("Journal des echanges : " + e.getMessage());
+        }
+    }
+
+    private String json(Echange echange) {
+        StringBuilder json = new StringBuilder(512);
+        json.append("{\"horodatage\":\"").append(echange.horodatage()).append('"');
+        if (echange.dureeNanos() >= 0) {
+            json.append(",\"duree_ms\":").append(echange.dureeNanos() / 1_000_000);
+        }
+        ChatRequest requete = echange.requete();
+        if (requete.modelName() != null) {
+            json.append(",\"modele\":");
+            chaine(json, requete.modelName());
+        }
+        json.append(",\"messages\":[");
+        for (int i = 0; i < requete.messages().size(); i++) {
+            ChatMessage message = requete.messages().get(i);
+            json.append(i == 0 ? "" : ",").append("{\"type\":\"").append(message.type()).append("\",\"texte\":");
+            chaine(json, preparer(texte(message)));
+            json.append('}');
+        }
+        json.append(']');
+        ChatResponse reponse = echange.reponse();
+        if (reponse != null) {
+            json.append(",\"reponse\":");
+            chaine(json, preparer(reponse.aiMessage().text()));
+            TokenUsage usage = reponse.tokenUsage();
+            if (usage != null) {
+                json.append(",\"tokens_entree\":").append(usage.inputTokenCount())
+                        .append(",\"tokens_sortie\":").append(usage.outputTokenCount());
+            }
+            if (reponse.finishReason() != null) {
+                json.append(",\"fin\":\"").append(reponse.finishReason()).append('"');
+            }
+        }
+        if (echange.erreur() != null) {
+            json.append(",\"erreur\":");
+            chaine(json, preparer(String.valueOf(echange.erreur())));
+        }
+        return json.append('}').toString();
+    }
+
+    private static String texte(ChatMessage message) {
+        if (message instanceof UserMessage userMessage) {
+            return userMessage.hasSingleText() ? userMessage.singleText() : String.valueOf(userMessage.contents());
+        }
+        if (message instanceof SystemMessage systemMessage) {
+            return systemMessage.text();
+        }
+        if (message instanceof AiMessage aiMessage) {
+            return aiMessage.text();
+        }
+        if (message instanceof ToolExecutionResultMessage resultat) {
+            return resultat.text();
+        }
+        return String.valueOf(message);
+    }
+
+    //masquage d'abord (sur le texte complet), troncature ensuite
+    private String preparer(String texte) {
+        if (texte == null) {
+            return null;
+        }
+        for (Pattern masque : masques) {
+            texte = masque.matcher(texte).replaceAll("[masque]");
+        }
+        if (texte.length() > longueurMax) {
+            texte = texte.substring(0, longueurMax) + "...[" + (texte.length() - longueurMax) + " caracteres]";
+        }
+        return texte;
+    }
+
+    private static void chaine(StringBuilder json, String texte) {
+        if (texte == null) {
+            json.append("null");
+            return;
+        }
+        json.append('"');
+        for (int i = 0; i < texte.length(); i++) {
+            char c = texte.charAt(i);
+            switch (c) {
+                case '"' -> json.append("\\\"");
+                case '\\' -> json.append("\\\\");
+                case '\n' -> json.append("\\n");
+                case '\r' -> json.append("\\r");
+                case '\t' -> json.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        json.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        json.append(c);
+                    }
+                }
+            }
+        }
+        json.append('"');
+    }
+
+    public long deposes() {
+        return deposes.get();
+    }
+
+    public long abandonnes() {
+        return abandonnes.get();
+    }
+
+    public long ecrits() {
+        return ecrits.get();
+    }
+
+    public long echecsEcriture() {
+        return echecsEcriture.get();
+    }
+
+    //vide le tampon puis ferme le fichier ; ensuite deposes == ecrits + echecsEcriture
+    //un producteur qui a lu ferme == false avant close() peut deposer apres la derniere passe de l'ecrivain :
+    //on attend la fin des depots commences, puis le tampon est vide une derniere fois sur ce thread
+    @Override
+    public void close() {
+        ferme = true;
+        while (deposEnCours.get() > 0) {
+            Thread.onSpinWait();
+        }
+        LockSupport.unpark(ecrivain);
+        try {
+            ecrivain.join();
+            for (Echange echange = tampon.prendre(); echange != null; echange = tampon.prendre()) {
+                ecrireEchange(echange);
+            }
+            fichier.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("JournalEchanges[deposes=%d, ecrits=%d, echecsEcriture=%d, abandonnes=%d]",
+                deposes(), ecrits(), echecsEcriture(), abandonnes());
+    }
+
+    private record Echange(Instant horodatage, long dureeNanos, ChatRequest requete, ChatResponse reponse,
+                           Throwable erreur) {
+    }
+
+    public static class Builder {
+
+        //adresses mail, cles d'API Google, suites de 12 chiffres ou plus (cartes, telephones)
+        public static final List<Pattern> MASQUES_PAR_DEFAUT = List.of(
+                Pattern.compile("[\\w.+-]+@[\\w-]+(\\.[\\w-]+)+"),
+                Pattern.compile("AIza[0-9A-Za-z_-]{35}"),
+                Pattern.compile("\\d(?:[ -]?\\d){11,}"));
+
+        private double tauxEchantillonnage = 0.1;
+        private double tauxEchantillonnageErreurs = 1.0;
+        private int longueurMax = 500;
+        private final List<Pattern> masques = new ArrayList<>(MASQUES_PAR_DEFAUT);
+        private int capaciteTampon = 4096;
+        private Path repertoire = Path.of("logs");
+        private String prefixe = "echanges";
+        private long tailleMaxFichier = 10L * 1024 * 1024;
+        private int fichiersMax = 5;
+
+        //fraction des echanges reussis journalises (0 a 1)
+        public Builder tauxEchantillonnage(double tauxEchantillonnage) {
+            this.tauxEchantillonnage = tauxEchantillonnage;
+            return this;
+        }
+
+        //fraction des echanges en erreur journalises, en plus de ceux deja echantillonnes
+        public Builder tauxEchantillonnageErreurs(double tauxEchantillonnageErreurs) {
+            this.tauxEchantillonnageErreurs = tauxEchantillonnageErreurs;
+            return this;
+        }
+
+        //longueur max de chaque message journalise, en caracteres
+        public Builder longueurMax(int longueurMax) {
+            this.longueurMax = longueurMax;
+            return this;
+        }
+
+        public Builder masque(Pattern masque) {
+            this.masques.add(masque);
+            return this;
+        }
+
+        public Builder sansMasquesParDefaut() {
+            this.masques.removeAll(MASQUES_PAR_DEFAUT);
+            return this;
+        }
+
+        public Builder capaciteTampon(int capaciteTampon) {
+            this.capaciteTampon = capaciteTampon;
+            return this;
+        }
+
+        public Builder repertoire(Path repertoire) {
+            this.repertoire = repertoire;
+            return this;
+        }
+
+        public Builder prefixe(String prefixe) {
+            this.prefixe = prefixe;
+            return this;
+        }
+
+        public Builder tailleMaxFichier(long tailleMaxFichier) {
+            this.tailleMaxFichier = tailleMaxFichier;
+            return this;
+        }
+
+        //nombre d'archives conservees en plus du fichier courant
+        public Builder fichiersMax(int fichiersMax) {
+            this.fichiersMax = fichiersMax;
+            return this;
+        }
+
+        public JournalEchanges build() {
+            if (tauxEchantillonnage < 0 || tauxEchantillonnage > 1
+                    || tauxEchantillonnageErreurs < 0 || tauxEchantillonnageErreurs > 1) {
+                throw new IllegalArgumentException("Les taux d'echantillonnage doivent etre entre 0 et 1");
+            }
+            if (longueurMax < 1 || capaciteTampon < 2 || tailleMaxFichier < 1 || fichiersMax < 1) {
+                throw new IllegalArgumentException("longueurMax, capaciteTampon, tailleMaxFichier et fichiersMax doivent etre positifs");
+            }
+            return new JournalEchanges(this);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package ma.emsi.ketoun.journal;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+//file circulaire bornee multi-producteurs / un seul consommateur, sans verrou
+//chaque case porte un numero de sequence : un producteur reserve une case par CAS sur la queue,
+//le consommateur libere la case en avancant sa sequence d'un tour
+//offrir() n'attend jamais : si le tampon est plein l'element est refuse
+final class TamponCirculaire<T> {
+
+    private final int masque;
+    private final AtomicReferenceArray<T> elements;
+    private final AtomicLongArray sequences;
+    private final AtomicLong queue = new AtomicLong();
+    private long tete;
+
+    TamponCirculaire(int capaciteMin) {
+        int capacite = Integer.highestOneBit(Math.max(2, capaciteMin - 1)) << 1;
+        this.masque = capacite - 1;
+        this.elements = new AtomicReferenceArray<>(capacite);
+        this.sequences = new AtomicLongArray(capacite);
+        for (int i = 0; i < capacite; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    boolean offrir(T element) {
+        while (true) {
+            long position = queue.get();
+            int index = (int) position & masque;
+            long ecart = sequences.get(index) - position;
+            if (ecart == 0) {
+                if (queue.compareAndSet(position, position + 1)) {
+                    elements.set(index, element);
+                    sequences.set(index, position + 1);
+                    return true;
+                }
+            } else if (ecart < 0) {
+                return false;
+            }
+        }
+    }
+
+    //consommateur unique
+    T prendre() {
+        int index = (int) tete & masque;
+        if (sequences.get(index) != tete + 1) {
+            return null;
+        }
+        T element = elements.get(index);
+        elements.set(index, null);
+        sequences.set(index, tete + masque + 1);
+        tete++;
+        return element;
+    }
+}
@@ -0,0 +1,146 @@
+package ma.emsi.ketoun.lexical;
+
+import dev.langchain4j.data.segment.TextSegment;
+import ma.emsi.ketoun.store.TasBorne;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+//index inverse BM25 en memoire sur les memes TextSegment que l'embedding store
+//construit une fois (les segments sont figes), interroge sans verrou
+public final class IndexBm25 {
+
+    private static final float K1 = 1.2f;
+    private static final float B = 0.75f;
+
+    private final List<TextSegment> segments;
+    private final Map<String, ListePostings> postings;
+    private final int[] longueurs;
+    private final float longueurMoyenne;
+    private final int frequenceMax;
+
+    private IndexBm25(List<TextSegment> segments, Map<String, ListePostings> postings, int[] longueurs, int frequenceMax) {
+        this.segments = segments;
+        this.postings = postings;
+        this.longueurs = longueurs;
+        long total = 0;
+        for (int longueur : longueurs) {
+            total += longueur;
+        }
+        this.longueurMoyenne = longueurs.length == 0 ? 1 : Math.max(1, (float) total / longueurs.length);
+        this.frequenceMax = frequenceMax;
+    }
+
+    public static IndexBm25 construire(List<TextSegment> segments) {
+        //segments parcourus dans l'ordre : les ids de chaque liste sont deja croissants
+        Map<String, Brouillon> brouillons = new HashMap<>();
+        int[] longueurs = new int[segments.size()];
+        for (int s = 0; s < segments.size(); s++) {
+            List<String> termes = Tokeniseur.termes(segments.get(s).text());
+            longueurs[s] = termes.size();
+            Map<String, Integer> frequences = new HashMap<>();
+            for (String terme : termes) {
+                frequences.merge(terme, 1, Integer::sum);
+            }
+            for (Map.Entry<String, Integer> entree : frequences.entrySet()) {
+                brouillons.computeIfAbsent(entree.getKey(), t -> new Brouillon()).ajouter(s, entree.getValue());
+            }
+        }
+
+        Map<String, ListePostings> postings = new HashMap<>(brouillons.size() * 2);
+        int frequenceMax = 0;
+        for (Map.Entry<String, Brouillon> entree : brouillons.entrySet()) {
+            Brouillon brouillon = entree.getValue();
+            postings.put(entree.getKey(), ListePostings.compresser(brouillon.segments, brouillon.frequences, brouillon.taille));
+            frequenceMax = Math.max(frequenceMax, brouillon.taille);
+        }
+        return new IndexBm25(List.copyOf(segments), postings, longueurs, frequenceMax);
+    }
+
+    public List<Resultat> rechercher(String requete, int maxResultats) {
+        int n = segments.size();
+        if (n == 0 || maxResultats <= 0) {
+            return List.of();
+        }
+        float[] scores = new float[n];
+        int[] ids = new int[frequenceMax];
+        int[] frequences = new int[frequenceMax];
+        boolean trouve = false;
+        //un terme repete dans la requete ne compte qu'une fois
+        for (String terme : new LinkedHashSet<>(Tokeniseur.termes(requete))) {
+            ListePostings liste = postings.get(terme);
+            if (liste == null) {
+                continue;
+            }
+            trouve = true;
+            int df = liste.taille();
+            float idf = (float) Math.log(1 + (n - df + 0.5) / (df + 0.5));
+            liste.decoder(ids, frequences);
+            for (int i = 0; i < df; i++) {
+                float tf = frequences[i];
+                float normalisation = K1 * (1 - B + B * longueurs[ids[i]] / longueurMoyenne);
+                scores[ids[i]] += idf * tf * (K1 + 1) / (tf + normalisation);
+            }
+        }
+        if (!trouve) {
+            return List.of();
+        }
+
+        TasBorne meilleurs = new TasBorne(Math.min(maxResultats, n));
+        for (int s = 0; s < n; s++) {
+            if (scores[s] > 0 && meilleurs.accepte(scores[s])) {
+                meilleurs.ajouter(s, scores[s]);
+            }
+        }
+        meilleurs.trierDecroissant();
+        List<Resultat> resultats = new ArrayList<>(meilleurs.taille());
+        for (int rang = 0; rang < meilleurs.taille(); rang++) {
+            resultats.add(new Resultat(segments.get(meilleurs.index(rang)), meilleurs.score(rang)));
+        }
+        return resultats;
+    }
+
+    public int taille() {
+        return segments.size();
+    }
+
+    public int termes() {
+        return postings.size();
+    }
+
+    public long octetsPostings() {
+        long total = 0;
+        for (ListePostings liste : postings.values()) {
+            total += liste.octets();
+        }
+        return total;
+    }
+
+    public record Resultat(TextSegment segment, float score) {
+    }
+
+    private static final class Brouillon {
+        private int[] segments = new int[4];
+        private int[] frequences = new int[4];
+        private int taille;
+
+        void ajouter(int segment, int frequence) {
+            if (taille == segments.length) {
+                segments = Arrays.copyOf(segments, taille * 2);
+                frequences = Arrays.copyOf(frequences, taille * 2);
+            }
+            segments[taille] = segment;
+            frequences[taille] = frequence;
+            taille++;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("IndexBm25[segments=%d, termes=%d, postings=%d octets]", taille(), termes(), octetsPostings());
+    }
+}
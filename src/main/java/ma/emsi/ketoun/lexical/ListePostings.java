@@ -0,0 +1,73 @@
+package ma.emsi.ketoun.lexical;
+
+import java.util.Arrays;
+
+//liste de postings d'un terme : ids de segments croissants codes en ecarts, puis frequences,
+//le tout en entiers de longueur variable (7 bits par octet) dans un seul byte[]
+final class ListePostings {
+
+    private final byte[] octets;
+    private final int taille;
+
+    private ListePostings(byte[] octets, int taille) {
+        this.octets = octets;
+        this.taille = taille;
+    }
+
+    //segments strictement croissants
+    static ListePostings compresser(int[] segments, int[] frequences, int taille) {
+        byte[] tampon = new byte[taille * 10];
+        int position = 0;
+        int precedent = 0;
+        for (int i = 0; i < taille; i++) {
+            position = ecrire(tampon, position, segments[i] - precedent);
+            precedent = segments[i];
+            position = ecrire(tampon, position, frequences[i]);
+        }
+        return new ListePostings(Arrays.copyOf(tampon, position), taille);
+    }
+
+    int taille() {
+        return taille;
+    }
+
+    int octets() {
+        return octets.length;
+    }
+
+    //decode en place dans les tableaux fournis (taille >= taille())
+    void decoder(int[] segments, int[] frequences) {
+        int position = 0;
+        int courant = 0;
+        for (int i = 0; i < taille; i++) {
+            int valeur = 0;
+            int decalage = 0;
+            byte octet;
+            do {
+                octet = octets[position++];
+                valeur |= (octet & 0x7F) << decalage;
+                decalage += 7;
+            } while (octet < 0);
+            courant += valeur;
+            segments[i] = courant;
+
+            valeur = 0;
+            decalage = 0;
+            do {
+                octet = octets[position++];
+                valeur |= (octet & 0x7F) << decalage;
+                decalage += 7;
+            } while (octet < 0);
+            frequences[i] = valeur;
+        }
+    }
+
+    private static int ecrire(byte[] tampon, int position, int valeur) {
+        while ((valeur & ~0x7F) != 0) {
+            tampon[position++] = (byte) ((valeur & 0x7F) | 0x80);
+            valeur >>>= 7;
+        }
+        tampon[position++] = (byte) valeur;
+        return position;
+    }
+}
@@ -0,0 +1,129 @@
+package ma.emsi.ketoun.lexical;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.content.retriever.ContentRetriever;
+import dev.langchain4j.rag.query.Query;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+//retriever hybride : recherche dense (embeddings) + recherche lexicale (BM25) fusionnees par rang reciproque
+//score RRF d'un segment = somme sur les deux listes de 1 / (constanteRrf + rang)
+//les termes exacts (codes d'examen, references produit) que MiniLM rate remontent par la liste BM25
+public class RetrieverHybride implements ContentRetriever {
+
+    private final EmbeddingStore<TextSegment> embeddingStore;
+    private final EmbeddingModel embeddingModel;
+    private final IndexBm25 indexBm25;
+    private final int maxResults;
+    private final double minScore;
+    private final int candidats;
+    private final int constanteRrf;
+
+    private RetrieverHybride(Builder builder) {
+        this.embeddingStore = builder.embeddingStore;
+        this.embeddingModel = builder.embeddingModel;
+        this.indexBm25 = builder.indexBm25;
+        this.maxResults = builder.maxResults;
+        this.minScore = builder.minScore;
+        this.candidats = builder.candidats;
+        this.constanteRrf = builder.constanteRrf;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public List<Content> retrieve(Query query) {
+        Embedding requete = embeddingModel.embed(query.text()).content();
+        List<EmbeddingMatch<TextSegment>> denses = embeddingStore.search(EmbeddingSearchRequest.builder()
+                .queryEmbedding(requete)
+                .maxResults(candidats)
+                .minScore(minScore)
+                .build()).matches();
+        List<IndexBm25.Resultat> lexicaux = indexBm25.rechercher(query.text(), candidats);
+
+        Map<TextSegment, Double> scores = new LinkedHashMap<>();
+        for (int rang = 0; rang < denses.size(); rang++) {
+            scores.merge(denses.get(rang).embedded(), 1.0 / (constanteRrf + rang + 1), Double::sum);
+        }
+        for (int rang = 0; rang < lexicaux.size(); rang++) {
+            scores.merge(lexicaux.get(rang).segment(), 1.0 / (constanteRrf + rang + 1), Double::sum);
+        }
+
+        List<Map.Entry<TextSegment, Double>> fusion = new ArrayList<>(scores.entrySet());
+        fusion.sort(Map.Entry.<TextSegment, Double>comparingByValue().reversed());
+        List<Content> contenus = new ArrayList<>(Math.min(maxResults, fusion.size()));
+        for (int i = 0; i < fusion.size() && i < maxResults; i++) {
+            contenus.add(Content.from(fusion.get(i).getKey()));
+        }
+        return contenus;
+    }
+
+    public static class Builder {
+
+        private EmbeddingStore<TextSegment> embeddingStore;
+        private EmbeddingModel embeddingModel;
+        private IndexBm25 indexBm25;
+        private int maxResults = 2;
+        private double minScore = 0.5;
+        private int candidats = 20;
+        private int constanteRrf = 60;
+
+        public Builder embeddingStore(EmbeddingStore<TextSegment> embeddingStore) {
+            this.embeddingStore = embeddingStore;
+            return this;
+        }
+
+        public Builder embeddingModel(EmbeddingModel embeddingModel) {
+            this.embeddingModel = embeddingModel;
+            return this;
+        }
+
+        public Builder indexBm25(IndexBm25 indexBm25) {
+            this.indexBm25 = indexBm25;
+            return this;
+        }
+
+        public Builder maxResults(int maxResults) {
+            this.maxResults = maxResults;
+            return this;
+        }
+
+        //seuil de la liste dense seulement : la liste BM25 n'a pas de seuil
+        public Builder minScore(double minScore) {
+            this.minScore = minScore;
+            return this;
+        }
+
+        //taille de chaque liste avant fusion
+        public Builder candidats(int candidats) {
+            this.candidats = candidats;
+            return this;
+        }
+
+        public Builder constanteRrf(int constanteRrf) {
+            this.constanteRrf = constanteRrf;
+            return this;
+        }
+
+        public RetrieverHybride build() {
+            if (embeddingStore == null || embeddingModel == null || indexBm25 == null) {
+                throw new IllegalArgumentException("embeddingStore, embeddingModel et indexBm25 sont obligatoires");
+            }
+            if (maxResults < 1 || candidats < maxResults || constanteRrf < 0) {
+                throw new IllegalArgumentException("Il faut maxResults >= 1, candidats >= maxResults et constanteRrf >= 0");
+            }
+            return new RetrieverHybride(this);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package ma.emsi.ketoun.lexical;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+//decoupage en termes pour BM25 : minuscules, accents retires, mots vides francais/anglais ignores
+//les codes composes (1Z0-771, ISO_8859) donnent aussi un terme colle ("1z0771") pour qu'une requete
+//ecrite avec ou sans separateur retrouve le meme segment
+final class Tokeniseur {
+
+    private static final Pattern MOT = Pattern.compile("[\\p{L}\\p{N}]+(?:[-_./][\\p{L}\\p{N}]+)*");
+    private static final Pattern SEPARATEUR = Pattern.compile("[-_./]");
+    private static final Pattern DIACRITIQUES = Pattern.compile("\\p{M}+");
+
+    private static final Set<String> MOTS_VIDES = Set.of(
+            "le", "la", "les", "un", "une", "des", "de", "du", "et", "ou", "a", "au", "aux", "en", "dans", "pour",
+            "par", "sur", "avec", "est", "sont", "ce", "cet", "cette", "ces", "qui", "que", "quoi", "quel", "quelle",
+            "il", "elle", "ils", "elles", "on", "se", "sa", "son", "ses", "ne", "pas", "plus", "l", "d", "qu", "c",
+            "the", "of", "and", "or", "to", "in", "is", "are", "for", "with", "what", "which");
+
+    private Tokeniseur() {
+    }
+
+    static List<String> termes(String texte) {
+        String normalise = DIACRITIQUES.matcher(Normalizer.normalize(texte, Normalizer.Form.NFD)).replaceAll("")
+                .toLowerCase();
+        List<String> termes = new ArrayList<>();
+        Matcher mot = MOT.matcher(normalise);
+        while (mot.find()) {
+            String compose = mot.group();
+            String[] parties = SEPARATEUR.split(compose);
+            for (String partie : parties) {
+                if (!MOTS_VIDES.contains(partie)) {
+                    termes.add(partie);
+                }
+            }
+            if (parties.length > 1) {
+                termes.add(String.join("", parties));
+            }
+        }
+        return termes;
+    }
+}
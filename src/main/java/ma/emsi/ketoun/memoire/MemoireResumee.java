@@ -0,0 +1,331 @@
+package ma.emsi.ketoun.memoire;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.ChatMessageDeserializer;
+import dev.langchain4j.data.message.ChatMessageSerializer;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.TextContent;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.memory.ChatMemory;
+import dev.langchain4j.model.TokenCountEstimator;
+import dev.langchain4j.model.chat.ChatModel;
+import ma.emsi.ketoun.contexte.EstimateurTokens;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+//memoire de chat bornee en tokens plutot qu'en messages
+//au-dela de budgetTokens, les tours les plus anciens sont resumes par un ChatModel sur un executor a part :
+//l'appel chat en cours n'attend jamais le resume, il voit l'ancien etat jusqu'a ce que le nouveau soit pret
+//le resume glissant est presente au modele dans le message systeme
+//si le resume prend du retard (ou echoue), les tours les plus anciens sont abandonnes au-dela de 2 x budget
+public class MemoireResumee implements ChatMemory {
+
+    private static final int MAGIQUE = 0x54503444; // "TP4M"
+    private static final int VERSION = 1;
+
+    private static final ExecutorService EXECUTOR_DEFAUT = Executors.newVirtualThreadPerTaskExecutor();
+
+    private static final String CONSIGNE_RESUME = """
+            Tu resumes une conversation entre un utilisateur et un assistant pour servir de memoire a l'assistant.
+            Conserve les faits, noms, chiffres, decisions, preferences de l'utilisateur et questions en suspens.
+            Ignore les extraits de documents cites, sauf ce qui a servi a la reponse.
+            Reponds uniquement par le resume, en %d mots au plus.""";
+
+    private final Object id;
+    private final ChatModel resumeur;
+    private final Executor executor;
+    private final TokenCountEstimator estimateur;
+    private final int budgetTokens;
+    private final int motsResume;
+
+    private SystemMessage systeme;
+    private String resume;
+    private final List<ChatMessage> messages = new ArrayList<>();
+    //incremente par clear() : un resume lance avant est ignore
+    private long generation;
+    private CompletableFuture<Void> compaction = CompletableFuture.completedFuture(null);
+
+    private MemoireResumee(Builder builder) {
+        Object idRestaure = builder.etat == null ? null : restaurer(builder.etat);
+        this.id = builder.id != null ? builder.id : idRestaure != null ? idRestaure : UUID.randomUUID().toString();
+        this.resumeur = builder.resumeur;
+        this.executor = builder.executor;
+        this.estimateur = builder.estimateur;
+        this.budgetTokens = builder.budgetTokens;
+        this.motsResume = builder.motsResume;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public Object id() {
+        return id;
+    }
+
+    @Override
+    public synchronized void add(ChatMessage message) {
+        if (message instanceof SystemMessage nouveau) {
+            //comme MessageWindowChatMemory : un seul message systeme, le dernier recu
+            systeme = nouveau;
+            return;
+        }
+        messages.add(message);
+        int tokens = estimateur.estimateTokenCountInMessages(messages);
+        if (tokens > budgetTokens && compaction.isDone()) {
+            lancerCompaction();
+        }
+        if (tokens > 2 * budgetTokens) {
+            abandonnerPlusAnciens();
+        }
+    }
+
+    @Override
+    public synchronized List<ChatMessage> messages() {
+        List<ChatMessage> resultat = new ArrayList<>(messages.size() + 1);
+        if (resume != null) {
+            String texte = (systeme == null ? "" : systeme.text() + "\n\n")
+                    + "Resume de la conversation precedente :\n" + resume;
+            resultat.add(SystemMessage.from(texte));
+        } else if (systeme != null) {
+            resultat.add(systeme);
+        }
+        resultat.addAll(messages);
+        return resultat;
+    }
+
+    @Override
+    public synchronized void clear() {
+        messages.clear();
+        systeme = null;
+        resume = null;
+        generation++;
+    }
+
+    public synchronized String resume() {
+        return resume;
+    }
+
+    //termine quand le resume en cours (s'il y en a un) a ete integre
+    public synchronized CompletableFuture<Void> compaction() {
+        return compaction;
+    }
+
+    //etat complet (id, resume, messages) pour persister une session ; voir Builder.etat
+    public synchronized byte[] serialiser() {
+        List<ChatMessage> tous = new ArrayList<>(messages.size() + 1);
+        if (systeme != null) {
+            tous.add(systeme);
+        }
+        tous.addAll(messages);
+        ByteArrayOutputStream octets = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(octets)) {
+            out.writeInt(MAGIQUE);
+            out.writeInt(VERSION);
+            ecrireChaine(String.valueOf(id), out);
+            ecrireChaine(resume == null ? "" : resume, out);
+            ecrireChaine(ChatMessageSerializer.messagesToJson(tous), out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return octets.toByteArray();
+    }
+
+    //appele sous le moniteur : on prend les tours les plus anciens pour revenir a la moitie du budget
+    private void lancerCompaction() {
+        int debutConserve = debutConserve(budgetTokens / 2);
+        if (debutConserve <= 0) {
+            return;
+        }
+        List<ChatMessage> aResumer = List.copyOf(messages.subList(0, debutConserve));
+        String resumePrecedent = resume;
+        long generationLancee = generation;
+        compaction = CompletableFuture
+                .supplyAsync(() -> resumer(resumePrecedent, aResumer), executor)
+                .handle((nouveauResume, erreur) -> {
+                    if (erreur != null) {
+                        System.err.println("Echec du resume de la memoire " + id + " : " + erreur.getMessage());
+                    } else {
+                        integrer(generationLancee, nouveauResume, aResumer);
+                    }
+                    return null;
+                });
+    }
+
+    private synchronized void integrer(long generationLancee, String nouveauResume, List<ChatMessage> resumes) {
+        if (generationLancee != generation) {
+            return;
+        }
+        resume = nouveauResume;
+        //par identite : certains ont pu etre abandonnes entre temps
+        Set<ChatMessage> aRetirer = Collections.newSetFromMap(new IdentityHashMap<>());
+        aRetirer.addAll(resumes);
+        messages.removeIf(aRetirer::contains);
+    }
+
+    //plus petit indice d'un message utilisateur a partir duquel la fin tient dans la cible ;
+    //a defaut, le dernier message utilisateur (on garde toujours le tour en cours)
+    private int debutConserve(int cible) {
+        int tokens = 0;
+        int debut = -1;
+        for (int i = messages.size() - 1; i > 0; i--) {
+            tokens += estimateur.estimateTokenCountInMessage(messages.get(i));
+            if (messages.get(i) instanceof UserMessage) {
+                if (tokens > cible && debut > 0) {
+                    break;
+                }
+                debut = i;
+            }
+        }
+        return debut;
+    }
+
+    //filet de securite : on retire des tours entiers en tete jusqu'a revenir sous 2 x budget
+    //un tour va d'un message utilisateur jusqu'au suivant : le dernier tour est toujours garde,
+    //reponse comprise, meme s'il depasse a lui seul le budget (jamais de reponse orpheline en tete)
+    private void abandonnerPlusAnciens() {
+        while (estimateur.estimateTokenCountInMessages(messages) > 2 * budgetTokens) {
+            int fin = 1;
+            while (fin < messages.size() && !(messages.get(fin) instanceof UserMessage)) {
+                fin++;
+            }
+            if (fin >= messages.size()) {
+                return;
+            }
+            messages.subList(0, fin).clear();
+        }
+    }
+
+    private String resumer(String resumePrecedent, List<ChatMessage> aResumer) {
+        StringBuilder echanges = new StringBuilder();
+        if (resumePrecedent != null) {
+            echanges.append("Resume precedent :\n").append(resumePrecedent).append("\n\n");
+        }
+        echanges.append("Nouveaux echanges :\n");
+        for (ChatMessage message : aResumer) {
+            if (message instanceof UserMessage userMessage) {
+                echanges.append("Utilisateur : ");
+                userMessage.contents().forEach(contenu -> {
+                    if (contenu instanceof TextContent texte) {
+                        echanges.append(texte.text());
+                    }
+                });
+                echanges.append('\n');
+            } else if (message instanceof AiMessage aiMessage && aiMessage.text() != null) {
+                echanges.append("Assistant : ").append(aiMessage.text()).append('\n');
+            }
+        }
+        return resumeur.chat(
+                        SystemMessage.from(CONSIGNE_RESUME.formatted(motsResume)),
+                        UserMessage.from(echanges.toString()))
+                .aiMessage().text();
+    }
+
+    //renvoie l'id enregistre
+    private String restaurer(byte[] etat) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(etat))) {
+            if (in.readInt() != MAGIQUE || in.readInt() != VERSION) {
+                throw new IllegalArgumentException("Etat de memoire inconnu");
+            }
+            String idLu = lireChaine(in);
+            String resumeLu = lireChaine(in);
+            resume = resumeLu.isEmpty() ? null : resumeLu;
+            for (ChatMessage message : ChatMessageDeserializer.messagesFromJson(lireChaine(in))) {
+                if (message instanceof SystemMessage systemMessage) {
+                    systeme = systemMessage;
+                } else {
+                    messages.add(message);
+                }
+            }
+            return idLu;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void ecrireChaine(String valeur, DataOutputStream out) throws IOException {
+        byte[] octets = valeur.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(octets.length);
+        out.write(octets);
+    }
+
+    private static String lireChaine(DataInputStream in) throws IOException {
+        return new String(in.readNBytes(in.readInt()), StandardCharsets.UTF_8);
+    }
+
+    public static class Builder {
+
+        private Object id;
+        private ChatModel resumeur;
+        private Executor executor = EXECUTOR_DEFAUT;
+        private TokenCountEstimator estimateur = new EstimateurTokens();
+        private int budgetTokens = 2000;
+        private int motsResume = 150;
+        private byte[] etat;
+
+        public Builder id(Object id) {
+            this.id = id;
+            return this;
+        }
+
+        //modele qui produit les resumes (le modele de chat lui-meme convient)
+        public Builder resumeur(ChatModel resumeur) {
+            this.resumeur = resumeur;
+            return this;
+        }
+
+        public Builder executor(Executor executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        public Builder estimateur(TokenCountEstimator estimateur) {
+            this.estimateur = estimateur;
+            return this;
+        }
+
+        public Builder budgetTokens(int budgetTokens) {
+            this.budgetTokens = budgetTokens;
+            return this;
+        }
+
+        public Builder motsResume(int motsResume) {
+            this.motsResume = motsResume;
+            return this;
+        }
+
+        //etat produit par serialiser() ; sans id explicite, la memoire reprend l'id enregistre
+        public Builder etat(byte[] etat) {
+            this.etat = etat;
+            return this;
+        }
+
+        public MemoireResumee build() {
+            if (resumeur == null || executor == null || estimateur == null) {
+                throw new IllegalArgumentException("resumeur, executor et estimateur sont obligatoires");
+            }
+            if (budgetTokens < 1 || motsResume < 1) {
+                throw new IllegalArgumentException("budgetTokens et motsResume doivent etre >= 1");
+            }
+            return new MemoireResumee(this);
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package ma.emsi.ketoun.metriques;
+
+import java.util.concurrent.atomic.LongAdder;
+
+public final class Compteur {
+
+    private final String nom;
+    private final String aide;
+    private final LongAdder valeur = new LongAdder();
+
+    Compteur(String nom, String aide) {
+        this.nom = nom;
+        this.aide = aide;
+    }
+
+    public void incrementer() {
+        valeur.increment();
+    }
+
+    public void ajouter(long n) {
+        valeur.add(n);
+    }
+
+    public long valeur() {
+        return valeur.sum();
+    }
+
+    public String nom() {
+        return nom;
+    }
+
+    public String aide() {
+        return aide;
+    }
+}
@@ -0,0 +1,40 @@
+package ma.emsi.ketoun.metriques;
+
+import dev.langchain4j.model.chat.listener.ChatModelErrorContext;
+import dev.langchain4j.model.chat.listener.ChatModelListener;
+import dev.langchain4j.model.chat.listener.ChatModelRequestContext;
+import dev.langchain4j.model.chat.listener.ChatModelResponseContext;
+import dev.langchain4j.model.output.TokenUsage;
+
+//listener langchain4j pour les modeles de chat (bloquants ou streaming) : duree totale et tokens
+//le temps jusqu'au premier token est mesure par LecteurStreaming
+public class EcouteurMetriquesChat implements ChatModelListener {
+
+    private static final Object DEBUT = new Object();
+
+    @Override
+    public void onRequest(ChatModelRequestContext requestContext) {
+        requestContext.attributes().put(DEBUT, System.nanoTime());
+    }
+
+    @Override
+    public void onResponse(ChatModelResponseContext responseContext) {
+        if (responseContext.attributes().get(DEBUT) instanceof Long debut) {
+            MetriquesRag.LLM_TOTAL.enregistrerDepuis(debut);
+        }
+        TokenUsage usage = responseContext.chatResponse().tokenUsage();
+        if (usage != null) {
+            if (usage.inputTokenCount() != null) {
+                MetriquesRag.TOKENS_PROMPT.enregistrer(usage.inputTokenCount());
+            }
+            if (usage.outputTokenCount() != null) {
+                MetriquesRag.TOKENS_REPONSE.enregistrer(usage.outputTokenCount());
+            }
+        }
+    }
+
+    @Override
+    public void onError(ChatModelErrorContext errorContext) {
+        MetriquesRag.LLM_ERREURS.incrementer();
+    }
+}
@@ -0,0 +1,116 @@
+package ma.emsi.ketoun.metriques;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+//histogramme log-lineaire a seaux fixes : 8 sous-seaux par puissance de 2 (erreur relative <= 12.5%)
+//enregistrer() ne fait que des increments atomiques : aucune allocation ni verrou sur le chemin chaud
+public final class Histogramme {
+
+    private static final int BITS_SOUS_SEAUX = 3;
+    private static final int SOUS_SEAUX = 1 << BITS_SOUS_SEAUX;
+    private static final int SEAUX = (64 - BITS_SOUS_SEAUX + 1) * SOUS_SEAUX;
+
+    private final String nom;
+    private final String aide;
+    private final Unite unite;
+
+    private final AtomicLongArray comptes = new AtomicLongArray(SEAUX);
+    private final LongAdder nombre = new LongAdder();
+    private final LongAdder somme = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    Histogramme(String nom, String aide, Unite unite) {
+        this.nom = nom;
+        this.aide = aide;
+        this.unite = unite;
+    }
+
+    public void enregistrer(long valeur) {
+        if (valeur < 0) {
+            valeur = 0;
+        }
+        comptes.incrementAndGet(seau(valeur));
+        nombre.increment();
+        somme.add(valeur);
+        long courant = max.get();
+        while (valeur > courant && !max.compareAndSet(courant, valeur)) {
+            courant = max.get();
+        }
+    }
+
+    //pour les durees : h.enregistrerDepuis(debut) avec debut = System.nanoTime()
+    public void enregistrerDepuis(long debutNanos) {
+        enregistrer(System.nanoTime() - debutNanos);
+    }
+
+    public long nombre() {
+        return nombre.sum();
+    }
+
+    public long somme() {
+        return somme.sum();
+    }
+
+    public long max() {
+        return max.get();
+    }
+
+    public double moyenne() {
+        long n = nombre();
+        return n == 0 ? 0 : (double) somme() / n;
+    }
+
+    //borne haute du seau qui contient le quantile demande (jamais au-dessus du max observe)
+    public long quantile(double q) {
+        long[] instantane = new long[SEAUX];
+        long total = 0;
+        for (int i = 0; i < SEAUX; i++) {
+            instantane[i] = comptes.get(i);
+            total += instantane[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rang = Math.max(1, (long) Math.ceil(q * total));
+        long cumul = 0;
+        for (int i = 0; i < SEAUX; i++) {
+            cumul += instantane[i];
+            if (cumul >= rang) {
+                return Math.min(borneHaute(i), max());
+            }
+        }
+        return max();
+    }
+
+    public String nom() {
+        return nom;
+    }
+
+    public String aide() {
+        return aide;
+    }
+
+    public Unite unite() {
+        return unite;
+    }
+
+    static int seau(long valeur) {
+        if (valeur < SOUS_SEAUX) {
+            return (int) valeur;
+        }
+        int exposant = 63 - Long.numberOfLeadingZeros(valeur);
+        int sousSeau = (int) (valeur >>> (exposant - BITS_SOUS_SEAUX)) & (SOUS_SEAUX - 1);
+        return (exposant - BITS_SOUS_SEAUX + 1) * SOUS_SEAUX + sousSeau;
+    }
+
+    static long borneHaute(int seau) {
+        if (seau < SOUS_SEAUX) {
+            return seau;
+        }
+        int exposant = seau / SOUS_SEAUX + BITS_SOUS_SEAUX - 1;
+        long base = (long) (SOUS_SEAUX + seau % SOUS_SEAUX) << (exposant - BITS_SOUS_SEAUX);
+        return base + (1L << (exposant - BITS_SOUS_SEAUX)) - 1;
+    }
+}
@@ -0,0 +1,65 @@
+package ma.emsi.ketoun.metriques;
+
+//metriques du pipeline RAG, enregistrees dans le registre global
+public final class MetriquesRag {
+
+    private static final RegistreMetriques REGISTRE = RegistreMetriques.global();
+
+    public static final Histogramme DEMARRAGE = REGISTRE.histogramme("rag_demarrage",
+            "Du lancement de la JVM a l'acceptation des requetes, prechauffage compris", Unite.DUREE);
+
+    public static final Histogramme EMBEDDING_REQUETE = REGISTRE.histogramme("rag_embedding_requete",
+            "Embedding des requetes, cache compris", Unite.DUREE);
+    public static final Compteur EMBEDDING_CACHE_HITS = REGISTRE.compteur("rag_embedding_cache_hits_total",
+            "Textes de requete trouves dans le cache d'embeddings");
+
+    public static final Histogramme RECHERCHE_STORE = REGISTRE.histogramme("rag_recherche_store",
+            "Recherche dans un embedding store", Unite.DUREE);
+    public static final Histogramme CANDIDATS_EVALUES = REGISTRE.histogramme("rag_recherche_candidats",
+            "Vecteurs dont la similarite a ete calculee par recherche", Unite.NOMBRE);
+
+    public static final Histogramme ROUTAGE = REGISTRE.histogramme("rag_routage",
+            "Decision de routage, repli LLM compris", Unite.DUREE);
+    public static final Compteur ROUTAGE_REPLI = REGISTRE.compteur("rag_routage_repli_total",
+            "Decisions de routage deleguees au routeur de repli");
+
+    public static final Histogramme RECUPERATION = REGISTRE.histogramme("rag_recuperation",
+            "Interrogation parallele des retrievers routes", Unite.DUREE);
+    public static final Compteur RECUPERATION_HORS_DELAI = REGISTRE.compteur("rag_recuperation_hors_delai_total",
+            "Retrievers abandonnes a leur delai");
+
+    public static final Compteur SPECULATION_LANCEES = REGISTRE.compteur("rag_speculation_lancees_total",
+            "Recherches lancees avant la fin du routage LLM");
+    public static final Compteur SPECULATION_GASPILLEES = REGISTRE.compteur("rag_speculation_gaspillees_total",
+            "Recherches speculatives annulees ou jetees car non routees");
+    public static final Histogramme SPECULATION_RECOUVREMENT = REGISTRE.histogramme("rag_speculation_recouvrement",
+            "Temps de recherche cache derriere le routage LLM", Unite.DUREE);
+    public static final Histogramme SPECULATION_TRAVAIL_PERDU = REGISTRE.histogramme("rag_speculation_travail_perdu",
+            "Temps de recherche speculative gaspille", Unite.DUREE);
+
+    public static final Histogramme WEB_RECHERCHE = REGISTRE.histogramme("rag_web_recherche",
+            "Recherche web vue de l'appelant, cache compris", Unite.DUREE);
+    public static final Compteur WEB_CACHE_HITS = REGISTRE.compteur("rag_web_cache_hits_total",
+            "Recherches web servies par le cache (memoire ou disque)");
+    public static final Compteur WEB_COALESCEES = REGISTRE.compteur("rag_web_coalescees_total",
+            "Recherches web qui ont attendu une recherche identique deja en vol");
+
+    public static final Histogramme CONTEXTE_TOKENS = REGISTRE.histogramme("rag_contexte_tokens",
+            "Tokens de contenus recuperes injectes dans le prompt", Unite.NOMBRE);
+    public static final Histogramme CONTEXTE_TOKENS_ECONOMISES = REGISTRE.histogramme("rag_contexte_tokens_economises",
+            "Tokens de contenus retires par deduplication, fusion et budget", Unite.NOMBRE);
+
+    public static final Histogramme LLM_PREMIER_TOKEN = REGISTRE.histogramme("rag_llm_premier_token",
+            "Temps jusqu'au premier token en streaming", Unite.DUREE);
+    public static final Histogramme LLM_TOTAL = REGISTRE.histogramme("rag_llm_total",
+            "Appel complet au modele de chat", Unite.DUREE);
+    public static final Compteur LLM_ERREURS = REGISTRE.compteur("rag_llm_erreurs_total",
+            "Appels au modele de chat en erreur");
+    public static final Histogramme TOKENS_PROMPT = REGISTRE.histogramme("rag_llm_tokens_prompt",
+            "Tokens en entree par appel", Unite.NOMBRE);
+    public static final Histogramme TOKENS_REPONSE = REGISTRE.histogramme("rag_llm_tokens_reponse",
+            "Tokens en sortie par appel", Unite.NOMBRE);
+
+    private MetriquesRag() {
+    }
+}
@@ -0,0 +1,69 @@
+package ma.emsi.ketoun.metriques;
+
+import java.io.PrintStream;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+//registre des histogrammes et compteurs, exportable au format texte Prometheus ou affichable en tableau
+//les metriques sont creees une fois (champs static final) ; le chemin chaud ne touche jamais les maps
+public final class RegistreMetriques {
+
+    private static final RegistreMetriques GLOBAL = new RegistreMetriques();
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private final ConcurrentSkipListMap<String, Histogramme> histogrammes = new ConcurrentSkipListMap<>();
+    private final ConcurrentSkipListMap<String, Compteur> compteurs = new ConcurrentSkipListMap<>();
+
+    public static RegistreMetriques global() {
+        return GLOBAL;
+    }
+
+    public Histogramme histogramme(String nom, String aide, Unite unite) {
+        return histogrammes.computeIfAbsent(nom, n -> new Histogramme(n, aide, unite));
+    }
+
+    public Compteur compteur(String nom, String aide) {
+        return compteurs.computeIfAbsent(nom, n -> new Compteur(n, aide));
+    }
+
+    //format d'exposition Prometheus : un summary par histogramme (durees en secondes), un counter par compteur
+    public String exporterPrometheus() {
+        StringBuilder sortie = new StringBuilder();
+        for (Histogramme h : histogrammes.values()) {
+            String nom = h.unite() == Unite.DUREE ? h.nom() + "_seconds" : h.nom();
+            double facteur = h.unite() == Unite.DUREE ? 1e-9 : 1;
+            sortie.append("# HELP ").append(nom).append(' ').append(h.aide()).append('\n');
+            sortie.append("# TYPE ").append(nom).append(" summary\n");
+            for (double q : QUANTILES) {
+                sortie.append(nom).append("{quantile=\"").append(q).append("\"} ")
+                        .append(format(h.quantile(q) * facteur)).append('\n');
+            }
+            sortie.append(nom).append("_sum ").append(format(h.somme() * facteur)).append('\n');
+            sortie.append(nom).append("_count ").append(h.nombre()).append('\n');
+        }
+        for (Compteur c : compteurs.values()) {
+            sortie.append("# HELP ").append(c.nom()).append(' ').append(c.aide()).append('\n');
+            sortie.append("# TYPE ").append(c.nom()).append(" counter\n");
+            sortie.append(c.nom()).append(' ').append(c.valeur()).append('\n');
+        }
+        return sortie.toString();
+    }
+
+    //durees en millisecondes
+    public void afficher(PrintStream sortie) {
+        sortie.printf("%-34s %10s %10s %10s %10s %10s %10s%n", "metrique", "n", "moyenne", "p50", "p99", "p99.9", "max");
+        for (Histogramme h : histogrammes.values()) {
+            double facteur = h.unite() == Unite.DUREE ? 1e-6 : 1;
+            sortie.printf(Locale.ROOT, "%-34s %10d %10.2f %10.2f %10.2f %10.2f %10.2f%n", h.nom(), h.nombre(),
+                    h.moyenne() * facteur, h.quantile(0.5) * facteur, h.quantile(0.99) * facteur,
+                    h.quantile(0.999) * facteur, h.max() * facteur);
+        }
+        for (Compteur c : compteurs.values()) {
+            sortie.printf("%-34s %10d%n", c.nom(), c.valeur());
+        }
+    }
+
+    private static String format(double valeur) {
+        return Double.toString(valeur);
+    }
+}
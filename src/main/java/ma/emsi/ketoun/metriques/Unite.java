@@ -0,0 +1,7 @@
+package ma.emsi.ketoun.metriques;
+
+//DUREE : valeurs enregistrees en nanosecondes, exportees en secondes et affichees en millisecondes
+public enum Unite {
+    DUREE,
+    NOMBRE
+}
@@ -0,0 +1,289 @@
+package ma.emsi.ketoun.routage;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.rag.content.retriever.ContentRetriever;
+import dev.langchain4j.rag.query.Query;
+import dev.langchain4j.rag.query.router.QueryRouter;
+import ma.emsi.ketoun.metriques.MetriquesRag;
+import ma.emsi.ketoun.store.Vecteurs;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+//routeur local : la requete est comparee (cosinus) aux descriptions des retrievers, embeddees une seule fois
+//  meilleur score >= seuilHaut avec assez d'ecart sur le second -> ce retriever, sans appel LLM
+//  meilleur score <  seuilBas                                   -> aucun retriever (hors sujet)
+//  entre les deux                                               -> routeur de repli (LLM)
+//une tete lineaire (regression softmax) peut etre entrainee sur des questions etiquetees ;
+//elle remplace alors le cosinus et sa probabilite sert de confiance
+public class RouteurEmbeddings implements QueryRouter {
+
+    private final EmbeddingModel embeddingModel;
+    private final List<ContentRetriever> retrievers;
+    private final float[][] descriptions;
+    private final QueryRouter repli;
+    private final double seuilHaut;
+    private final double seuilBas;
+    private final double marge;
+    private final double confianceTete;
+
+    //tete lineaire : une classe par retriever + une classe "aucun" en derniere position
+    private volatile float[][] poids;
+    private volatile float[] biais;
+
+    private final AtomicLong requetes = new AtomicLong();
+    private final AtomicLong replis = new AtomicLong();
+    private final AtomicLong nanosLocal = new AtomicLong();
+    private final AtomicLong nanosRepli = new AtomicLong();
+
+    private RouteurEmbeddings(Builder builder) {
+        this.embeddingModel = builder.embeddingModel;
+        this.retrievers = new ArrayList<>(builder.retrieverDescriptions.keySet());
+        this.repli = builder.repli;
+        this.seuilHaut = builder.seuilHaut;
+        this.seuilBas = builder.seuilBas;
+        this.marge = builder.marge;
+        this.confianceTete = builder.confianceTete;
+
+        List<TextSegment> textes = new ArrayList<>(retrievers.size());
+        for (ContentRetriever retriever : retrievers) {
+            textes.add(TextSegment.from(builder.retrieverDescriptions.get(retriever)));
+        }
+        this.descriptions = new float[retrievers.size()][];
+        List<Embedding> embeddings = embeddingModel.embedAll(textes).content();
+        for (int i = 0; i < descriptions.length; i++) {
+            descriptions[i] = Vecteurs.normaliser(embeddings.get(i).vector());
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public Collection<ContentRetriever> route(Query query) {
+        long debut = System.nanoTime();
+        requetes.incrementAndGet();
+        float[] vecteur = Vecteurs.normaliser(embeddingModel.embed(query.text()).content().vector());
+
+        Decision decision = poids != null ? decisionTete(vecteur) : decisionCosinus(vecteur);
+        if (decision != null) {
+            nanosLocal.addAndGet(System.nanoTime() - debut);
+            MetriquesRag.ROUTAGE.enregistrerDepuis(debut);
+            return decision.retrievers();
+        }
+
+        replis.incrementAndGet();
+        MetriquesRag.ROUTAGE_REPLI.incrementer();
+        Collection<ContentRetriever> resultat = repli.route(query);
+        nanosRepli.addAndGet(System.nanoTime() - debut);
+        MetriquesRag.ROUTAGE.enregistrerDepuis(debut);
+        return resultat;
+    }
+
+    //null = confiance insuffisante
+    private Decision decisionCosinus(float[] vecteur) {
+        int meilleur = -1;
+        float premier = -2;
+        float second = -2;
+        for (int i = 0; i < descriptions.length; i++) {
+            float s = Vecteurs.produitScalaire(vecteur, 0, descriptions[i], 0, vecteur.length);
+            if (s > premier) {
+                second = premier;
+                premier = s;
+                meilleur = i;
+            } else if (s > second) {
+                second = s;
+            }
+        }
+        if (meilleur < 0 || premier < seuilBas) {
+            return new Decision(List.of());
+        }
+        if (premier >= seuilHaut && premier - second >= marge) {
+            return new Decision(List.of(retrievers.get(meilleur)));
+        }
+        return null;
+    }
+
+    private Decision decisionTete(float[] vecteur) {
+        float[] probabilites = softmax(vecteur, poids, biais);
+        int meilleure = 0;
+        for (int c = 1; c < probabilites.length; c++) {
+            if (probabilites[c] > probabilites[meilleure]) {
+                meilleure = c;
+            }
+        }
+        if (probabilites[meilleure] < confianceTete) {
+            return null;
+        }
+        return meilleure == retrievers.size()
+                ? new Decision(List.of())
+                : new Decision(List.of(retrievers.get(meilleure)));
+    }
+
+    //entraine la tete lineaire ; une etiquette null signifie "pas de retriever"
+    public void entrainer(List<String> questions, List<ContentRetriever> etiquettes, int epoques, double pas) {
+        if (questions.size() != etiquettes.size()) {
+            throw new IllegalArgumentException("Autant de questions que d'etiquettes sont attendues");
+        }
+        //une tete vide (dimension 0) ferait echouer chaque route() suivante : la tete en place est gardee
+        if (questions.isEmpty() || epoques < 1) {
+            throw new IllegalArgumentException("Il faut au moins une question et une epoque");
+        }
+        List<TextSegment> segments = new ArrayList<>(questions.size());
+        for (String question : questions) {
+            segments.add(TextSegment.from(question));
+        }
+        List<Embedding> embeddings = embeddingModel.embedAll(segments).content();
+        float[][] x = new float[questions.size()][];
+        int[] y = new int[questions.size()];
+        for (int i = 0; i < x.length; i++) {
+            x[i] = Vecteurs.normaliser(embeddings.get(i).vector());
+            ContentRetriever etiquette = etiquettes.get(i);
+            y[i] = etiquette == null ? retrievers.size() : retrievers.indexOf(etiquette);
+            if (y[i] < 0) {
+                throw new IllegalArgumentException("Retriever inconnu dans les etiquettes");
+            }
+        }
+
+        int classes = retrievers.size() + 1;
+        int dimension = x[0].length;
+        float[][] w = new float[classes][dimension];
+        float[] b = new float[classes];
+        SplittableRandom random = new SplittableRandom(42);
+        int[] ordre = new int[x.length];
+        for (int i = 0; i < ordre.length; i++) {
+            ordre[i] = i;
+        }
+        //descente de gradient stochastique sur l'entropie croisee
+        for (int epoque = 0; epoque < epoques; epoque++) {
+            for (int i = ordre.length - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                int tmp = ordre[i];
+                ordre[i] = ordre[j];
+                ordre[j] = tmp;
+            }
+            for (int i : ordre) {
+                float[] p = softmax(x[i], w, b);
+                for (int c = 0; c < classes; c++) {
+                    float gradient = p[c] - (c == y[i] ? 1 : 0);
+                    for (int d = 0; d < dimension; d++) {
+                        w[c][d] -= (float) (pas * gradient * x[i][d]);
+                    }
+                    b[c] -= (float) (pas * gradient);
+                }
+            }
+        }
+        this.biais = b;
+        this.poids = w;
+    }
+
+    private static float[] softmax(float[] x, float[][] w, float[] b) {
+        float[] logits = new float[w.length];
+        float max = Float.NEGATIVE_INFINITY;
+        for (int c = 0; c < w.length; c++) {
+            logits[c] = Vecteurs.produitScalaire(x, 0, w[c], 0, x.length) + b[c];
+            max = Math.max(max, logits[c]);
+        }
+        float somme = 0;
+        for (int c = 0; c < logits.length; c++) {
+            logits[c] = (float) Math.exp(logits[c] - max);
+            somme += logits[c];
+        }
+        for (int c = 0; c < logits.length; c++) {
+            logits[c] /= somme;
+        }
+        return logits;
+    }
+
+    public long requetes() {
+        return requetes.get();
+    }
+
+    public double tauxRepli() {
+        long total = requetes.get();
+        return total == 0 ? 0 : (double) replis.get() / total;
+    }
+
+    public double latenceMoyenneLocaleMicros() {
+        long locales = requetes.get() - replis.get();
+        return locales == 0 ? 0 : nanosLocal.get() / 1_000.0 / locales;
+    }
+
+    public double latenceMoyenneRepliMicros() {
+        long nombre = replis.get();
+        return nombre == 0 ? 0 : nanosRepli.get() / 1_000.0 / nombre;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("RouteurEmbeddings[requetes=%d, repli=%.1f%%, local=%.0f us, repli=%.0f us]",
+                requetes(), tauxRepli() * 100, latenceMoyenneLocaleMicros(), latenceMoyenneRepliMicros());
+    }
+
+    private record Decision(List<ContentRetriever> retrievers) {
+    }
+
+    public static class Builder {
+
+        private EmbeddingModel embeddingModel;
+        private Map<ContentRetriever, String> retrieverDescriptions;
+        private QueryRouter repli;
+        private double seuilHaut = 0.45;
+        private double seuilBas = 0.15;
+        private double marge = 0.05;
+        private double confianceTete = 0.7;
+
+        public Builder embeddingModel(EmbeddingModel embeddingModel) {
+            this.embeddingModel = embeddingModel;
+            return this;
+        }
+
+        public Builder retrieverDescriptions(Map<ContentRetriever, String> retrieverDescriptions) {
+            this.retrieverDescriptions = retrieverDescriptions;
+            return this;
+        }
+
+        //routeur appele quand la confiance locale est insuffisante (typiquement LanguageModelQueryRouter)
+        public Builder repli(QueryRouter repli) {
+            this.repli = repli;
+            return this;
+        }
+
+        public Builder seuilHaut(double seuilHaut) {
+            this.seuilHaut = seuilHaut;
+            return this;
+        }
+
+        public Builder seuilBas(double seuilBas) {
+            this.seuilBas = seuilBas;
+            return this;
+        }
+
+        public Builder marge(double marge) {
+            this.marge = marge;
+            return this;
+        }
+
+        public Builder confianceTete(double confianceTete) {
+            this.confianceTete = confianceTete;
+            return this;
+        }
+
+        public RouteurEmbeddings build() {
+            if (embeddingModel == null || retrieverDescriptions == null || retrieverDescriptions.isEmpty() || repli == null) {
+                throw new IllegalArgumentException("embeddingModel, retrieverDescriptions et repli sont obligatoires");
+            }
+            if (seuilBas > seuilHaut) {
+                throw new IllegalArgumentException("seuilBas doit etre <= seuilHaut");
+            }
+            return new RouteurEmbeddings(this);
+        }
+    }
+}
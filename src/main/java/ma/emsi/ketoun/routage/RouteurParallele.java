@@ -0,0 +1,167 @@
+package ma.emsi.ketoun.routage;
+
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.content.retriever.ContentRetriever;
+import dev.langchain4j.rag.query.Query;
+import dev.langchain4j.rag.query.router.QueryRouter;
+import ma.emsi.ketoun.metriques.MetriquesRag;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+//decorateur de QueryRouter : les retrievers choisis par le routeur delegue sont lances en meme temps
+//sur des threads virtuels, chacun avec son propre delai, le tout borne par un delai global
+//ce qui arrive a temps est fusionne ; un retriever lent (Tavily) ne retarde plus les resultats locaux
+//la latence totale est celle du plus lent des retrievers qui repondent dans leur delai
+public class RouteurParallele implements QueryRouter {
+
+    private final QueryRouter delegue;
+    private final Map<ContentRetriever, Duration> delais;
+    private final Duration delaiParDefaut;
+    private final Duration delaiGlobal;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final AtomicLong appels = new AtomicLong();
+    private final AtomicLong horsDelai = new AtomicLong();
+    private final AtomicLong erreurs = new AtomicLong();
+
+    private RouteurParallele(Builder builder) {
+        this.delegue = builder.delegue;
+        this.delais = new HashMap<>(builder.delais);
+        this.delaiParDefaut = builder.delaiParDefaut;
+        this.delaiGlobal = builder.delaiGlobal;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public Collection<ContentRetriever> route(Query query) {
+        Collection<ContentRetriever> choisis = delegue.route(query);
+        if (choisis.isEmpty()) {
+            return choisis;
+        }
+        //un seul retriever composite : DefaultRetrievalAugmentor n'attend plus chaque retriever sans limite
+        List<ContentRetriever> liste = List.copyOf(choisis);
+        return List.of(q -> recupererEnParallele(q, liste));
+    }
+
+    private List<Content> recupererEnParallele(Query query, List<ContentRetriever> retrievers) {
+        long debut = System.nanoTime();
+        long finGlobale = debut + delaiGlobal.toNanos();
+
+        List<Future<List<Content>>> futures = new ArrayList<>(retrievers.size());
+        for (ContentRetriever retriever : retrievers) {
+            futures.add(executor.submit(() -> retriever.retrieve(query)));
+        }
+
+        List<List<Content>> resultats = new ArrayList<>(retrievers.size());
+        for (int i = 0; i < retrievers.size(); i++) {
+            appels.incrementAndGet();
+            Future<List<Content>> future = futures.get(i);
+            //le delai de chaque retriever court depuis le lancement commun, pas depuis la fin du precedent
+            long fin = Math.min(debut + delai(retrievers.get(i)).toNanos(), finGlobale);
+            try {
+                resultats.add(future.get(Math.max(0, fin - System.nanoTime()), TimeUnit.NANOSECONDS));
+            } catch (TimeoutException e) {
+                horsDelai.incrementAndGet();
+                MetriquesRag.RECUPERATION_HORS_DELAI.incrementer();
+                future.cancel(true);
+            } catch (ExecutionException e) {
+                erreurs.incrementAndGet();
+                System.err.println("Echec du retriever : " + e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                futures.forEach(f -> f.cancel(true));
+                break;
+            }
+        }
+        MetriquesRag.RECUPERATION.enregistrerDepuis(debut);
+        return fusionner(resultats);
+    }
+
+    //fusion rang par rang : le 1er de chaque retriever, puis le 2e, etc.
+    private static List<Content> fusionner(List<List<Content>> resultats) {
+        List<Content> fusion = new ArrayList<>();
+        int rangMax = 0;
+        for (List<Content> contenus : resultats) {
+            rangMax = Math.max(rangMax, contenus.size());
+        }
+        for (int rang = 0; rang < rangMax; rang++) {
+            for (List<Content> contenus : resultats) {
+                if (rang < contenus.size()) {
+                    fusion.add(contenus.get(rang));
+                }
+            }
+        }
+        return fusion;
+    }
+
+    private Duration delai(ContentRetriever retriever) {
+        return delais.getOrDefault(retriever, delaiParDefaut);
+    }
+
+    public long appels() {
+        return appels.get();
+    }
+
+    public long horsDelai() {
+        return horsDelai.get();
+    }
+
+    public long erreurs() {
+        return erreurs.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("RouteurParallele[appels=%d, horsDelai=%d, erreurs=%d]", appels(), horsDelai(), erreurs());
+    }
+
+    public static class Builder {
+
+        private QueryRouter delegue;
+        private final Map<ContentRetriever, Duration> delais = new HashMap<>();
+        private Duration delaiParDefaut = Duration.ofSeconds(2);
+        private Duration delaiGlobal = Duration.ofSeconds(5);
+
+        public Builder delegue(QueryRouter delegue) {
+            this.delegue = delegue;
+            return this;
+        }
+
+        public Builder delai(ContentRetriever retriever, Duration delai) {
+            this.delais.put(retriever, delai);
+            return this;
+        }
+
+        public Builder delaiParDefaut(Duration delaiParDefaut) {
+            this.delaiParDefaut = delaiParDefaut;
+            return this;
+        }
+
+        public Builder delaiGlobal(Duration delaiGlobal) {
+            this.delaiGlobal = delaiGlobal;
+            return this;
+        }
+
+        public RouteurParallele build() {
+            if (delegue == null) {
+                throw new IllegalArgumentException("delegue est obligatoire");
+            }
+            return new RouteurParallele(this);
+        }
+    }
+}
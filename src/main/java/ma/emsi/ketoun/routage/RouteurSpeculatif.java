@@ -0,0 +1,197 @@
+package ma.emsi.ketoun.routage;
+
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.content.retriever.ContentRetriever;
+import dev.langchain4j.rag.query.Query;
+import dev.langchain4j.rag.query.router.QueryRouter;
+import ma.emsi.ketoun.metriques.MetriquesRag;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+//decorateur d'un routeur lent (LLM) : pendant que le routeur decide, les retrievers probables sont deja
+//interroges (embedding de la requete + recherche) sur des threads virtuels
+//  retriever choisi et speculation lancee -> son resultat est repris tel quel, la latence de routage et
+//                                            celle de la recherche se recouvrent au lieu de s'additionner
+//  retriever non choisi                   -> speculation annulee (ou resultat jete), le travail perdu est mesure
+//a placer la ou la decision coute un appel LLM (repli de RouteurEmbeddings), pas devant un routeur local
+public class RouteurSpeculatif implements QueryRouter {
+
+    private final QueryRouter delegue;
+    private final Function<Query, Collection<ContentRetriever>> probables;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final AtomicLong lancees = new AtomicLong();
+    private final AtomicLong utilisees = new AtomicLong();
+    private final AtomicLong gaspillees = new AtomicLong();
+    private final AtomicLong nanosGaspilles = new AtomicLong();
+    private final AtomicLong nanosRecouverts = new AtomicLong();
+
+    private RouteurSpeculatif(Builder builder) {
+        this.delegue = builder.delegue;
+        this.probables = builder.probables;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public Collection<ContentRetriever> route(Query query) {
+        List<Speculation> speculations = new ArrayList<>();
+        for (ContentRetriever retriever : probables.apply(query)) {
+            speculations.add(lancer(retriever, query));
+        }
+
+        long debutRoutage = System.nanoTime();
+        Collection<ContentRetriever> choisis;
+        try {
+            choisis = delegue.route(query);
+        } catch (RuntimeException e) {
+            speculations.forEach(this::abandonner);
+            throw e;
+        }
+        long dureeRoutage = System.nanoTime() - debutRoutage;
+
+        List<ContentRetriever> resultat = new ArrayList<>(choisis.size());
+        for (ContentRetriever retriever : choisis) {
+            Speculation speculation = trouver(speculations, retriever);
+            if (speculation == null) {
+                resultat.add(retriever);
+                continue;
+            }
+            speculations.remove(speculation);
+            utilisees.incrementAndGet();
+            //travail fait pendant le routage : toute la recherche si elle est finie, sinon toute la duree du routage
+            long recouvert = speculation.future.isDone() ? Math.min(dureeRoutage, speculation.duree.get()) : dureeRoutage;
+            nanosRecouverts.addAndGet(recouvert);
+            MetriquesRag.SPECULATION_RECOUVREMENT.enregistrer(recouvert);
+            resultat.add(speculation.retriever());
+        }
+        speculations.forEach(this::abandonner);
+        return resultat;
+    }
+
+    private Speculation lancer(ContentRetriever retriever, Query query) {
+        lancees.incrementAndGet();
+        MetriquesRag.SPECULATION_LANCEES.incrementer();
+        long debut = System.nanoTime();
+        AtomicLong duree = new AtomicLong();
+        Future<List<Content>> future = executor.submit(() -> {
+            try {
+                return retriever.retrieve(query);
+            } finally {
+                duree.set(System.nanoTime() - debut);
+            }
+        });
+        return new Speculation(retriever, query, future, debut, duree);
+    }
+
+    //une recherche deja finie compte pour sa duree, une recherche interrompue pour le temps ecoule
+    private void abandonner(Speculation speculation) {
+        boolean finie = speculation.future.isDone();
+        speculation.future.cancel(true);
+        long perdu = finie ? speculation.duree.get() : System.nanoTime() - speculation.debut;
+        gaspillees.incrementAndGet();
+        nanosGaspilles.addAndGet(perdu);
+        MetriquesRag.SPECULATION_GASPILLEES.incrementer();
+        MetriquesRag.SPECULATION_TRAVAIL_PERDU.enregistrer(perdu);
+    }
+
+    private static Speculation trouver(List<Speculation> speculations, ContentRetriever retriever) {
+        for (Speculation speculation : speculations) {
+            if (speculation.retrieverOrigine() == retriever) {
+                return speculation;
+            }
+        }
+        return null;
+    }
+
+    public long lancees() {
+        return lancees.get();
+    }
+
+    public long utilisees() {
+        return utilisees.get();
+    }
+
+    public long gaspillees() {
+        return gaspillees.get();
+    }
+
+    public double tempsGaspilleMillis() {
+        return nanosGaspilles.get() / 1e6;
+    }
+
+    public double tempsRecouvertMillis() {
+        return nanosRecouverts.get() / 1e6;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("RouteurSpeculatif[lancees=%d, utilisees=%d, gaspillees=%d, recouvert=%.0f ms, perdu=%.0f ms]",
+                lancees(), utilisees(), gaspillees(), tempsRecouvertMillis(), tempsGaspilleMillis());
+    }
+
+    private record Speculation(ContentRetriever retrieverOrigine, Query query, Future<List<Content>> future,
+                               long debut, AtomicLong duree) {
+
+        //retriever a usage unique qui rend le resultat deja calcule ; en cas d'echec de la speculation
+        //la recherche est refaite normalement
+        ContentRetriever retriever() {
+            return q -> {
+                if (!q.equals(query)) {
+                    return retrieverOrigine.retrieve(q);
+                }
+                try {
+                    return future.get();
+                } catch (ExecutionException | CancellationException e) {
+                    return retrieverOrigine.retrieve(q);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    future.cancel(true);
+                    throw new IllegalStateException("Recherche interrompue", e);
+                }
+            };
+        }
+    }
+
+    public static class Builder {
+
+        private QueryRouter delegue;
+        private Function<Query, Collection<ContentRetriever>> probables;
+
+        public Builder delegue(QueryRouter delegue) {
+            this.delegue = delegue;
+            return this;
+        }
+
+        //retrievers interroges d'avance pour chaque requete
+        public Builder probables(Collection<ContentRetriever> probables) {
+            List<ContentRetriever> copie = List.copyOf(probables);
+            this.probables = query -> copie;
+            return this;
+        }
+
+        //choix dynamique, par exemple les retrievers les plus proches selon un routeur local
+        public Builder probables(Function<Query, Collection<ContentRetriever>> probables) {
+            this.probables = probables;
+            return this;
+        }
+
+        public RouteurSpeculatif build() {
+            if (delegue == null || probables == null) {
+                throw new IllegalArgumentException("delegue et probables sont obligatoires");
+            }
+            return new RouteurSpeculatif(this);
+        }
+    }
+}
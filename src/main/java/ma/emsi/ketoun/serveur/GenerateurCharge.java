@@ -0,0 +1,74 @@
+package ma.emsi.ketoun.serveur;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+//generateur de charge local : N conversations simultanees (une session chacune, un thread virtuel chacune)
+//qui envoient M questions l'une apres l'autre
+//usage : GenerateurCharge [url=http://localhost:8080] [conversations=200] [questions=5]
+public class GenerateurCharge {
+
+    public static void main(String[] args) throws Exception {
+        String url = args.length > 0 ? args[0] : "http://localhost:8080";
+        int conversations = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        int questions = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+        HttpClient client = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+        AtomicLong erreurs = new AtomicLong();
+        long debut = System.nanoTime();
+
+        List<Future<long[]>> futures = new ArrayList<>(conversations);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int c = 0; c < conversations; c++) {
+                String session = "charge-" + c;
+                futures.add(executor.submit(() -> {
+                    long[] latences = new long[questions];
+                    for (int q = 0; q < questions; q++) {
+                        HttpRequest requete = HttpRequest.newBuilder(URI.create(url + "/chat?session=" + session))
+                                .POST(HttpRequest.BodyPublishers.ofString("Question " + q + " de " + session))
+                                .timeout(Duration.ofSeconds(60))
+                                .build();
+                        long t = System.nanoTime();
+                        HttpResponse<String> reponse = client.send(requete, HttpResponse.BodyHandlers.ofString());
+                        latences[q] = System.nanoTime() - t;
+                        if (reponse.statusCode() != 200) {
+                            erreurs.incrementAndGet();
+                        }
+                    }
+                    return latences;
+                }));
+            }
+        }
+
+        long[] toutes = new long[conversations * questions];
+        int i = 0;
+        for (Future<long[]> future : futures) {
+            for (long latence : future.get()) {
+                toutes[i++] = latence;
+            }
+        }
+        double duree = (System.nanoTime() - debut) / 1e9;
+        Arrays.sort(toutes);
+        System.out.printf("%d requetes en %.2f s -> %.1f req/s, erreurs=%d%n",
+                toutes.length, duree, toutes.length / duree, erreurs.get());
+        System.out.printf("latence p50=%.1f ms p99=%.1f ms max=%.1f ms%n",
+                centile(toutes, 0.50), centile(toutes, 0.99), toutes[toutes.length - 1] / 1e6);
+    }
+
+    private static double centile(long[] triees, double centile) {
+        int rang = (int) Math.ceil(centile * triees.length) - 1;
+        return triees[Math.max(0, rang)] / 1e6;
+    }
+}
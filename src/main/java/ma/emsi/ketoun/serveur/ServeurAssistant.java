@@ -0,0 +1,147 @@
+package ma.emsi.ketoun.serveur;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import ma.emsi.ketoun.Interfaces.AssistantSession;
+import ma.emsi.ketoun.metriques.RegistreMetriques;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+//serveur HTTP local devant l'assistant, un thread virtuel par requete
+//  POST /chat?session=<id>   corps = question (texte brut), reponse = texte brut
+//                            sans session, un id est cree et renvoye dans l'entete X-Session-Id
+//  GET  /sante               etat du serveur
+//  GET  /metriques           registre de metriques au format texte Prometheus
+public class ServeurAssistant implements AutoCloseable {
+
+    //corps de requete lu au plus : une question, pas un document
+    private static final int TAILLE_MAX_QUESTION = 64 * 1024;
+
+    private final HttpServer serveur;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final AssistantSession assistant;
+    private final StockSessions sessions;
+
+    private final AtomicLong requetes = new AtomicLong();
+    private final AtomicLong erreurs = new AtomicLong();
+
+    public ServeurAssistant(int port, AssistantSession assistant, StockSessions sessions) {
+        this.assistant = assistant;
+        this.sessions = sessions;
+        try {
+            this.serveur = HttpServer.create(new InetSocketAddress("localhost", port), 0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        serveur.setExecutor(executor);
+        serveur.createContext("/chat", this::chat);
+        serveur.createContext("/sante", this::sante);
+        serveur.createContext("/metriques", this::metriques);
+    }
+
+    public ServeurAssistant demarrer() {
+        serveur.start();
+        return this;
+    }
+
+    public int port() {
+        return serveur.getAddress().getPort();
+    }
+
+    private void chat(HttpExchange echange) throws IOException {
+        try (echange) {
+            if (!"POST".equalsIgnoreCase(echange.getRequestMethod())) {
+                repondre(echange, 405, "POST attendu");
+                return;
+            }
+            byte[] octets;
+            try (InputStream corps = echange.getRequestBody()) {
+                octets = corps.readNBytes(TAILLE_MAX_QUESTION + 1);
+            }
+            if (octets.length > TAILLE_MAX_QUESTION) {
+                repondre(echange, 413, "Question trop longue (" + TAILLE_MAX_QUESTION + " octets max)");
+                return;
+            }
+            String question = new String(octets, StandardCharsets.UTF_8);
+            if (question.isBlank()) {
+                repondre(echange, 400, "Question vide");
+                return;
+            }
+            String session = parametre(echange.getRequestURI().getRawQuery(), "session");
+            if (session == null || session.isBlank()) {
+                session = UUID.randomUUID().toString();
+            }
+            echange.getResponseHeaders().set("X-Session-Id", session);
+            requetes.incrementAndGet();
+
+            int code = 200;
+            String reponse;
+            ReentrantLock verrou = sessions.reserver(session);
+            verrou.lock();
+            try {
+                reponse = assistant.chat(session, question);
+            } catch (RuntimeException e) {
+                erreurs.incrementAndGet();
+                code = 500;
+                reponse = "Erreur : " + e.getMessage();
+            } finally {
+                verrou.unlock();
+                sessions.liberer(session);
+            }
+            repondre(echange, code, reponse);
+        }
+    }
+
+    private void sante(HttpExchange echange) throws IOException {
+        try (echange) {
+            repondre(echange, 200, String.format("ok sessions=%d requetes=%d erreurs=%d evictions=%d",
+                    sessions.taille(), requetes.get(), erreurs.get(), sessions.evictions()));
+        }
+    }
+
+    private void metriques(HttpExchange echange) throws IOException {
+        try (echange) {
+            repondre(echange, 200, RegistreMetriques.global().exporterPrometheus());
+        }
+    }
+
+    private static void repondre(HttpExchange echange, int code, String texte) throws IOException {
+        byte[] octets = texte.getBytes(StandardCharsets.UTF_8);
+        echange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        echange.sendResponseHeaders(code, octets.length);
+        try (OutputStream sortie = echange.getResponseBody()) {
+            sortie.write(octets);
+        }
+    }
+
+    private static String parametre(String requete, String nom) {
+        if (requete == null) {
+            return null;
+        }
+        for (String paire : requete.split("&")) {
+            int egal = paire.indexOf('=');
+            String cle = egal < 0 ? paire : paire.substring(0, egal);
+            if (cle.equals(nom)) {
+                return egal < 0 ? "" : URLDecoder.decode(paire.substring(egal + 1), StandardCharsets.UTF_8);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void close() {
+        serveur.stop(1);
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,194 @@
+package ma.emsi.ketoun.serveur;
+
+import dev.langchain4j.memory.ChatMemory;
+import dev.langchain4j.memory.chat.ChatMemoryProvider;
+import dev.langchain4j.memory.chat.MessageWindowChatMemory;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+//memoires de chat par session, bornees en nombre et en inactivite
+//la session la moins recemment utilisee est evincee quand le stock est plein
+//une session reservee par une requete en cours n'est jamais evincee : sinon un appel suivant du meme tour
+//recreerait une memoire (et un verrou) neufs, et deux requetes de la conversation tourneraient en meme temps
+//le stock peut alors depasser momentanement sessionsMax
+//AiServices garde sa propre table id -> ChatMemory (remplie par get) : surEviction() doit y retirer les sessions
+//evincees, sinon la memoire ne serait jamais liberee et une session evincee retrouverait son ancienne conversation
+public class StockSessions implements ChatMemoryProvider {
+
+    private final int sessionsMax;
+    private final Duration inactiviteMax;
+    private final Function<Object, ChatMemory> fabrique;
+    private final Clock horloge;
+
+    private final LinkedHashMap<Object, Session> sessions = new LinkedHashMap<>(16, 0.75f, true);
+    private final AtomicLong evictions = new AtomicLong();
+    //ids evinces pas encore signales a surEviction
+    private final List<Object> aSignaler = new ArrayList<>();
+    private volatile Consumer<Object> surEviction = id -> {
+    };
+
+    public StockSessions(int sessionsMax, Duration inactiviteMax) {
+        this(sessionsMax, inactiviteMax,
+                id -> MessageWindowChatMemory.builder().id(id).maxMessages(10).build(),
+                Clock.systemUTC());
+    }
+
+    public StockSessions(int sessionsMax, Duration inactiviteMax, Function<Object, ChatMemory> fabrique, Clock horloge) {
+        this.sessionsMax = sessionsMax;
+        this.inactiviteMax = inactiviteMax;
+        this.fabrique = fabrique;
+        this.horloge = horloge;
+    }
+
+    //typiquement assistant::evictChatMemory (assistant qui etend ChatMemoryAccess), branche apres AiServices.build()
+    public void surEviction(Consumer<Object> surEviction) {
+        this.surEviction = surEviction;
+    }
+
+    //appele par AiServices depuis un computeIfAbsent sur sa table : les evictions ne peuvent pas y etre signalees
+    //directement (modification de la meme table), elles le sont sur un autre thread
+    @Override
+    public ChatMemory get(Object memoryId) {
+        ChatMemory memoire;
+        boolean aSignalerEnAttente;
+        synchronized (this) {
+            memoire = session(memoryId).memoire();
+            aSignalerEnAttente = !aSignaler.isEmpty();
+        }
+        if (aSignalerEnAttente) {
+            Thread.startVirtualThread(this::signalerEvictions);
+        }
+        return memoire;
+    }
+
+    //reserve la session jusqu'a liberer() et renvoie son verrou : une seule requete a la fois par conversation
+    //(la memoire n'est pas thread-safe)
+    //ReentrantLock plutot que synchronized pour ne pas epingler les threads virtuels pendant l'appel au modele
+    //hors d'AiServices : les evictions sont signalees avant de rendre la main, donc avant l'appel a l'assistant
+    public ReentrantLock reserver(Object memoryId) {
+        ReentrantLock verrou;
+        synchronized (this) {
+            Session session = session(memoryId);
+            session.reservations++;
+            verrou = session.verrou();
+        }
+        signalerEvictions();
+        return verrou;
+    }
+
+    public void liberer(Object memoryId) {
+        synchronized (this) {
+            Session session = sessions.get(memoryId);
+            if (session != null) {
+                //l'acces deplace la session en fin d'ordre : dernierAcces doit suivre pour purger()
+                session.dernierAcces = horloge.millis();
+                if (session.reservations > 0) {
+                    session.reservations--;
+                }
+            }
+        }
+        signalerEvictions();
+    }
+
+    public synchronized int taille() {
+        return sessions.size();
+    }
+
+    public long evictions() {
+        return evictions.get();
+    }
+
+    private synchronized Session session(Object memoryId) {
+        long maintenant = horloge.millis();
+        purger(maintenant);
+        Session session = sessions.get(memoryId);
+        if (session == null) {
+            session = new Session(fabrique.apply(memoryId), new ReentrantLock());
+            sessions.put(memoryId, session);
+            if (sessions.size() > sessionsMax) {
+                evincerPlusAncienne(memoryId);
+            }
+        }
+        session.dernierAcces = maintenant;
+        return session;
+    }
+
+    //la moins recemment utilisee parmi celles qui ne sont pas reservees (ni la session qu'on vient de creer)
+    private void evincerPlusAncienne(Object nouvelle) {
+        Iterator<Map.Entry<Object, Session>> iterateur = sessions.entrySet().iterator();
+        while (iterateur.hasNext()) {
+            Map.Entry<Object, Session> entree = iterateur.next();
+            if (entree.getValue().libre() && !entree.getKey().equals(nouvelle)) {
+                iterateur.remove();
+                evictions.incrementAndGet();
+                aSignaler.add(entree.getKey());
+                return;
+            }
+        }
+    }
+
+    //les sessions sont en ordre d'acces : on s'arrete a la premiere encore active
+    private void purger(long maintenant) {
+        Iterator<Map.Entry<Object, Session>> iterateur = sessions.entrySet().iterator();
+        while (iterateur.hasNext()) {
+            Map.Entry<Object, Session> entree = iterateur.next();
+            Session session = entree.getValue();
+            if (maintenant - session.dernierAcces < inactiviteMax.toMillis()) {
+                break;
+            }
+            if (session.libre()) {
+                iterateur.remove();
+                evictions.incrementAndGet();
+                aSignaler.add(entree.getKey());
+            }
+        }
+    }
+
+    //hors du moniteur : le rappel touche la table d'AiServices
+    private void signalerEvictions() {
+        List<Object> ids;
+        synchronized (this) {
+            if (aSignaler.isEmpty()) {
+                return;
+            }
+            ids = List.copyOf(aSignaler);
+            aSignaler.clear();
+        }
+        Consumer<Object> action = surEviction;
+        ids.forEach(action);
+    }
+
+    private static final class Session {
+        private final ChatMemory memoire;
+        private final ReentrantLock verrou;
+        private long dernierAcces;
+        private int reservations;
+
+        private Session(ChatMemory memoire, ReentrantLock verrou) {
+            this.memoire = memoire;
+            this.verrou = verrou;
+        }
+
+        ChatMemory memoire() {
+            return memoire;
+        }
+
+        ReentrantLock verrou() {
+            return verrou;
+        }
+
+        boolean libre() {
+            return reservations == 0 && !verrou.isLocked();
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package ma.emsi.ketoun.store;
+
+//resultat de QuantizedEmbeddingStore.evaluer
+public record EvaluationQuantification(QuantizedEmbeddingStore.Mode mode, int k, double rappel,
+                                       int octetsParVecteur, double facteurCompression) {
+
+    @Override
+    public String toString() {
+        return String.format("%s : rappel@%d = %.3f, %d octets/vecteur (%.1fx)",
+                mode, k, rappel, octetsParVecteur, facteurCompression);
+    }
+}
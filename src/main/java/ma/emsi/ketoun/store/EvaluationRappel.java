@@ -0,0 +1,13 @@
+package ma.emsi.ketoun.store;
+
+//resultat de HnswEmbeddingStore.evaluer : latences en microsecondes
+public record EvaluationRappel(int k, int efSearch, double rappel,
+                               double p50Hnsw, double p99Hnsw,
+                               double p50Exact, double p99Exact) {
+
+    @Override
+    public String toString() {
+        return String.format("rappel@%d = %.3f (efSearch=%d) | HNSW p50=%.0f us p99=%.0f us | exact p50=%.0f us p99=%.0f us",
+                k, rappel, efSearch, p50Hnsw, p99Hnsw, p50Exact, p99Exact);
+    }
+}
@@ -0,0 +1,211 @@
+package ma.emsi.ketoun.store;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingSearchResult;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.RelevanceScore;
+import dev.langchain4j.store.embedding.filter.Filter;
+import ma.emsi.ketoun.metriques.MetriquesRag;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+//store en memoire ou tous les vecteurs (normalises L2) sont ranges bout a bout dans un seul float[] :
+//pas d'objet Embedding par vecteur, un parcours sequentiel du tableau par recherche
+public class FloatArrayEmbeddingStore implements EmbeddingStore<TextSegment> {
+
+    //dimension de AllMiniLmL6V2
+    public static final int DIMENSION_MINILM = 384;
+
+    private final int dimension;
+    private final ReentrantReadWriteLock verrou = new ReentrantReadWriteLock();
+
+    private float[] vecteurs;
+    private String[] ids;
+    private TextSegment[] segments;
+    private int taille;
+    private final Map<String, Integer> positions = new HashMap<>();
+
+    public FloatArrayEmbeddingStore() {
+        this(DIMENSION_MINILM, 1024);
+    }
+
+    public FloatArrayEmbeddingStore(int dimension, int capaciteInitiale) {
+        this.dimension = dimension;
+        int capacite = Math.max(1, capaciteInitiale);
+        this.vecteurs = new float[capacite * dimension];
+        this.ids = new String[capacite];
+        this.segments = new TextSegment[capacite];
+    }
+
+    public int size() {
+        verrou.readLock().lock();
+        try {
+            return taille;
+        } finally {
+            verrou.readLock().unlock();
+        }
+    }
+
+    @Override
+    public String add(Embedding embedding) {
+        String id = UUID.randomUUID().toString();
+        add(id, embedding);
+        return id;
+    }
+
+    @Override
+    public void add(String id, Embedding embedding) {
+        addAll(List.of(id), List.of(embedding), null);
+    }
+
+    @Override
+    public String add(Embedding embedding, TextSegment textSegment) {
+        String id = UUID.randomUUID().toString();
+        addAll(List.of(id), List.of(embedding), List.of(textSegment));
+        return id;
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings) {
+        List<String> nouveauxIds = generateIds(embeddings.size());
+        addAll(nouveauxIds, embeddings, null);
+        return nouveauxIds;
+    }
+
+    @Override
+    public void addAll(List<String> idsAjoutes, List<Embedding> embeddings, List<TextSegment> embedded) {
+        if (idsAjoutes.size() != embeddings.size() || (embedded != null && embedded.size() != embeddings.size())) {
+            throw new IllegalArgumentException("ids, embeddings et segments doivent avoir la meme taille");
+        }
+        //normalisation hors verrou
+        float[][] normalises = new float[embeddings.size()][];
+        for (int i = 0; i < normalises.length; i++) {
+            float[] vecteur = embeddings.get(i).vector();
+            if (vecteur.length != dimension) {
+                throw new IllegalArgumentException("Dimension " + vecteur.length + " != " + dimension);
+            }
+            normalises[i] = Vecteurs.normaliser(vecteur);
+        }
+
+        verrou.writeLock().lock();
+        try {
+            for (int i = 0; i < normalises.length; i++) {
+                String id = idsAjoutes.get(i);
+                TextSegment segment = embedded == null ? null : embedded.get(i);
+                Integer existant = positions.get(id);
+                int position;
+                if (existant != null) {
+                    position = existant;
+                } else {
+                    assurerCapacite(taille + 1);
+                    position = taille++;
+                    positions.put(id, position);
+                }
+                System.arraycopy(normalises[i], 0, vecteurs, position * dimension, dimension);
+                ids[position] = id;
+                segments[position] = segment;
+            }
+        } finally {
+            verrou.writeLock().unlock();
+        }
+    }
+
+    //suppression par echange avec le dernier element : le tableau reste compact
+    @Override
+    public void removeAll(Collection<String> idsSupprimes) {
+        verrou.writeLock().lock();
+        try {
+            for (String id : idsSupprimes) {
+                Integer position = positions.remove(id);
+                if (position == null) {
+                    continue;
+                }
+                int dernier = --taille;
+                if (position != dernier) {
+                    System.arraycopy(vecteurs, dernier * dimension, vecteurs, position * dimension, dimension);
+                    ids[position] = ids[dernier];
+                    segments[position] = segments[dernier];
+                    positions.put(ids[position], position);
+                }
+                ids[dernier] = null;
+                segments[dernier] = null;
+            }
+        } finally {
+            verrou.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void removeAll() {
+        verrou.writeLock().lock();
+        try {
+            Arrays.fill(ids, 0, taille, null);
+            Arrays.fill(segments, 0, taille, null);
+            positions.clear();
+            taille = 0;
+        } finally {
+            verrou.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public EmbeddingSearchResult<TextSegment> search(EmbeddingSearchRequest request) {
+        long debut = System.nanoTime();
+        float[] requete = Vecteurs.normaliser(request.queryEmbedding().vector());
+        if (requete.length != dimension) {
+            throw new IllegalArgumentException("Dimension de la requete " + requete.length + " != " + dimension);
+        }
+        float cosinusMin = Vecteurs.cosinusMinimum(request.minScore());
+        Filter filtre = request.filter();
+
+        verrou.readLock().lock();
+        try {
+            TasBorne meilleurs = new TasBorne(Math.min(request.maxResults(), taille));
+            //minScore et tas borne appliques dans la boucle : aucun objet cree pour les candidats rejetes
+            for (int i = 0; i < taille; i++) {
+                float cosinus = Vecteurs.produitScalaire(requete, 0, vecteurs, i * dimension, dimension);
+                if (cosinus < cosinusMin || !meilleurs.accepte(cosinus)) {
+                    continue;
+                }
+                if (filtre != null && (segments[i] == null || !filtre.test(segments[i].metadata()))) {
+                    continue;
+                }
+                meilleurs.ajouter(i, cosinus);
+            }
+            meilleurs.trierDecroissant();
+
+            List<EmbeddingMatch<TextSegment>> matches = new ArrayList<>(meilleurs.taille());
+            for (int rang = 0; rang < meilleurs.taille(); rang++) {
+                int i = meilleurs.index(rang);
+                float[] vecteur = Arrays.copyOfRange(vecteurs, i * dimension, (i + 1) * dimension);
+                matches.add(new EmbeddingMatch<>(RelevanceScore.fromCosineSimilarity(meilleurs.score(rang)),
+                        ids[i], Embedding.from(vecteur), segments[i]));
+            }
+            MetriquesRag.CANDIDATS_EVALUES.enregistrer(taille);
+            MetriquesRag.RECHERCHE_STORE.enregistrerDepuis(debut);
+            return new EmbeddingSearchResult<>(matches);
+        } finally {
+            verrou.readLock().unlock();
+        }
+    }
+
+    private void assurerCapacite(int capaciteVoulue) {
+        if (capaciteVoulue <= ids.length) {
+            return;
+        }
+        int capacite = Math.max(capaciteVoulue, ids.length * 2);
+        vecteurs = Arrays.copyOf(vecteurs, capacite * dimension);
+        ids = Arrays.copyOf(ids, capacite);
+        segments = Arrays.copyOf(segments, capacite);
+    }
+}
@@ -0,0 +1,244 @@
+package ma.emsi.ketoun.store;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingSearchResult;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.RelevanceScore;
+import dev.langchain4j.store.embedding.filter.Filter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+//fragment d'embeddings a lecture sans verrou : les lecteurs travaillent sur un instantane immuable (volatile)
+//  - les vecteurs sont ranges par blocs de TAILLE_BLOC ; un ajout ecrit apres la fin publiee puis publie
+//    un nouvel instantane : les lecteurs en cours ne lisent jamais au-dela de leur propre taille
+//  - une suppression marque le vecteur dans une copie du tableau de bits (copie sur ecriture)
+//  - un upsert = suppression de l'ancienne position + ajout en fin
+//les ecrivains sont serialises entre eux ; les trous laisses par les suppressions sont compactes
+//quand ils depassent le quart du fragment
+public class FragmentEmbeddings implements EmbeddingStore<TextSegment> {
+
+    private static final int BITS_BLOC = 12;
+    private static final int TAILLE_BLOC = 1 << BITS_BLOC;
+
+    private final int dimension;
+    private final Object verrouEcriture = new Object();
+    private final Map<String, Integer> positions = new HashMap<>();
+    private volatile Instantane instantane;
+
+    public FragmentEmbeddings() {
+        this(FloatArrayEmbeddingStore.DIMENSION_MINILM);
+    }
+
+    public FragmentEmbeddings(int dimension) {
+        this.dimension = dimension;
+        this.instantane = new Instantane(new Bloc[0], 0, new long[0], 0);
+    }
+
+    public int size() {
+        Instantane courant = instantane;
+        return courant.taille() - courant.nbSupprimes();
+    }
+
+    @Override
+    public String add(Embedding embedding) {
+        String id = UUID.randomUUID().toString();
+        add(id, embedding);
+        return id;
+    }
+
+    @Override
+    public void add(String id, Embedding embedding) {
+        addAll(List.of(id), List.of(embedding), null);
+    }
+
+    @Override
+    public String add(Embedding embedding, TextSegment textSegment) {
+        String id = UUID.randomUUID().toString();
+        addAll(List.of(id), List.of(embedding), List.of(textSegment));
+        return id;
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings) {
+        List<String> nouveauxIds = generateIds(embeddings.size());
+        addAll(nouveauxIds, embeddings, null);
+        return nouveauxIds;
+    }
+
+    @Override
+    public void addAll(List<String> idsAjoutes, List<Embedding> embeddings, List<TextSegment> embedded) {
+        if (idsAjoutes.size() != embeddings.size() || (embedded != null && embedded.size() != embeddings.size())) {
+            throw new IllegalArgumentException("ids, embeddings et segments doivent avoir la meme taille");
+        }
+        //normalisation hors verrou
+        float[][] normalises = new float[embeddings.size()][];
+        for (int i = 0; i < normalises.length; i++) {
+            float[] vecteur = embeddings.get(i).vector();
+            if (vecteur.length != dimension) {
+                throw new IllegalArgumentException("Dimension " + vecteur.length + " != " + dimension);
+            }
+            normalises[i] = Vecteurs.normaliser(vecteur);
+        }
+
+        synchronized (verrouEcriture) {
+            Instantane courant = instantane;
+            Bloc[] blocs = courant.blocs();
+            int taille = courant.taille();
+            long[] supprimes = courant.supprimes();
+            int nbSupprimes = courant.nbSupprimes();
+            boolean supprimesCopies = false;
+
+            for (int i = 0; i < normalises.length; i++) {
+                String id = idsAjoutes.get(i);
+                Integer ancienne = positions.get(id);
+                if (ancienne != null) {
+                    if (!supprimesCopies) {
+                        supprimes = Arrays.copyOf(supprimes, supprimes.length);
+                        supprimesCopies = true;
+                    }
+                    supprimes[ancienne >>> 6] |= 1L << ancienne;
+                    nbSupprimes++;
+                }
+                if (taille == blocs.length * TAILLE_BLOC) {
+                    blocs = Arrays.copyOf(blocs, blocs.length + 1);
+                    blocs[blocs.length - 1] = new Bloc(dimension);
+                    supprimes = Arrays.copyOf(supprimes, (blocs.length * TAILLE_BLOC) >>> 6);
+                    supprimesCopies = true;
+                }
+                Bloc bloc = blocs[taille >>> BITS_BLOC];
+                int rang = taille & (TAILLE_BLOC - 1);
+                System.arraycopy(normalises[i], 0, bloc.vecteurs, rang * dimension, dimension);
+                bloc.ids[rang] = id;
+                bloc.segments[rang] = embedded == null ? null : embedded.get(i);
+                positions.put(id, taille);
+                taille++;
+            }
+            publier(new Instantane(blocs, taille, supprimes, nbSupprimes));
+        }
+    }
+
+    @Override
+    public void removeAll(Collection<String> idsSupprimes) {
+        synchronized (verrouEcriture) {
+            Instantane courant = instantane;
+            long[] supprimes = Arrays.copyOf(courant.supprimes(), courant.supprimes().length);
+            int nbSupprimes = courant.nbSupprimes();
+            for (String id : idsSupprimes) {
+                Integer position = positions.remove(id);
+                if (position != null) {
+                    supprimes[position >>> 6] |= 1L << position;
+                    nbSupprimes++;
+                }
+            }
+            publier(new Instantane(courant.blocs(), courant.taille(), supprimes, nbSupprimes));
+        }
+    }
+
+    @Override
+    public void removeAll() {
+        synchronized (verrouEcriture) {
+            positions.clear();
+            instantane = new Instantane(new Bloc[0], 0, new long[0], 0);
+        }
+    }
+
+    @Override
+    public EmbeddingSearchResult<TextSegment> search(EmbeddingSearchRequest request) {
+        float[] requete = Vecteurs.normaliser(request.queryEmbedding().vector());
+        if (requete.length != dimension) {
+            throw new IllegalArgumentException("Dimension de la requete " + requete.length + " != " + dimension);
+        }
+        float cosinusMin = Vecteurs.cosinusMinimum(request.minScore());
+        Filter filtre = request.filter();
+
+        Instantane courant = instantane;
+        long[] supprimes = courant.supprimes();
+        TasBorne meilleurs = new TasBorne(Math.min(request.maxResults(), courant.taille()));
+        for (int i = 0; i < courant.taille(); i++) {
+            if ((supprimes[i >>> 6] & (1L << i)) != 0) {
+                continue;
+            }
+            Bloc bloc = courant.blocs()[i >>> BITS_BLOC];
+            int rang = i & (TAILLE_BLOC - 1);
+            float cosinus = Vecteurs.produitScalaire(requete, 0, bloc.vecteurs, rang * dimension, dimension);
+            if (cosinus < cosinusMin || !meilleurs.accepte(cosinus)) {
+                continue;
+            }
+            if (filtre != null && (bloc.segments[rang] == null || !filtre.test(bloc.segments[rang].metadata()))) {
+                continue;
+            }
+            meilleurs.ajouter(i, cosinus);
+        }
+        meilleurs.trierDecroissant();
+
+        List<EmbeddingMatch<TextSegment>> matches = new ArrayList<>(meilleurs.taille());
+        for (int r = 0; r < meilleurs.taille(); r++) {
+            int i = meilleurs.index(r);
+            Bloc bloc = courant.blocs()[i >>> BITS_BLOC];
+            int rang = i & (TAILLE_BLOC - 1);
+            float[] vecteur = Arrays.copyOfRange(bloc.vecteurs, rang * dimension, (rang + 1) * dimension);
+            matches.add(new EmbeddingMatch<>(RelevanceScore.fromCosineSimilarity(meilleurs.score(r)),
+                    bloc.ids[rang], Embedding.from(vecteur), bloc.segments[rang]));
+        }
+        return new EmbeddingSearchResult<>(matches);
+    }
+
+    //appele sous verrouEcriture
+    private void publier(Instantane nouveau) {
+        if (nouveau.nbSupprimes() > 1024 && nouveau.nbSupprimes() * 4 > nouveau.taille()) {
+            nouveau = compacter(nouveau);
+        }
+        instantane = nouveau;
+    }
+
+    //recopie les vecteurs vivants dans de nouveaux blocs ; les lecteurs de l'ancien instantane ne sont pas touches
+    private Instantane compacter(Instantane ancien) {
+        int vivants = ancien.taille() - ancien.nbSupprimes();
+        Bloc[] blocs = new Bloc[(vivants + TAILLE_BLOC - 1) >>> BITS_BLOC];
+        for (int b = 0; b < blocs.length; b++) {
+            blocs[b] = new Bloc(dimension);
+        }
+        positions.clear();
+        int taille = 0;
+        for (int i = 0; i < ancien.taille(); i++) {
+            if ((ancien.supprimes()[i >>> 6] & (1L << i)) != 0) {
+                continue;
+            }
+            Bloc source = ancien.blocs()[i >>> BITS_BLOC];
+            int rangSource = i & (TAILLE_BLOC - 1);
+            Bloc cible = blocs[taille >>> BITS_BLOC];
+            int rangCible = taille & (TAILLE_BLOC - 1);
+            System.arraycopy(source.vecteurs, rangSource * dimension, cible.vecteurs, rangCible * dimension, dimension);
+            cible.ids[rangCible] = source.ids[rangSource];
+            cible.segments[rangCible] = source.segments[rangSource];
+            positions.put(cible.ids[rangCible], taille);
+            taille++;
+        }
+        return new Instantane(blocs, taille, new long[(blocs.length * TAILLE_BLOC) >>> 6], 0);
+    }
+
+    //blocs : les cases au-dela de taille ne sont pas encore publiees
+    private record Instantane(Bloc[] blocs, int taille, long[] supprimes, int nbSupprimes) {
+    }
+
+    private static final class Bloc {
+        private final float[] vecteurs;
+        private final String[] ids;
+        private final TextSegment[] segments;
+
+        private Bloc(int dimension) {
+            this.vecteurs = new float[TAILLE_BLOC * dimension];
+            this.ids = new String[TAILLE_BLOC];
+            this.segments = new TextSegment[TAILLE_BLOC];
+        }
+    }
+}
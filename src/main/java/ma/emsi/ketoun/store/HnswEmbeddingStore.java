@@ -0,0 +1,584 @@
+package ma.emsi.ketoun.store;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingSearchResult;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.RelevanceScore;
+import dev.langchain4j.store.embedding.filter.Filter;
+import ma.emsi.ketoun.metriques.MetriquesRag;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+//store approche HNSW (graphe navigable multi-couches) : recherche en O(log n) au lieu du parcours complet
+//  m              : nombre de voisins par noeud (2*m sur la couche 0)
+//  efConstruction : largeur de la recherche a l'insertion (qualite du graphe)
+//  efSearch       : largeur de la recherche a la requete (compromis rappel / latence)
+//les suppressions sont logiques : le noeud reste dans le graphe pour la navigation mais n'est plus renvoye
+//un remplacement (meme id) laisse de meme l'ancien noeud en fantome : le graphe grossit a chaque suppression
+//ou upsert jusqu'a compacter(), qui le reconstruit sur les seuls noeuds vivants
+public class HnswEmbeddingStore implements EmbeddingStore<TextSegment> {
+
+    private static final Comparator<Candidat> PAR_SIMILARITE = Comparator.comparingDouble(Candidat::similarite);
+
+    private final int dimension;
+    private final int m;
+    private final int mMax0;
+    private final int efConstruction;
+    private volatile int efSearch;
+    private final double mL;
+    private final SplittableRandom random;
+    private final ReentrantReadWriteLock verrou = new ReentrantReadWriteLock();
+    //tableaux de marquage recycles entre recherches ; pas de ThreadLocal : avec un thread virtuel par requete,
+    //chaque recherche paierait un tableau neuf de la taille du graphe
+    //le pool garde au plus autant de tableaux qu'il y a eu de recherches simultanees
+    private final ConcurrentLinkedQueue<Visites> visitesLibres = new ConcurrentLinkedQueue<>();
+
+    private float[] vecteurs;
+    private int[][][] liens;
+    private String[] ids;
+    private TextSegment[] segments;
+    private final BitSet supprimes = new BitSet();
+    private final Map<String, Integer> positions = new HashMap<>();
+    private int taille;
+    private int pointEntree = -1;
+    private int niveauMax = -1;
+
+    private HnswEmbeddingStore(Builder builder) {
+        this.dimension = builder.dimension;
+        this.m = builder.m;
+        this.mMax0 = 2 * builder.m;
+        this.efConstruction = builder.efConstruction;
+        this.efSearch = builder.efSearch;
+        this.mL = 1 / Math.log(builder.m);
+        this.random = new SplittableRandom(builder.graine);
+        int capacite = Math.max(1, builder.capaciteInitiale);
+        this.vecteurs = new float[capacite * dimension];
+        this.liens = new int[capacite][][];
+        this.ids = new String[capacite];
+        this.segments = new TextSegment[capacite];
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    //modifiable a chaud pour regler le rappel sans reconstruire le graphe
+    public void efSearch(int efSearch) {
+        this.efSearch = efSearch;
+    }
+
+    public int size() {
+        verrou.readLock().lock();
+        try {
+            return taille - supprimes.cardinality();
+        } finally {
+            verrou.readLock().unlock();
+        }
+    }
+
+    //noeuds supprimes ou remplaces encore presents dans le graphe
+    public int fantomes() {
+        verrou.readLock().lock();
+        try {
+            return supprimes.cardinality();
+        } finally {
+            verrou.readLock().unlock();
+        }
+    }
+
+    //reconstruit le graphe sur les noeuds vivants (memes ids, vecteurs et segments) ; bloque les recherches
+    //le temps de la reconstruction, a lancer hors des heures de trafic ou quand fantomes() devient important
+    //renvoie le nombre de fantomes liberes
+    public int compacter() {
+        verrou.writeLock().lock();
+        try {
+            int fantomes = supprimes.cardinality();
+            if (fantomes == 0) {
+                return 0;
+            }
+            float[] anciensVecteurs = vecteurs;
+            String[] anciensIds = ids;
+            TextSegment[] anciensSegments = segments;
+            BitSet anciensSupprimes = (BitSet) supprimes.clone();
+            int ancienneTaille = taille;
+
+            int capacite = Math.max(1, ancienneTaille - fantomes);
+            vecteurs = new float[capacite * dimension];
+            liens = new int[capacite][][];
+            ids = new String[capacite];
+            segments = new TextSegment[capacite];
+            supprimes.clear();
+            positions.clear();
+            taille = 0;
+            pointEntree = -1;
+            niveauMax = -1;
+            visitesLibres.clear();
+            //vecteurs deja normalises : reinseres tels quels
+            for (int noeud = 0; noeud < ancienneTaille; noeud++) {
+                if (!anciensSupprimes.get(noeud)) {
+                    inserer(anciensIds[noeud], Arrays.copyOfRange(anciensVecteurs, noeud * dimension,
+                            (noeud + 1) * dimension), anciensSegments[noeud]);
+                }
+            }
+            return fantomes;
+        } finally {
+            verrou.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public String add(Embedding embedding) {
+        String id = UUID.randomUUID().toString();
+        add(id, embedding);
+        return id;
+    }
+
+    @Override
+    public void add(String id, Embedding embedding) {
+        addAll(List.of(id), List.of(embedding), null);
+    }
+
+    @Override
+    public String add(Embedding embedding, TextSegment textSegment) {
+        String id = UUID.randomUUID().toString();
+        addAll(List.of(id), List.of(embedding), List.of(textSegment));
+        return id;
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings) {
+        List<String> nouveauxIds = generateIds(embeddings.size());
+        addAll(nouveauxIds, embeddings, null);
+        return nouveauxIds;
+    }
+
+    @Override
+    public void addAll(List<String> idsAjoutes, List<Embedding> embeddings, List<TextSegment> embedded) {
+        if (idsAjoutes.size() != embeddings.size() || (embedded != null && embedded.size() != embeddings.size())) {
+            throw new IllegalArgumentException("ids, embeddings et segments doivent avoir la meme taille");
+        }
+        verrou.writeLock().lock();
+        try {
+            for (int i = 0; i < embeddings.size(); i++) {
+                float[] vecteur = embeddings.get(i).vector();
+                if (vecteur.length != dimension) {
+                    throw new IllegalArgumentException("Dimension " + vecteur.length + " != " + dimension);
+                }
+                inserer(idsAjoutes.get(i), Vecteurs.normaliser(vecteur), embedded == null ? null : embedded.get(i));
+            }
+        } finally {
+            verrou.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void removeAll(Collection<String> idsSupprimes) {
+        verrou.writeLock().lock();
+        try {
+            for (String id : idsSupprimes) {
+                Integer noeud = positions.remove(id);
+                if (noeud != null) {
+                    supprimes.set(noeud);
+                    segments[noeud] = null;
+                }
+            }
+        } finally {
+            verrou.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public EmbeddingSearchResult<TextSegment> search(EmbeddingSearchRequest request) {
+        long debut = System.nanoTime();
+        float[] requete = Vecteurs.normaliser(request.queryEmbedding().vector());
+        if (requete.length != dimension) {
+            throw new IllegalArgumentException("Dimension de la requete " + requete.length + " != " + dimension);
+        }
+        float cosinusMin = Vecteurs.cosinusMinimum(request.minScore());
+        Filter filtre = request.filter();
+
+        verrou.readLock().lock();
+        Visites vus = emprunterVisites();
+        try {
+            long evaluationsAvant = vus.evaluations;
+            List<EmbeddingMatch<TextSegment>> matches = new ArrayList<>();
+            for (Candidat candidat : rechercher(requete, Math.max(efSearch, request.maxResults()), vus)) {
+                if (matches.size() == request.maxResults() || candidat.similarite() < cosinusMin) {
+                    break;
+                }
+                int noeud = candidat.noeud();
+                if (supprimes.get(noeud)) {
+                    continue;
+                }
+                if (filtre != null && (segments[noeud] == null || !filtre.test(segments[noeud].metadata()))) {
+                    continue;
+                }
+                float[] vecteur = Arrays.copyOfRange(vecteurs, noeud * dimension, (noeud + 1) * dimension);
+                matches.add(new EmbeddingMatch<>(RelevanceScore.fromCosineSimilarity(candidat.similarite()),
+                        ids[noeud], Embedding.from(vecteur), segments[noeud]));
+            }
+            MetriquesRag.CANDIDATS_EVALUES.enregistrer(vus.evaluations - evaluationsAvant);
+            MetriquesRag.RECHERCHE_STORE.enregistrerDepuis(debut);
+            return new EmbeddingSearchResult<>(matches);
+        } finally {
+            visitesLibres.offer(vus);
+            verrou.readLock().unlock();
+        }
+    }
+
+    //compare HNSW a la recherche exacte sur les memes vecteurs : rappel@k et latences (microsecondes)
+    public EvaluationRappel evaluer(List<Embedding> requetes, int k) {
+        long[] latencesHnsw = new long[requetes.size()];
+        long[] latencesExactes = new long[requetes.size()];
+        long trouves = 0;
+        long attendus = 0;
+        for (int q = 0; q < requetes.size(); q++) {
+            Embedding requete = requetes.get(q);
+            EmbeddingSearchRequest request = EmbeddingSearchRequest.builder()
+                    .queryEmbedding(requete)
+                    .maxResults(k)
+                    .build();
+
+            long debut = System.nanoTime();
+            List<EmbeddingMatch<TextSegment>> approches = search(request).matches();
+            latencesHnsw[q] = System.nanoTime() - debut;
+
+            debut = System.nanoTime();
+            Set<String> exacts = rechercheExacte(Vecteurs.normaliser(requete.vector()), k);
+            latencesExactes[q] = System.nanoTime() - debut;
+
+            attendus += exacts.size();
+            for (EmbeddingMatch<TextSegment> match : approches) {
+                if (exacts.contains(match.embeddingId())) {
+                    trouves++;
+                }
+            }
+        }
+        double rappel = attendus == 0 ? 1 : (double) trouves / attendus;
+        return new EvaluationRappel(k, efSearch, rappel,
+                centile(latencesHnsw, 0.50), centile(latencesHnsw, 0.99),
+                centile(latencesExactes, 0.50), centile(latencesExactes, 0.99));
+    }
+
+    private Set<String> rechercheExacte(float[] requete, int k) {
+        verrou.readLock().lock();
+        try {
+            TasBorne meilleurs = new TasBorne(Math.min(k, taille));
+            for (int noeud = 0; noeud < taille; noeud++) {
+                if (supprimes.get(noeud)) {
+                    continue;
+                }
+                float similarite = Vecteurs.produitScalaire(requete, 0, vecteurs, noeud * dimension, dimension);
+                if (meilleurs.accepte(similarite)) {
+                    meilleurs.ajouter(noeud, similarite);
+                }
+            }
+            Set<String> resultat = new HashSet<>();
+            for (int rang = 0; rang < meilleurs.taille(); rang++) {
+                resultat.add(ids[meilleurs.index(rang)]);
+            }
+            return resultat;
+        } finally {
+            verrou.readLock().unlock();
+        }
+    }
+
+    private static double centile(long[] latences, double centile) {
+        if (latences.length == 0) {
+            return 0;
+        }
+        long[] triees = latences.clone();
+        Arrays.sort(triees);
+        int rang = (int) Math.ceil(centile * triees.length) - 1;
+        return triees[Math.max(0, rang)] / 1_000.0;
+    }
+
+    //appele sous verrou d'ecriture
+    private void inserer(String id, float[] vecteur, TextSegment segment) {
+        //un id deja present est remplace : l'ancien noeud devient un fantome
+        Integer ancien = positions.get(id);
+        if (ancien != null) {
+            supprimes.set(ancien);
+            segments[ancien] = null;
+        }
+
+        assurerCapacite(taille + 1);
+        int noeud = taille++;
+        System.arraycopy(vecteur, 0, vecteurs, noeud * dimension, dimension);
+        ids[noeud] = id;
+        segments[noeud] = segment;
+        positions.put(id, noeud);
+
+        int niveau = (int) (-Math.log(1 - random.nextDouble()) * mL);
+        liens[noeud] = new int[niveau + 1][];
+        for (int couche = 0; couche <= niveau; couche++) {
+            liens[noeud][couche] = new int[1 + (couche == 0 ? mMax0 : m)];
+        }
+
+        if (pointEntree < 0) {
+            pointEntree = noeud;
+            niveauMax = niveau;
+            return;
+        }
+
+        int entree = pointEntree;
+        for (int couche = niveauMax; couche > niveau; couche--) {
+            entree = gloutonne(vecteur, entree, couche);
+        }
+        Visites vus = emprunterVisites();
+        try {
+            for (int couche = Math.min(niveau, niveauMax); couche >= 0; couche--) {
+                List<Candidat> proches = rechercherCouche(vecteur, entree, efConstruction, couche, vus);
+                List<Candidat> voisins = selectionner(proches, m);
+                for (Candidat voisin : voisins) {
+                    relier(noeud, voisin.noeud(), couche);
+                    relier(voisin.noeud(), noeud, couche);
+                }
+                entree = proches.get(0).noeud();
+            }
+        } finally {
+            visitesLibres.offer(vus);
+        }
+        if (niveau > niveauMax) {
+            niveauMax = niveau;
+            pointEntree = noeud;
+        }
+    }
+
+    private void relier(int source, int cible, int couche) {
+        int[] voisins = liens[source][couche];
+        int capacite = voisins.length - 1;
+        if (voisins[0] < capacite) {
+            voisins[++voisins[0]] = cible;
+            return;
+        }
+        //liste pleine : on garde les meilleurs voisins parmi anciens + nouveau
+        List<Candidat> tous = new ArrayList<>(capacite + 1);
+        for (int i = 1; i <= voisins[0]; i++) {
+            tous.add(new Candidat(voisins[i], similarite(source, voisins[i])));
+        }
+        tous.add(new Candidat(cible, similarite(source, cible)));
+        tous.sort(PAR_SIMILARITE.reversed());
+        List<Candidat> gardes = selectionner(tous, capacite);
+        voisins[0] = gardes.size();
+        for (int i = 0; i < gardes.size(); i++) {
+            voisins[i + 1] = gardes.get(i).noeud();
+        }
+    }
+
+    //heuristique de selection HNSW : un candidat est ecarte s'il est plus proche d'un voisin deja retenu
+    //que de la cible, ce qui garde des liens dans des directions variees ; on complete ensuite si besoin
+    private List<Candidat> selectionner(List<Candidat> candidatsTries, int nombre) {
+        List<Candidat> retenus = new ArrayList<>(nombre);
+        List<Candidat> ecartes = new ArrayList<>();
+        for (Candidat candidat : candidatsTries) {
+            if (retenus.size() == nombre) {
+                break;
+            }
+            boolean diversifie = true;
+            for (Candidat retenu : retenus) {
+                if (similarite(candidat.noeud(), retenu.noeud()) > candidat.similarite()) {
+                    diversifie = false;
+                    break;
+                }
+            }
+            if (diversifie) {
+                retenus.add(candidat);
+            } else {
+                ecartes.add(candidat);
+            }
+        }
+        for (int i = 0; i < ecartes.size() && retenus.size() < nombre; i++) {
+            retenus.add(ecartes.get(i));
+        }
+        return retenus;
+    }
+
+    private List<Candidat> rechercher(float[] requete, int ef, Visites vus) {
+        if (pointEntree < 0) {
+            return List.of();
+        }
+        int entree = pointEntree;
+        for (int couche = niveauMax; couche > 0; couche--) {
+            entree = gloutonne(requete, entree, couche);
+        }
+        return rechercherCouche(requete, entree, ef, 0, vus);
+    }
+
+    private int gloutonne(float[] requete, int entree, int couche) {
+        int courant = entree;
+        float meilleure = similarite(requete, courant);
+        boolean ameliore = true;
+        while (ameliore) {
+            ameliore = false;
+            int[] voisins = liens[courant][couche];
+            for (int i = 1; i <= voisins[0]; i++) {
+                float s = similarite(requete, voisins[i]);
+                if (s > meilleure) {
+                    meilleure = s;
+                    courant = voisins[i];
+                    ameliore = true;
+                }
+            }
+        }
+        return courant;
+    }
+
+    //recherche en faisceau de largeur ef sur une couche ; resultat trie du plus proche au plus lointain
+    private List<Candidat> rechercherCouche(float[] requete, int entree, int ef, int couche, Visites vus) {
+        vus.reinitialiser(taille);
+        PriorityQueue<Candidat> aExplorer = new PriorityQueue<>(PAR_SIMILARITE.reversed());
+        PriorityQueue<Candidat> resultats = new PriorityQueue<>(PAR_SIMILARITE);
+
+        Candidat depart = new Candidat(entree, similarite(requete, entree));
+        vus.marquer(entree);
+        aExplorer.add(depart);
+        resultats.add(depart);
+
+        while (!aExplorer.isEmpty()) {
+            Candidat courant = aExplorer.poll();
+            if (courant.similarite() < resultats.peek().similarite() && resultats.size() >= ef) {
+                break;
+            }
+            int[] voisins = liens[courant.noeud()][couche];
+            for (int i = 1; i <= voisins[0]; i++) {
+                int voisin = voisins[i];
+                if (!vus.marquer(voisin)) {
+                    continue;
+                }
+                float s = similarite(requete, voisin);
+                if (resultats.size() < ef || s > resultats.peek().similarite()) {
+                    Candidat candidat = new Candidat(voisin, s);
+                    aExplorer.add(candidat);
+                    resultats.add(candidat);
+                    if (resultats.size() > ef) {
+                        resultats.poll();
+                    }
+                }
+            }
+        }
+        List<Candidat> tries = new ArrayList<>(resultats);
+        tries.sort(PAR_SIMILARITE.reversed());
+        return tries;
+    }
+
+    private Visites emprunterVisites() {
+        Visites vus = visitesLibres.poll();
+        return vus != null ? vus : new Visites();
+    }
+
+    private float similarite(float[] requete, int noeud) {
+        return Vecteurs.produitScalaire(requete, 0, vecteurs, noeud * dimension, dimension);
+    }
+
+    private float similarite(int a, int b) {
+        return Vecteurs.produitScalaire(vecteurs, a * dimension, vecteurs, b * dimension, dimension);
+    }
+
+    private void assurerCapacite(int capaciteVoulue) {
+        if (capaciteVoulue <= ids.length) {
+            return;
+        }
+        int capacite = Math.max(capaciteVoulue, ids.length * 2);
+        vecteurs = Arrays.copyOf(vecteurs, capacite * dimension);
+        liens = Arrays.copyOf(liens, capacite);
+        ids = Arrays.copyOf(ids, capacite);
+        segments = Arrays.copyOf(segments, capacite);
+    }
+
+    private record Candidat(int noeud, float similarite) {
+    }
+
+    //marquage des noeuds visites par generation : pas de remise a zero du tableau a chaque requete
+    private static final class Visites {
+        private int[] marques = new int[0];
+        private int generation;
+        //noeuds marques depuis la creation (= similarites calculees en recherche par faisceau)
+        private long evaluations;
+
+        void reinitialiser(int taille) {
+            if (marques.length < taille) {
+                marques = new int[Math.max(taille, marques.length * 2)];
+                generation = 0;
+            }
+            generation++;
+            if (generation == 0) {
+                Arrays.fill(marques, 0);
+                generation = 1;
+            }
+        }
+
+        boolean marquer(int noeud) {
+            if (marques[noeud] == generation) {
+                return false;
+            }
+            marques[noeud] = generation;
+            evaluations++;
+            return true;
+        }
+    }
+
+    public static class Builder {
+
+        private int dimension = FloatArrayEmbeddingStore.DIMENSION_MINILM;
+        private int m = 16;
+        private int efConstruction = 200;
+        private int efSearch = 64;
+        private int capaciteInitiale = 1024;
+        private long graine = 42;
+
+        public Builder dimension(int dimension) {
+            this.dimension = dimension;
+            return this;
+        }
+
+        public Builder m(int m) {
+            this.m = m;
+            return this;
+        }
+
+        public Builder efConstruction(int efConstruction) {
+            this.efConstruction = efConstruction;
+            return this;
+        }
+
+        public Builder efSearch(int efSearch) {
+            this.efSearch = efSearch;
+            return this;
+        }
+
+        public Builder capaciteInitiale(int capaciteInitiale) {
+            this.capaciteInitiale = capaciteInitiale;
+            return this;
+        }
+
+        public Builder graine(long graine) {
+            this.graine = graine;
+            return this;
+        }
+
+        public HnswEmbeddingStore build() {
+            if (m < 2 || efConstruction < 1 || efSearch < 1 || dimension < 1) {
+                throw new IllegalArgumentException("Parametres HNSW invalides");
+            }
+            return new HnswEmbeddingStore(this);
+        }
+    }
+}
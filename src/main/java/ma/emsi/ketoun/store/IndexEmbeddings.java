@@ -0,0 +1,91 @@
+package ma.emsi.ketoun.store;
+
+import dev.langchain4j.data.document.splitter.DocumentSplitters;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import ma.emsi.ketoun.cache.CacheSegments;
+import ma.emsi.ketoun.ingestion.PipelineIngestion;
+import ma.emsi.ketoun.ingestion.StatistiquesIngestion;
+import ma.emsi.ketoun.util.Hachage;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+//index d'embeddings persistant : au demarrage on mappe le fichier si le document n'a pas change,
+//sinon on repasse le document dans le pipeline d'ingestion (ou on reprend ses segments du cache) et on reecrit l'index
+public final class IndexEmbeddings {
+
+    //repertoire des index, modifiable avec -Drag.index.dir=...
+    public static final String PROPRIETE_REPERTOIRE = "rag.index.dir";
+
+    private static final int TAILLE_SEGMENT = 300;
+    private static final int CHEVAUCHEMENT = 30;
+
+    private IndexEmbeddings() {
+    }
+
+    public static MappedEmbeddingStore chargerOuCreer(Path source, EmbeddingModel embeddingModel) {
+        return chargerOuCreer(source, embeddingModel.getClass(), () -> embeddingModel);
+    }
+
+    //le modele n'est demande que si l'index est a refaire : au demarrage, le store peut etre mappe
+    //pendant que le modele ONNX se charge encore (voir ChronologieDemarrage)
+    public static MappedEmbeddingStore chargerOuCreer(Path source, Class<? extends EmbeddingModel> typeModele,
+                                                      Supplier<EmbeddingModel> modele) {
+        byte[] cle = cle(source, typeModele);
+        Path fichierIndex = repertoire().resolve(source.getFileName() + ".idx");
+
+        Optional<MappedEmbeddingStore> existant = MappedEmbeddingStore.ouvrir(fichierIndex, cle);
+        if (existant.isPresent()) {
+            return existant.get();
+        }
+        EmbeddingModel embeddingModel = modele.get();
+
+        //segments deja decoupes (autre modele d'embedding par exemple) : seul l'embedding est refait
+        byte[] cleSegments = CacheSegments.cle(source, TAILLE_SEGMENT, CHEVAUCHEMENT);
+        Optional<List<TextSegment>> segmentsEnCache = CacheSegments.charger(CacheSegments.fichier(source), cleSegments);
+        if (segmentsEnCache.isPresent()) {
+            List<TextSegment> segments = segmentsEnCache.get();
+            List<Embedding> embeddings = embeddingModel.embedAll(segments).content();
+            System.out.println("Indexation de " + source.getFileName() + " : " + segments.size()
+                    + " segments repris du cache");
+            return MappedEmbeddingStore.ecrire(fichierIndex, cle, embeddings, segments);
+        }
+
+        //parse -> split -> embed par le pipeline parallele, en collectant les lots
+        List<TextSegment> segments = new ArrayList<>();
+        List<Embedding> embeddings = new ArrayList<>();
+        PipelineIngestion pipeline = PipelineIngestion.builder()
+                .embeddingModel(embeddingModel)
+                .splitters(() -> DocumentSplitters.recursive(TAILLE_SEGMENT, CHEVAUCHEMENT))
+                .build();
+        StatistiquesIngestion statistiques = pipeline.ingerer(List.of(source), (lotEmbeddings, lotSegments) -> {
+            embeddings.addAll(lotEmbeddings);
+            segments.addAll(lotSegments);
+        });
+        if (statistiques.echecs() > 0) {
+            throw new RuntimeException("Impossible de parser le fichier " + source);
+        }
+        System.out.println("Indexation de " + source.getFileName() + " : " + statistiques);
+        CacheSegments.ecrire(CacheSegments.fichier(source), cleSegments, segments);
+
+        // Ecriture de l'index puis mapping
+        return MappedEmbeddingStore.ecrire(fichierIndex, cle, embeddings, segments);
+    }
+
+    public static Path repertoire() {
+        return Path.of(System.getProperty(PROPRIETE_REPERTOIRE, ".index"));
+    }
+
+    //la cle couvre le contenu du fichier et tout ce qui change les vecteurs produits
+    static byte[] cle(Path source, Class<? extends EmbeddingModel> typeModele) {
+        String signature = Hachage.hex(Hachage.sha256(source))
+                + "|recursive(" + TAILLE_SEGMENT + "," + CHEVAUCHEMENT + ")"
+                + "|" + typeModele.getName();
+        return Hachage.sha256(signature);
+    }
+}
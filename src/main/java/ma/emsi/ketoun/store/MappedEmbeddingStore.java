@@ -0,0 +1,236 @@
+package ma.emsi.ketoun.store;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingSearchResult;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.RelevanceScore;
+import dev.langchain4j.store.embedding.filter.Filter;
+import ma.emsi.ketoun.metriques.MetriquesRag;
+import ma.emsi.ketoun.util.Hachage;
+import ma.emsi.ketoun.util.SegmentsBinaires;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+//store en lecture seule adosse a un fichier binaire mappe en memoire :
+//  entete | vecteurs float (normalises L2) | offsets des segments | segments encodes
+//le fichier est identifie par une cle (hash du document source + parametres d'indexation)
+public class MappedEmbeddingStore implements EmbeddingStore<TextSegment> {
+
+    private static final int MAGIQUE = 0x54503449; // "TP4I"
+    private static final int VERSION = 1;
+    private static final int TAILLE_CLE = 32;
+    private static final int TAILLE_ENTETE = 4 + 4 + 4 + 4 + TAILLE_CLE;
+
+    private final String version;
+    private final int dimension;
+    private final int nombre;
+    private final FloatBuffer vecteurs;
+    private final LongBuffer offsets;
+    private final ByteBuffer segments;
+
+    private MappedEmbeddingStore(MappedByteBuffer buffer, byte[] cle) {
+        this.version = Hachage.hex(cle);
+        this.dimension = buffer.getInt(8);
+        this.nombre = buffer.getInt(12);
+        int debutVecteurs = TAILLE_ENTETE;
+        int tailleVecteurs = nombre * dimension * Float.BYTES;
+        int debutOffsets = debutVecteurs + tailleVecteurs;
+        int tailleOffsets = (nombre + 1) * Long.BYTES;
+        int debutSegments = debutOffsets + tailleOffsets;
+        this.vecteurs = buffer.slice(debutVecteurs, tailleVecteurs).asFloatBuffer();
+        this.offsets = buffer.slice(debutOffsets, tailleOffsets).asLongBuffer();
+        this.segments = buffer.slice(debutSegments, buffer.capacity() - debutSegments);
+    }
+
+    //ouvre l'index si le fichier existe et correspond a la cle attendue
+    public static Optional<MappedEmbeddingStore> ouvrir(Path fichier, byte[] cle) {
+        if (!Files.isRegularFile(fichier)) {
+            return Optional.empty();
+        }
+        try (FileChannel canal = FileChannel.open(fichier, StandardOpenOption.READ)) {
+            if (canal.size() < TAILLE_ENTETE) {
+                return Optional.empty();
+            }
+            MappedByteBuffer buffer = canal.map(FileChannel.MapMode.READ_ONLY, 0, canal.size());
+            if (buffer.getInt(0) != MAGIQUE || buffer.getInt(4) != VERSION) {
+                return Optional.empty();
+            }
+            byte[] cleFichier = new byte[TAILLE_CLE];
+            buffer.get(16, cleFichier);
+            if (!Arrays.equals(cleFichier, cle)) {
+                return Optional.empty();
+            }
+            return Optional.of(new MappedEmbeddingStore(buffer, cle));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    //ecrit l'index dans un fichier temporaire puis le renomme, pour ne jamais laisser un index a moitie ecrit
+    public static MappedEmbeddingStore ecrire(Path fichier, byte[] cle,
+                                              List<Embedding> embeddings, List<TextSegment> textSegments) {
+        if (cle.length != TAILLE_CLE) {
+            throw new IllegalArgumentException("La cle doit faire " + TAILLE_CLE + " octets");
+        }
+        if (embeddings.size() != textSegments.size()) {
+            throw new IllegalArgumentException("Autant d'embeddings que de segments sont attendus");
+        }
+        int dimension = embeddings.isEmpty() ? 0 : embeddings.get(0).dimension();
+        try {
+            Files.createDirectories(fichier.toAbsolutePath().getParent());
+            Path temporaire = Files.createTempFile(fichier.toAbsolutePath().getParent(), "index", ".tmp");
+
+            //encodage des segments a part pour connaitre leurs offsets
+            ByteArrayOutputStream segmentsEncodes = new ByteArrayOutputStream();
+            DataOutputStream sortieSegments = new DataOutputStream(segmentsEncodes);
+            long[] offsetsSegments = new long[textSegments.size() + 1];
+            for (int i = 0; i < textSegments.size(); i++) {
+                offsetsSegments[i] = sortieSegments.size();
+                SegmentsBinaires.ecrire(textSegments.get(i), sortieSegments);
+            }
+            offsetsSegments[textSegments.size()] = sortieSegments.size();
+
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporaire)))) {
+                out.writeInt(MAGIQUE);
+                out.writeInt(VERSION);
+                out.writeInt(dimension);
+                out.writeInt(embeddings.size());
+                out.write(cle);
+                for (Embedding embedding : embeddings) {
+                    if (embedding.dimension() != dimension) {
+                        throw new IllegalArgumentException("Dimensions d'embeddings incoherentes");
+                    }
+                    for (float valeur : Vecteurs.normaliser(embedding.vector())) {
+                        out.writeFloat(valeur);
+                    }
+                }
+                for (long offset : offsetsSegments) {
+                    out.writeLong(offset);
+                }
+                segmentsEncodes.writeTo(out);
+            }
+            Files.move(temporaire, fichier, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return ouvrir(fichier, cle).orElseThrow(() -> new IllegalStateException("Index illisible : " + fichier));
+    }
+
+    //cle de l'index en hexadecimal : change des que le document ou les parametres d'indexation changent
+    public String version() {
+        return version;
+    }
+
+    public int size() {
+        return nombre;
+    }
+
+    //tous les segments dans l'ordre de l'index (ex. pour construire un index lexical sur le meme contenu)
+    public List<TextSegment> segments() {
+        List<TextSegment> tous = new ArrayList<>(nombre);
+        for (int i = 0; i < nombre; i++) {
+            tous.add(segment(i));
+        }
+        return tous;
+    }
+
+    @Override
+    public EmbeddingSearchResult<TextSegment> search(EmbeddingSearchRequest request) {
+        long debut = System.nanoTime();
+        float[] requete = Vecteurs.normaliser(request.queryEmbedding().vector());
+        if (nombre > 0 && requete.length != dimension) {
+            throw new IllegalArgumentException("Dimension de la requete " + requete.length + " != " + dimension);
+        }
+        Filter filtre = request.filter();
+        float cosinusMin = Vecteurs.cosinusMinimum(request.minScore());
+
+        TasBorne meilleurs = new TasBorne(Math.min(request.maxResults(), nombre));
+        for (int i = 0; i < nombre; i++) {
+            float cosinus = produitScalaire(requete, i);
+            if (cosinus < cosinusMin || !meilleurs.accepte(cosinus)) {
+                continue;
+            }
+            if (filtre != null && !filtre.test(segment(i).metadata())) {
+                continue;
+            }
+            meilleurs.ajouter(i, cosinus);
+        }
+        meilleurs.trierDecroissant();
+
+        List<EmbeddingMatch<TextSegment>> matches = new ArrayList<>(meilleurs.taille());
+        for (int rang = 0; rang < meilleurs.taille(); rang++) {
+            int i = meilleurs.index(rang);
+            matches.add(new EmbeddingMatch<>(RelevanceScore.fromCosineSimilarity(meilleurs.score(rang)),
+                    String.valueOf(i), embedding(i), segment(i)));
+        }
+        MetriquesRag.CANDIDATS_EVALUES.enregistrer(nombre);
+        MetriquesRag.RECHERCHE_STORE.enregistrerDepuis(debut);
+        return new EmbeddingSearchResult<>(matches);
+    }
+
+    private float produitScalaire(float[] requete, int index) {
+        int base = index * dimension;
+        float somme = 0;
+        for (int j = 0; j < dimension; j++) {
+            somme += requete[j] * vecteurs.get(base + j);
+        }
+        return somme;
+    }
+
+    private Embedding embedding(int index) {
+        float[] vecteur = new float[dimension];
+        vecteurs.get(index * dimension, vecteur);
+        return Embedding.from(vecteur);
+    }
+
+    private TextSegment segment(int index) {
+        int debut = (int) offsets.get(index);
+        int fin = (int) offsets.get(index + 1);
+        return SegmentsBinaires.lire(segments.slice(debut, fin - debut));
+    }
+
+    //index en lecture seule : les ajouts passent par une reconstruction complete
+    @Override
+    public String add(Embedding embedding) {
+        throw lectureSeule();
+    }
+
+    @Override
+    public void add(String id, Embedding embedding) {
+        throw lectureSeule();
+    }
+
+    @Override
+    public String add(Embedding embedding, TextSegment textSegment) {
+        throw lectureSeule();
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings) {
+        throw lectureSeule();
+    }
+
+    private static UnsupportedOperationException lectureSeule() {
+        return new UnsupportedOperationException("MappedEmbeddingStore est en lecture seule");
+    }
+}
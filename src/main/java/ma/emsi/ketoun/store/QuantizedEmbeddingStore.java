@@ -0,0 +1,711 @@
+package ma.emsi.ketoun.store;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingSearchResult;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.RelevanceScore;
+import dev.langchain4j.store.embedding.filter.Filter;
+import ma.emsi.ketoun.metriques.MetriquesRag;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+//store a deux passes :
+//  1. recherche approchee sur des codes compresses gardes en memoire (int8 : 4x, PQ : jusqu'a 16x et plus)
+//  2. reclassement exact d'une liste courte avec les vecteurs float relus depuis un fichier
+//minScore et maxResults ne sont appliques qu'apres le reclassement, sur les scores exacts
+//le mode PLEINE_PRECISION garde les float en memoire et ne fait qu'une passe (reference pour comparer)
+//en PQ, tant que les codebooks ne sont pas appris (entrainer() ou CENTROIDES vecteurs accumules), la recherche
+//se fait en exact sur les vecteurs du fichier ; l'apprentissage recode ensuite tout le store
+//suppressions et remplacements laissent des trous (codes, fichier, ids) : au-dela d'un quart d'entrees supprimees
+//le store est compacte, comme FragmentEmbeddings
+public class QuantizedEmbeddingStore implements EmbeddingStore<TextSegment>, Closeable {
+
+    public enum Mode {
+        PLEINE_PRECISION,
+        SCALAIRE_INT8,
+        PRODUIT
+    }
+
+    private static final int CENTROIDES = 256;
+    private static final int CAPACITE_INITIALE = 1024;
+
+    private final Mode mode;
+    private final int dimension;
+    private final int sousEspaces;
+    private final int sousDimension;
+    private final int facteurReclassement;
+    private final int echantillonEntrainement;
+    private final int iterationsKMeans;
+    private final SplittableRandom random;
+    private final ReentrantReadWriteLock verrou = new ReentrantReadWriteLock();
+
+    private final Path fichierVecteurs;
+    private final FileChannel canalVecteurs;
+
+    private String[] ids;
+    private TextSegment[] segments;
+    private final BitSet supprimes = new BitSet();
+    private final Map<String, Integer> positions = new HashMap<>();
+    private int taille;
+
+    private float[] pleins;
+    private byte[] codes;
+    private float[] echelles;
+    private float[][] centroides;
+
+    private QuantizedEmbeddingStore(Builder builder) {
+        this.mode = builder.mode;
+        this.dimension = builder.dimension;
+        this.sousEspaces = builder.sousEspaces;
+        this.sousDimension = builder.dimension / builder.sousEspaces;
+        this.facteurReclassement = builder.facteurReclassement;
+        this.echantillonEntrainement = builder.echantillonEntrainement;
+        this.iterationsKMeans = builder.iterationsKMeans;
+        this.random = new SplittableRandom(builder.graine);
+
+        int capacite = CAPACITE_INITIALE;
+        this.ids = new String[capacite];
+        this.segments = new TextSegment[capacite];
+        if (mode == Mode.PLEINE_PRECISION) {
+            this.pleins = new float[capacite * dimension];
+            this.fichierVecteurs = null;
+            this.canalVecteurs = null;
+        } else {
+            this.codes = new byte[capacite * octetsParVecteur()];
+            this.echelles = mode == Mode.SCALAIRE_INT8 ? new float[capacite] : null;
+            try {
+                this.fichierVecteurs = builder.fichierVecteurs != null
+                        ? builder.fichierVecteurs
+                        : Files.createTempFile("vecteurs", ".f32");
+                if (builder.fichierVecteurs == null) {
+                    fichierVecteurs.toFile().deleteOnExit();
+                }
+                this.canalVecteurs = FileChannel.open(fichierVecteurs, StandardOpenOption.CREATE,
+                        StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public Mode mode() {
+        return mode;
+    }
+
+    //taille en memoire d'un vecteur (hors ids, segments et codebooks)
+    public int octetsParVecteur() {
+        return switch (mode) {
+            case PLEINE_PRECISION -> dimension * Float.BYTES;
+            case SCALAIRE_INT8 -> dimension;
+            case PRODUIT -> sousEspaces;
+        };
+    }
+
+    public double facteurCompression() {
+        int supplementaire = mode == Mode.SCALAIRE_INT8 ? Float.BYTES : 0;
+        return (double) (dimension * Float.BYTES) / (octetsParVecteur() + supplementaire);
+    }
+
+    //entrainement explicite des codebooks PQ ; sinon ils sont appris des que le store contient CENTROIDES vecteurs
+    //les vecteurs deja presents sont recodes avec les nouveaux codebooks
+    public void entrainer(List<Embedding> echantillon) {
+        if (mode != Mode.PRODUIT) {
+            return;
+        }
+        if (echantillon.size() < CENTROIDES) {
+            throw new IllegalArgumentException("Il faut au moins " + CENTROIDES + " vecteurs pour entrainer les codebooks");
+        }
+        float[][] vecteurs = new float[echantillon.size()][];
+        for (int i = 0; i < vecteurs.length; i++) {
+            vecteurs[i] = Vecteurs.normaliser(echantillon.get(i).vector());
+        }
+        verrou.writeLock().lock();
+        try {
+            entrainerCodebooks(vecteurs);
+            recoder();
+        } finally {
+            verrou.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public String add(Embedding embedding) {
+        String id = UUID.randomUUID().toString();
+        add(id, embedding);
+        return id;
+    }
+
+    @Override
+    public void add(String id, Embedding embedding) {
+        addAll(List.of(id), List.of(embedding), null);
+    }
+
+    @Override
+    public String add(Embedding embedding, TextSegment textSegment) {
+        String id = UUID.randomUUID().toString();
+        addAll(List.of(id), List.of(embedding), List.of(textSegment));
+        return id;
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings) {
+        List<String> nouveauxIds = generateIds(embeddings.size());
+        addAll(nouveauxIds, embeddings, null);
+        return nouveauxIds;
+    }
+
+    @Override
+    public void addAll(List<String> idsAjoutes, List<Embedding> embeddings, List<TextSegment> embedded) {
+        if (idsAjoutes.size() != embeddings.size() || (embedded != null && embedded.size() != embeddings.size())) {
+            throw new IllegalArgumentException("ids, embeddings et segments doivent avoir la meme taille");
+        }
+        float[][] normalises = new float[embeddings.size()][];
+        for (int i = 0; i < normalises.length; i++) {
+            float[] vecteur = embeddings.get(i).vector();
+            if (vecteur.length != dimension) {
+                throw new IllegalArgumentException("Dimension " + vecteur.length + " != " + dimension);
+            }
+            normalises[i] = Vecteurs.normaliser(vecteur);
+        }
+
+        verrou.writeLock().lock();
+        try {
+            for (int i = 0; i < normalises.length; i++) {
+                String id = idsAjoutes.get(i);
+                //un id deja present est remplace : l'ancienne entree est marquee supprimee
+                Integer ancien = positions.get(id);
+                if (ancien != null) {
+                    supprimes.set(ancien);
+                    segments[ancien] = null;
+                }
+                assurerCapacite(taille + 1);
+                int position = taille++;
+                ids[position] = id;
+                segments[position] = embedded == null ? null : embedded.get(i);
+                positions.put(id, position);
+                encoder(position, normalises[i]);
+            }
+            if (mode == Mode.PRODUIT && centroides == null && positions.size() >= CENTROIDES) {
+                entrainerCodebooks(vecteursPresents());
+                recoder();
+            }
+            compacterSiNecessaire();
+        } finally {
+            verrou.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void removeAll(Collection<String> idsSupprimes) {
+        verrou.writeLock().lock();
+        try {
+            for (String id : idsSupprimes) {
+                Integer position = positions.remove(id);
+                if (position != null) {
+                    supprimes.set(position);
+                    segments[position] = null;
+                }
+            }
+            compacterSiNecessaire();
+        } finally {
+            verrou.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public EmbeddingSearchResult<TextSegment> search(EmbeddingSearchRequest request) {
+        long debut = System.nanoTime();
+        float[] requete = Vecteurs.normaliser(request.queryEmbedding().vector());
+        if (requete.length != dimension) {
+            throw new IllegalArgumentException("Dimension de la requete " + requete.length + " != " + dimension);
+        }
+        float cosinusMin = Vecteurs.cosinusMinimum(request.minScore());
+        Filter filtre = request.filter();
+
+        verrou.readLock().lock();
+        try {
+            //passe 1 : scores approches sur les codes, liste courte de maxResults * facteurReclassement
+            int courte = mode == Mode.PLEINE_PRECISION
+                    ? request.maxResults()
+                    : (int) Math.min((long) request.maxResults() * facteurReclassement, Integer.MAX_VALUE);
+            TasBorne approches = new TasBorne(Math.min(courte, taille));
+            float[] table = mode == Mode.PRODUIT && centroides != null ? tableDistances(requete) : null;
+            for (int i = 0; i < taille; i++) {
+                if (supprimes.get(i)) {
+                    continue;
+                }
+                float score = scoreApproche(requete, table, i);
+                if (!approches.accepte(score)) {
+                    continue;
+                }
+                //en pleine precision le score est exact : on peut deja filtrer par minScore
+                if (mode == Mode.PLEINE_PRECISION && score < cosinusMin) {
+                    continue;
+                }
+                if (filtre != null && (segments[i] == null || !filtre.test(segments[i].metadata()))) {
+                    continue;
+                }
+                approches.ajouter(i, score);
+            }
+
+            //passe 2 : reclassement exact puis minScore / maxResults
+            TasBorne exacts = new TasBorne(Math.min(request.maxResults(), approches.taille()));
+            Map<Integer, float[]> relus = new HashMap<>();
+            for (int rang = 0; rang < approches.taille(); rang++) {
+                int i = approches.index(rang);
+                float[] vecteur = vecteurPlein(i);
+                float cosinus = Vecteurs.produitScalaire(requete, 0, vecteur, 0, dimension);
+                if (cosinus >= cosinusMin && exacts.accepte(cosinus)) {
+                    exacts.ajouter(i, cosinus);
+                    relus.put(i, vecteur);
+                }
+            }
+            exacts.trierDecroissant();
+
+            List<EmbeddingMatch<TextSegment>> matches = new ArrayList<>(exacts.taille());
+            for (int rang = 0; rang < exacts.taille(); rang++) {
+                int i = exacts.index(rang);
+                matches.add(new EmbeddingMatch<>(RelevanceScore.fromCosineSimilarity(exacts.score(rang)),
+                        ids[i], Embedding.from(relus.get(i)), segments[i]));
+            }
+            //codes parcourus + vecteurs relus en pleine precision
+            MetriquesRag.CANDIDATS_EVALUES.enregistrer(taille + approches.taille());
+            MetriquesRag.RECHERCHE_STORE.enregistrerDepuis(debut);
+            return new EmbeddingSearchResult<>(matches);
+        } finally {
+            verrou.readLock().unlock();
+        }
+    }
+
+    //rappel@k de la recherche compressee + reclassement face au parcours exact en pleine precision
+    public EvaluationQuantification evaluer(List<Embedding> requetes, int k) {
+        long trouves = 0;
+        long attendus = 0;
+        for (Embedding requete : requetes) {
+            EmbeddingSearchRequest request = EmbeddingSearchRequest.builder()
+                    .queryEmbedding(requete)
+                    .maxResults(k)
+                    .build();
+            Set<String> approches = new HashSet<>();
+            for (EmbeddingMatch<TextSegment> match : search(request).matches()) {
+                approches.add(match.embeddingId());
+            }
+            Set<String> exacts = rechercheExacte(Vecteurs.normaliser(requete.vector()), k);
+            attendus += exacts.size();
+            for (String id : exacts) {
+                if (approches.contains(id)) {
+                    trouves++;
+                }
+            }
+        }
+        double rappel = attendus == 0 ? 1 : (double) trouves / attendus;
+        return new EvaluationQuantification(mode, k, rappel, octetsParVecteur(), facteurCompression());
+    }
+
+    private Set<String> rechercheExacte(float[] requete, int k) {
+        verrou.readLock().lock();
+        try {
+            TasBorne meilleurs = new TasBorne(Math.min(k, taille));
+            for (int i = 0; i < taille; i++) {
+                if (supprimes.get(i)) {
+                    continue;
+                }
+                float cosinus = Vecteurs.produitScalaire(requete, 0, vecteurPlein(i), 0, dimension);
+                if (meilleurs.accepte(cosinus)) {
+                    meilleurs.ajouter(i, cosinus);
+                }
+            }
+            Set<String> resultat = new HashSet<>();
+            for (int rang = 0; rang < meilleurs.taille(); rang++) {
+                resultat.add(ids[meilleurs.index(rang)]);
+            }
+            return resultat;
+        } finally {
+            verrou.readLock().unlock();
+        }
+    }
+
+    private float scoreApproche(float[] requete, float[] table, int i) {
+        switch (mode) {
+            case PLEINE_PRECISION:
+                return Vecteurs.produitScalaire(requete, 0, pleins, i * dimension, dimension);
+            case SCALAIRE_INT8: {
+                int base = i * dimension;
+                float somme = 0;
+                for (int j = 0; j < dimension; j++) {
+                    somme += requete[j] * codes[base + j];
+                }
+                return somme * echelles[i];
+            }
+            default: {
+                if (table == null) {
+                    //codebooks pas encore appris : score exact
+                    return Vecteurs.produitScalaire(requete, 0, vecteurPlein(i), 0, dimension);
+                }
+                int base = i * sousEspaces;
+                float somme = 0;
+                for (int s = 0; s < sousEspaces; s++) {
+                    somme += table[s * CENTROIDES + (codes[base + s] & 0xFF)];
+                }
+                return somme;
+            }
+        }
+    }
+
+    //produit scalaire de chaque sous-vecteur de la requete avec chaque centroide (calcul asymetrique)
+    private float[] tableDistances(float[] requete) {
+        float[] table = new float[sousEspaces * CENTROIDES];
+        for (int s = 0; s < sousEspaces; s++) {
+            float[] codebook = centroides[s];
+            int nombre = codebook.length / sousDimension;
+            for (int c = 0; c < nombre; c++) {
+                table[s * CENTROIDES + c] = Vecteurs.produitScalaire(requete, s * sousDimension,
+                        codebook, c * sousDimension, sousDimension);
+            }
+        }
+        return table;
+    }
+
+    private void encoder(int position, float[] vecteur) {
+        switch (mode) {
+            case PLEINE_PRECISION -> System.arraycopy(vecteur, 0, pleins, position * dimension, dimension);
+            case SCALAIRE_INT8 -> {
+                //echelle symetrique par vecteur : max |v| -> 127
+                float max = 0;
+                for (float valeur : vecteur) {
+                    max = Math.max(max, Math.abs(valeur));
+                }
+                float echelle = max == 0 ? 1 : max / 127f;
+                int base = position * dimension;
+                for (int j = 0; j < dimension; j++) {
+                    codes[base + j] = (byte) Math.round(vecteur[j] / echelle);
+                }
+                echelles[position] = echelle;
+                ecrireVecteurPlein(position, vecteur);
+            }
+            case PRODUIT -> {
+                if (centroides != null) {
+                    coderProduit(position, vecteur);
+                }
+                ecrireVecteurPlein(position, vecteur);
+            }
+        }
+    }
+
+    private void coderProduit(int position, float[] vecteur) {
+        int base = position * sousEspaces;
+        for (int s = 0; s < sousEspaces; s++) {
+            codes[base + s] = (byte) plusProche(centroides[s], vecteur, s * sousDimension);
+        }
+    }
+
+    //sous le verrou d'ecriture, apres un (re)apprentissage : les codes existants designaient les anciens centroides
+    private void recoder() {
+        for (int i = 0; i < taille; i++) {
+            if (!supprimes.get(i)) {
+                coderProduit(i, vecteurPlein(i));
+            }
+        }
+    }
+
+    //sous le verrou d'ecriture ; meme seuil que FragmentEmbeddings
+    private void compacterSiNecessaire() {
+        int nbSupprimes = supprimes.cardinality();
+        if (nbSupprimes > 1024 && nbSupprimes * 4 > taille) {
+            compacter();
+        }
+    }
+
+    //les entrees vivantes sont ramenees en tete dans leur ordre (destination <= source : copie sur place),
+    //codes et fichier des vecteurs pleins compris, puis les tableaux et le fichier sont retailles
+    private void compacter() {
+        int vivants = 0;
+        for (int i = 0; i < taille; i++) {
+            if (supprimes.get(i)) {
+                continue;
+            }
+            if (vivants != i) {
+                ids[vivants] = ids[i];
+                segments[vivants] = segments[i];
+                positions.put(ids[i], vivants);
+                if (mode == Mode.PLEINE_PRECISION) {
+                    System.arraycopy(pleins, i * dimension, pleins, vivants * dimension, dimension);
+                } else {
+                    int octets = octetsParVecteur();
+                    System.arraycopy(codes, i * octets, codes, vivants * octets, octets);
+                    if (echelles != null) {
+                        echelles[vivants] = echelles[i];
+                    }
+                    ecrireVecteurPlein(vivants, vecteurPlein(i));
+                }
+            }
+            vivants++;
+        }
+        taille = vivants;
+        supprimes.clear();
+
+        int capacite = Math.max(CAPACITE_INITIALE, vivants);
+        ids = Arrays.copyOf(ids, capacite);
+        segments = Arrays.copyOf(segments, capacite);
+        Arrays.fill(ids, vivants, capacite, null);
+        Arrays.fill(segments, vivants, capacite, null);
+        if (mode == Mode.PLEINE_PRECISION) {
+            pleins = Arrays.copyOf(pleins, capacite * dimension);
+            return;
+        }
+        codes = Arrays.copyOf(codes, capacite * octetsParVecteur());
+        if (echelles != null) {
+            echelles = Arrays.copyOf(echelles, capacite);
+        }
+        try {
+            canalVecteurs.truncate((long) vivants * dimension * Float.BYTES);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private float[][] vecteursPresents() {
+        float[][] vecteurs = new float[positions.size()][];
+        int n = 0;
+        for (int i = 0; i < taille; i++) {
+            if (!supprimes.get(i)) {
+                vecteurs[n++] = vecteurPlein(i);
+            }
+        }
+        return vecteurs;
+    }
+
+    //k-means par sous-espace sur un echantillon du lot
+    private void entrainerCodebooks(float[][] vecteurs) {
+        int n = Math.min(vecteurs.length, echantillonEntrainement);
+        float[][] echantillon = new float[n][];
+        int[] ordre = permutation(vecteurs.length);
+        for (int i = 0; i < n; i++) {
+            echantillon[i] = vecteurs[ordre[i]];
+        }
+        int k = Math.min(CENTROIDES, n);
+        centroides = new float[sousEspaces][];
+        int[] affectations = new int[n];
+        for (int s = 0; s < sousEspaces; s++) {
+            int debut = s * sousDimension;
+            float[] codebook = new float[k * sousDimension];
+            for (int c = 0; c < k; c++) {
+                System.arraycopy(echantillon[c], debut, codebook, c * sousDimension, sousDimension);
+            }
+            for (int iteration = 0; iteration < iterationsKMeans; iteration++) {
+                for (int i = 0; i < n; i++) {
+                    affectations[i] = plusProche(codebook, echantillon[i], debut);
+                }
+                float[] sommes = new float[k * sousDimension];
+                int[] effectifs = new int[k];
+                for (int i = 0; i < n; i++) {
+                    int c = affectations[i];
+                    effectifs[c]++;
+                    for (int j = 0; j < sousDimension; j++) {
+                        sommes[c * sousDimension + j] += echantillon[i][debut + j];
+                    }
+                }
+                for (int c = 0; c < k; c++) {
+                    if (effectifs[c] == 0) {
+                        //cluster vide : reensemence sur un point au hasard
+                        System.arraycopy(echantillon[random.nextInt(n)], debut, codebook, c * sousDimension, sousDimension);
+                        continue;
+                    }
+                    for (int j = 0; j < sousDimension; j++) {
+                        codebook[c * sousDimension + j] = sommes[c * sousDimension + j] / effectifs[c];
+                    }
+                }
+            }
+            centroides[s] = codebook;
+        }
+    }
+
+    private int plusProche(float[] codebook, float[] vecteur, int debut) {
+        int nombre = codebook.length / sousDimension;
+        int meilleur = 0;
+        float distanceMin = Float.MAX_VALUE;
+        for (int c = 0; c < nombre; c++) {
+            float distance = 0;
+            for (int j = 0; j < sousDimension; j++) {
+                float ecart = vecteur[debut + j] - codebook[c * sousDimension + j];
+                distance += ecart * ecart;
+            }
+            if (distance < distanceMin) {
+                distanceMin = distance;
+                meilleur = c;
+            }
+        }
+        return meilleur;
+    }
+
+    private int[] permutation(int n) {
+        int[] ordre = new int[n];
+        for (int i = 0; i < n; i++) {
+            ordre[i] = i;
+        }
+        for (int i = n - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int tmp = ordre[i];
+            ordre[i] = ordre[j];
+            ordre[j] = tmp;
+        }
+        return ordre;
+    }
+
+    private void ecrireVecteurPlein(int position, float[] vecteur) {
+        ByteBuffer buffer = ByteBuffer.allocate(dimension * Float.BYTES);
+        buffer.asFloatBuffer().put(vecteur);
+        long offset = (long) position * dimension * Float.BYTES;
+        try {
+            while (buffer.hasRemaining()) {
+                offset += canalVecteurs.write(buffer, offset);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private float[] vecteurPlein(int position) {
+        if (mode == Mode.PLEINE_PRECISION) {
+            return Arrays.copyOfRange(pleins, position * dimension, (position + 1) * dimension);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(dimension * Float.BYTES);
+        long offset = (long) position * dimension * Float.BYTES;
+        try {
+            while (buffer.hasRemaining()) {
+                int lus = canalVecteurs.read(buffer, offset + buffer.position());
+                if (lus < 0) {
+                    throw new IllegalStateException("Fichier de vecteurs tronque : " + fichierVecteurs);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        buffer.flip();
+        float[] vecteur = new float[dimension];
+        buffer.asFloatBuffer().get(vecteur);
+        return vecteur;
+    }
+
+    private void assurerCapacite(int capaciteVoulue) {
+        if (capaciteVoulue <= ids.length) {
+            return;
+        }
+        int capacite = Math.max(capaciteVoulue, ids.length * 2);
+        ids = Arrays.copyOf(ids, capacite);
+        segments = Arrays.copyOf(segments, capacite);
+        if (mode == Mode.PLEINE_PRECISION) {
+            pleins = Arrays.copyOf(pleins, capacite * dimension);
+        } else {
+            codes = Arrays.copyOf(codes, capacite * octetsParVecteur());
+            if (echelles != null) {
+                echelles = Arrays.copyOf(echelles, capacite);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        if (canalVecteurs == null) {
+            return;
+        }
+        try {
+            canalVecteurs.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static class Builder {
+
+        private Mode mode = Mode.SCALAIRE_INT8;
+        private int dimension = FloatArrayEmbeddingStore.DIMENSION_MINILM;
+        //96 sous-espaces de 4 dimensions : 96 octets par vecteur de 384 float, soit 16x
+        private int sousEspaces = 96;
+        private int facteurReclassement = 10;
+        private int echantillonEntrainement = 10_000;
+        private int iterationsKMeans = 10;
+        private long graine = 42;
+        private Path fichierVecteurs;
+
+        public Builder mode(Mode mode) {
+            this.mode = mode;
+            return this;
+        }
+
+        public Builder dimension(int dimension) {
+            this.dimension = dimension;
+            return this;
+        }
+
+        public Builder sousEspaces(int sousEspaces) {
+            this.sousEspaces = sousEspaces;
+            return this;
+        }
+
+        public Builder facteurReclassement(int facteurReclassement) {
+            this.facteurReclassement = facteurReclassement;
+            return this;
+        }
+
+        public Builder echantillonEntrainement(int echantillonEntrainement) {
+            this.echantillonEntrainement = echantillonEntrainement;
+            return this;
+        }
+
+        public Builder iterationsKMeans(int iterationsKMeans) {
+            this.iterationsKMeans = iterationsKMeans;
+            return this;
+        }
+
+        public Builder graine(long graine) {
+            this.graine = graine;
+            return this;
+        }
+
+        //fichier des vecteurs pleine precision (fichier temporaire par defaut)
+        public Builder fichierVecteurs(Path fichierVecteurs) {
+            this.fichierVecteurs = fichierVecteurs;
+            return this;
+        }
+
+        public QuantizedEmbeddingStore build() {
+            if (mode == null) {
+                throw new IllegalArgumentException("mode est obligatoire");
+            }
+            if (mode == Mode.PRODUIT && (sousEspaces < 1 || dimension % sousEspaces != 0)) {
+                throw new IllegalArgumentException("sousEspaces doit diviser la dimension " + dimension);
+            }
+            if (facteurReclassement < 1 || iterationsKMeans < 1 || echantillonEntrainement < CENTROIDES) {
+                throw new IllegalArgumentException("Parametres de quantification invalides");
+            }
+            return new QuantizedEmbeddingStore(this);
+        }
+    }
+}
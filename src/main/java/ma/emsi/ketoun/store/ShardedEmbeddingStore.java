@@ -0,0 +1,214 @@
+package ma.emsi.ketoun.store;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingSearchResult;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import ma.emsi.ketoun.metriques.MetriquesRag;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+
+//store reparti sur N fragments : chaque id appartient a un seul fragment (hash de l'id)
+//une recherche est lancee sur tous les fragments en meme temps (scatter) puis les top-k
+//partiels sont fusionnes (gather) ; le fragment 0 est parcouru par le thread appelant
+//par defaut les fragments sont des FragmentEmbeddings locaux (lecture sans verrou),
+//mais n'importe quel EmbeddingStore convient (un store distant par noeud par exemple)
+public class ShardedEmbeddingStore implements EmbeddingStore<TextSegment> {
+
+    private static final Comparator<EmbeddingMatch<TextSegment>> PAR_SCORE_DECROISSANT =
+            Comparator.comparingDouble((EmbeddingMatch<TextSegment> match) -> match.score()).reversed();
+
+    private final List<EmbeddingStore<TextSegment>> fragments;
+    private final ForkJoinPool pool;
+
+    private ShardedEmbeddingStore(Builder builder) {
+        this.fragments = builder.fragments;
+        this.pool = builder.pool;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public int nombreFragments() {
+        return fragments.size();
+    }
+
+    public EmbeddingStore<TextSegment> fragment(int i) {
+        return fragments.get(i);
+    }
+
+    @Override
+    public String add(Embedding embedding) {
+        String id = UUID.randomUUID().toString();
+        add(id, embedding);
+        return id;
+    }
+
+    @Override
+    public void add(String id, Embedding embedding) {
+        fragmentDe(id).add(id, embedding);
+    }
+
+    @Override
+    public String add(Embedding embedding, TextSegment textSegment) {
+        String id = UUID.randomUUID().toString();
+        addAll(List.of(id), List.of(embedding), List.of(textSegment));
+        return id;
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings) {
+        List<String> nouveauxIds = generateIds(embeddings.size());
+        addAll(nouveauxIds, embeddings, null);
+        return nouveauxIds;
+    }
+
+    //un lot par fragment, les lots sont ecrits en parallele
+    @Override
+    public void addAll(List<String> idsAjoutes, List<Embedding> embeddings, List<TextSegment> embedded) {
+        if (idsAjoutes.size() != embeddings.size() || (embedded != null && embedded.size() != embeddings.size())) {
+            throw new IllegalArgumentException("ids, embeddings et segments doivent avoir la meme taille");
+        }
+        int n = fragments.size();
+        List<List<String>> ids = listes(n);
+        List<List<Embedding>> vecteurs = listes(n);
+        List<List<TextSegment>> segments = embedded == null ? null : listes(n);
+        for (int i = 0; i < idsAjoutes.size(); i++) {
+            int f = indiceFragment(idsAjoutes.get(i));
+            ids.get(f).add(idsAjoutes.get(i));
+            vecteurs.get(f).add(embeddings.get(i));
+            if (segments != null) {
+                segments.get(f).add(embedded.get(i));
+            }
+        }
+        List<CompletableFuture<Void>> ecritures = new ArrayList<>(n);
+        for (int f = 0; f < n; f++) {
+            if (ids.get(f).isEmpty()) {
+                continue;
+            }
+            EmbeddingStore<TextSegment> fragment = fragments.get(f);
+            List<String> lotIds = ids.get(f);
+            List<Embedding> lotVecteurs = vecteurs.get(f);
+            List<TextSegment> lotSegments = segments == null ? null : segments.get(f);
+            ecritures.add(CompletableFuture.runAsync(() -> fragment.addAll(lotIds, lotVecteurs, lotSegments), pool));
+        }
+        CompletableFuture.allOf(ecritures.toArray(CompletableFuture[]::new)).join();
+    }
+
+    @Override
+    public void removeAll(Collection<String> idsSupprimes) {
+        int n = fragments.size();
+        List<List<String>> ids = listes(n);
+        for (String id : idsSupprimes) {
+            ids.get(indiceFragment(id)).add(id);
+        }
+        for (int f = 0; f < n; f++) {
+            if (!ids.get(f).isEmpty()) {
+                fragments.get(f).removeAll(ids.get(f));
+            }
+        }
+    }
+
+    @Override
+    public void removeAll() {
+        for (EmbeddingStore<TextSegment> fragment : fragments) {
+            fragment.removeAll();
+        }
+    }
+
+    @Override
+    public EmbeddingSearchResult<TextSegment> search(EmbeddingSearchRequest request) {
+        long debut = System.nanoTime();
+        int n = fragments.size();
+        List<CompletableFuture<EmbeddingSearchResult<TextSegment>>> partiels = new ArrayList<>(n - 1);
+        for (int f = 1; f < n; f++) {
+            EmbeddingStore<TextSegment> fragment = fragments.get(f);
+            partiels.add(CompletableFuture.supplyAsync(() -> fragment.search(request), pool));
+        }
+        //chaque fragment renvoie au plus maxResults : la fusion porte sur n * maxResults matches
+        List<EmbeddingMatch<TextSegment>> matches = new ArrayList<>(fragments.get(0).search(request).matches());
+        for (CompletableFuture<EmbeddingSearchResult<TextSegment>> partiel : partiels) {
+            matches.addAll(partiel.join().matches());
+        }
+        matches.sort(PAR_SCORE_DECROISSANT);
+        if (matches.size() > request.maxResults()) {
+            matches = new ArrayList<>(matches.subList(0, request.maxResults()));
+        }
+        MetriquesRag.RECHERCHE_STORE.enregistrerDepuis(debut);
+        return new EmbeddingSearchResult<>(matches);
+    }
+
+    private EmbeddingStore<TextSegment> fragmentDe(String id) {
+        return fragments.get(indiceFragment(id));
+    }
+
+    private int indiceFragment(String id) {
+        return Math.floorMod(id.hashCode(), fragments.size());
+    }
+
+    private static <T> List<List<T>> listes(int n) {
+        List<List<T>> listes = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            listes.add(new ArrayList<>());
+        }
+        return listes;
+    }
+
+    public static class Builder {
+
+        private List<EmbeddingStore<TextSegment>> fragments;
+        private int dimension = FloatArrayEmbeddingStore.DIMENSION_MINILM;
+        private ForkJoinPool pool = ForkJoinPool.commonPool();
+
+        //n fragments locaux, un par coeur par defaut
+        public Builder fragments(int n) {
+            if (n < 1) {
+                throw new IllegalArgumentException("Au moins un fragment");
+            }
+            this.fragments = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                fragments.add(null);
+            }
+            return this;
+        }
+
+        public Builder fragments(List<? extends EmbeddingStore<TextSegment>> fragments) {
+            this.fragments = new ArrayList<>(fragments);
+            return this;
+        }
+
+        public Builder dimension(int dimension) {
+            this.dimension = dimension;
+            return this;
+        }
+
+        public Builder pool(ForkJoinPool pool) {
+            this.pool = pool;
+            return this;
+        }
+
+        public ShardedEmbeddingStore build() {
+            if (fragments == null) {
+                fragments(Runtime.getRuntime().availableProcessors());
+            }
+            if (fragments.isEmpty() || dimension < 1 || pool == null) {
+                throw new IllegalArgumentException("Parametres de fragmentation invalides");
+            }
+            List<EmbeddingStore<TextSegment>> crees = new ArrayList<>(fragments.size());
+            for (EmbeddingStore<TextSegment> fragment : fragments) {
+                crees.add(fragment != null ? fragment : new FragmentEmbeddings(dimension));
+            }
+            fragments = List.copyOf(crees);
+            return new ShardedEmbeddingStore(this);
+        }
+    }
+}
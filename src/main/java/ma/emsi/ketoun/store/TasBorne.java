@@ -0,0 +1,83 @@
+package ma.emsi.ketoun.store;
+
+//tas-min de taille bornee sur des types primitifs pour garder les k meilleurs scores sans allocation par candidat
+//le plus mauvais des k est a la racine : un candidat n'entre que s'il le bat
+public final class TasBorne {
+
+    private final int capacite;
+    private final int[] indices;
+    private final float[] scores;
+    private int taille;
+
+    public TasBorne(int capacite) {
+        this.capacite = capacite;
+        this.indices = new int[capacite];
+        this.scores = new float[capacite];
+    }
+
+    public boolean accepte(float score) {
+        return taille < capacite || score > scores[0];
+    }
+
+    public void ajouter(int index, float score) {
+        if (taille < capacite) {
+            int i = taille++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (scores[parent] <= score) {
+                    break;
+                }
+                indices[i] = indices[parent];
+                scores[i] = scores[parent];
+                i = parent;
+            }
+            indices[i] = index;
+            scores[i] = score;
+        } else if (capacite > 0 && score > scores[0]) {
+            descendre(0, index, score, taille);
+        }
+    }
+
+    public int taille() {
+        return taille;
+    }
+
+    //trie sur place du meilleur au moins bon (tri par tas) ; le tas n'est plus utilisable ensuite
+    public void trierDecroissant() {
+        for (int fin = taille - 1; fin > 0; fin--) {
+            int index = indices[fin];
+            float score = scores[fin];
+            indices[fin] = indices[0];
+            scores[fin] = scores[0];
+            descendre(0, index, score, fin);
+        }
+    }
+
+    public int index(int rang) {
+        return indices[rang];
+    }
+
+    public float score(int rang) {
+        return scores[rang];
+    }
+
+    private void descendre(int i, int index, float score, int limite) {
+        while (true) {
+            int enfant = 2 * i + 1;
+            if (enfant >= limite) {
+                break;
+            }
+            if (enfant + 1 < limite && scores[enfant + 1] < scores[enfant]) {
+                enfant++;
+            }
+            if (score <= scores[enfant]) {
+                break;
+            }
+            indices[i] = indices[enfant];
+            scores[i] = scores[enfant];
+            i = enfant;
+        }
+        indices[i] = index;
+        scores[i] = score;
+    }
+}
@@ -0,0 +1,46 @@
+package ma.emsi.ketoun.store;
+
+//operations sur des vecteurs ranges bout a bout dans un float[]
+public final class Vecteurs {
+
+    private Vecteurs() {
+    }
+
+    //quatre accumulateurs independants : casse la chaine de dependance des additions
+    //et laisse le JIT derouler / vectoriser la boucle
+    public static float produitScalaire(float[] a, int debutA, float[] b, int debutB, int dimension) {
+        float s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int i = 0;
+        int limite = dimension - (dimension & 3);
+        for (; i < limite; i += 4) {
+            s0 += a[debutA + i] * b[debutB + i];
+            s1 += a[debutA + i + 1] * b[debutB + i + 1];
+            s2 += a[debutA + i + 2] * b[debutB + i + 2];
+            s3 += a[debutA + i + 3] * b[debutB + i + 3];
+        }
+        for (; i < dimension; i++) {
+            s0 += a[debutA + i] * b[debutB + i];
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    public static float[] normaliser(float[] vecteur) {
+        double norme = 0;
+        for (float valeur : vecteur) {
+            norme += valeur * valeur;
+        }
+        norme = Math.sqrt(norme);
+        float[] resultat = vecteur.clone();
+        if (norme > 0) {
+            for (int i = 0; i < resultat.length; i++) {
+                resultat[i] = (float) (resultat[i] / norme);
+            }
+        }
+        return resultat;
+    }
+
+    //minScore langchain4j = (cos + 1) / 2 ; on compare directement le cosinus dans les boucles
+    public static float cosinusMinimum(double minScore) {
+        return (float) (2 * minScore - 1);
+    }
+}
@@ -0,0 +1,64 @@
+package ma.emsi.ketoun.streaming;
+
+import dev.langchain4j.model.chat.response.ChatResponse;
+import dev.langchain4j.model.output.TokenUsage;
+import dev.langchain4j.service.TokenStream;
+import ma.emsi.ketoun.metriques.MetriquesRag;
+
+import java.io.PrintStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+//consomme un TokenStream : affiche chaque fragment des qu'il arrive et mesure
+//le temps jusqu'au premier token et le debit en tokens/s
+public final class LecteurStreaming {
+
+    private LecteurStreaming() {
+    }
+
+    //bloque jusqu'a la fin de la reponse
+    //la requete est passee non construite : AiServices fait le retrieval RAG en construisant le TokenStream,
+    //le chronometre doit donc partir avant pour que le premier token compte toute l'attente de l'utilisateur
+    public static MesureStreaming afficher(Supplier<TokenStream> requete, PrintStream sortie) {
+        long debut = System.nanoTime();
+        TokenStream stream = requete.get();
+        CompletableFuture<ChatResponse> fin = new CompletableFuture<>();
+        StringBuilder texte = new StringBuilder();
+        AtomicLong premierToken = new AtomicLong(-1);
+        AtomicInteger fragments = new AtomicInteger();
+
+        stream.onPartialResponse(fragment -> {
+                    premierToken.compareAndSet(-1, System.nanoTime());
+                    fragments.incrementAndGet();
+                    texte.append(fragment);
+                    sortie.print(fragment);
+                    sortie.flush();
+                })
+                .onCompleteResponse(fin::complete)
+                .onError(fin::completeExceptionally)
+                .start();
+
+        ChatResponse reponse;
+        try {
+            reponse = fin.join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException r ? r : e;
+        }
+        long finNanos = System.nanoTime();
+        sortie.println();
+
+        //le nombre de tokens vient de Gemini quand il est fourni, sinon on compte les fragments recus
+        TokenUsage usage = reponse.tokenUsage();
+        int tokens = usage != null && usage.outputTokenCount() != null ? usage.outputTokenCount() : fragments.get();
+        long premier = premierToken.get() < 0 ? finNanos : premierToken.get();
+        MetriquesRag.LLM_PREMIER_TOKEN.enregistrer(premier - debut);
+        long generation = finNanos - premier;
+        double tokensParSeconde = generation > 0 ? tokens * 1e9 / generation : tokens * 1e9 / Math.max(1, finNanos - debut);
+
+        return new MesureStreaming(texte.toString(), (premier - debut) / 1e6, (finNanos - debut) / 1e6,
+                tokens, tokensParSeconde);
+    }
+}
@@ -0,0 +1,11 @@
+package ma.emsi.ketoun.streaming;
+
+public record MesureStreaming(String reponse, double premierTokenMillis, double totalMillis,
+                              int tokens, double tokensParSeconde) {
+
+    @Override
+    public String toString() {
+        return String.format("premier token : %.0f ms | total : %.0f ms | %d tokens (%.1f tokens/s)",
+                premierTokenMillis, totalMillis, tokens, tokensParSeconde);
+    }
+}
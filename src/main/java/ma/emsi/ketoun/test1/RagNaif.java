@@ -1,30 +1,22 @@
 package ma.emsi.ketoun.test1;
 
-import dev.langchain4j.data.document.Document;
-import dev.langchain4j.data.document.DocumentParser;
-import dev.langchain4j.data.document.DocumentSplitter;
-import dev.langchain4j.data.document.loader.FileSystemDocumentLoader;
-import dev.langchain4j.data.document.parser.apache.tika.ApacheTikaDocumentParser;
-import dev.langchain4j.data.document.splitter.DocumentSplitters;
-import dev.langchain4j.data.embedding.Embedding;
 import dev.langchain4j.data.segment.TextSegment;
-import dev.langchain4j.memory.chat.MessageWindowChatMemory;
 import dev.langchain4j.model.embedding.EmbeddingModel;
 import dev.langchain4j.model.embedding.onnx.allminilml6v2.AllMiniLmL6V2EmbeddingModel;
 import dev.langchain4j.model.googleai.GoogleAiGeminiChatModel;
-import dev.langchain4j.model.output.Response;
 import dev.langchain4j.rag.content.retriever.ContentRetriever;
 import dev.langchain4j.rag.content.retriever.EmbeddingStoreContentRetriever;
 import dev.langchain4j.service.AiServices;
 import dev.langchain4j.store.embedding.EmbeddingStore;
-import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
 import ma.emsi.ketoun.Interfaces.Assistant;
+import ma.emsi.ketoun.cache.EmbeddingModelEnCache;
+import ma.emsi.ketoun.memoire.MemoireResumee;
+import ma.emsi.ketoun.store.IndexEmbeddings;
 
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.List;
 import java.util.Scanner;
 
 
@@ -48,43 +40,30 @@ public class RagNaif {
         //recuperation du fichier
         Path pathRessource = getPathRessource("/rag.pdf");
 
-        //creation du parser pour PDF
-        DocumentParser documentParser = new ApacheTikaDocumentParser();
-
-        //chargement du fichier avec le parser en param
-        Document document = FileSystemDocumentLoader.loadDocument(pathRessource, documentParser);
-
-        //creation du document splitter pour decouper le fichier 30 pour overlap comme demandee
-        DocumentSplitter documentSplitter = DocumentSplitters.recursive(300, 30);
-
-        //list des segments de type textsegment
-        List<TextSegment> segments = documentSplitter.split(document);
-
         //creation du model d'embedding
         EmbeddingModel embeddingModel = new AllMiniLmL6V2EmbeddingModel();
 
-        //creation des embeddings pour les segments
-        Response<List<Embedding>> embeddingsResponse = embeddingModel.embedAll(segments);
-        List<Embedding> embeddings = embeddingsResponse.content();
+        //magasin d'embeddings : index persistant remappe si le pdf n'a pas change (parse 300/30 + embed sinon)
+        EmbeddingStore<TextSegment> embeddingStore = IndexEmbeddings.chargerOuCreer(pathRessource, embeddingModel);
 
-        //creation du magasin d'embeddings en memoire
-        EmbeddingStore<TextSegment> embeddingStore = new InMemoryEmbeddingStore<>();
-
-        //ajout des embeddings avec leurs segments
-        embeddingStore.addAll(embeddings, segments);
 
+        //modele d'embedding des requetes avec cache, partage par les retrievers
+        EmbeddingModel embeddingModelRequetes = new EmbeddingModelEnCache(embeddingModel, 1000);
 
         //Phase 2 :
         //creation du contentretriever avec des parametres
         ContentRetriever contentRetriever = EmbeddingStoreContentRetriever.builder()
                 .embeddingStore(embeddingStore)
-                .embeddingModel(embeddingModel)
+                .embeddingModel(embeddingModelRequetes)
                 .maxResults(2)
                 .minScore(0.5)
                 .build();
 
-        //creation de memoire de 10 msgs
-        MessageWindowChatMemory chatMemory = MessageWindowChatMemory.withMaxMessages(10);
+        //memoire bornee en tokens : les anciens tours sont resumes en arriere-plan par le meme modele
+        MemoireResumee chatMemory = MemoireResumee.builder()
+                .resumeur(model)
+                .budgetTokens(2000)
+                .build();
 
 
         //creation de lassistant
@@ -94,6 +73,9 @@ public class RagNaif {
                 .chatMemory(chatMemory)
                 .build();
 
+        //pas de cache semantique ici : l'assistant a une memoire de chat, la meme question n'appelle pas
+        //forcement la meme reponse d'une conversation a l'autre
+
         //questions en temps reel
         try (Scanner scanner = new Scanner(System.in)) {
             while (true) {
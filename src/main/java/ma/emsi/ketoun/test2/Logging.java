@@ -1,24 +1,17 @@
 package ma.emsi.ketoun.test2;
 
-import dev.langchain4j.data.document.Document;
-import dev.langchain4j.data.document.DocumentParser;
-import dev.langchain4j.data.document.DocumentSplitter;
-import dev.langchain4j.data.document.loader.FileSystemDocumentLoader;
-import dev.langchain4j.data.document.parser.apache.tika.ApacheTikaDocumentParser;
-import dev.langchain4j.data.document.splitter.DocumentSplitters;
-import dev.langchain4j.data.embedding.Embedding;
 import dev.langchain4j.data.segment.TextSegment;
-import dev.langchain4j.memory.chat.MessageWindowChatMemory;
 import dev.langchain4j.model.embedding.EmbeddingModel;
 import dev.langchain4j.model.embedding.onnx.allminilml6v2.AllMiniLmL6V2EmbeddingModel;
 import dev.langchain4j.model.googleai.GoogleAiGeminiChatModel;
-import dev.langchain4j.model.output.Response;
 import dev.langchain4j.rag.content.retriever.ContentRetriever;
 import dev.langchain4j.rag.content.retriever.EmbeddingStoreContentRetriever;
 import dev.langchain4j.service.AiServices;
 import dev.langchain4j.store.embedding.EmbeddingStore;
-import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
 import ma.emsi.ketoun.Interfaces.Assistant;
+import ma.emsi.ketoun.journal.JournalEchanges;
+import ma.emsi.ketoun.memoire.MemoireResumee;
+import ma.emsi.ketoun.store.IndexEmbeddings;
 import ma.emsi.ketoun.test1.RagNaif;
 
 import java.net.URISyntaxException;
@@ -27,9 +20,6 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.List;
 import java.util.Scanner;
-import java.util.logging.ConsoleHandler;
-import java.util.logging.Level;
-import java.util.logging.Logger;
 
 public class Logging {
     public static void main(String[] args) {
@@ -41,41 +31,27 @@ public class Logging {
             return;
         }
 
+        //journal asynchrone de tous les echanges dans logs/echanges.log (messages tronques et masques)
+        JournalEchanges journal = JournalEchanges.builder()
+                .tauxEchantillonnage(1.0)
+                .build();
+
         // Creation du Model avec le builder
         GoogleAiGeminiChatModel model = GoogleAiGeminiChatModel.builder()
                 .apiKey(apiKey)
                 .modelName("gemini-2.5-flash")
-                .logRequestsAndResponses(true)
+                .listeners(List.of(journal))
                 .temperature(0.7)
                 .build();
 
         //recuperation du fichier
         Path pathRessource = getPathRessource("/rag.pdf");
 
-        //creation du parser pour PDF
-        DocumentParser documentParser = new ApacheTikaDocumentParser();
-
-        //chargement du fichier avec le parser en param
-        Document document = FileSystemDocumentLoader.loadDocument(pathRessource, documentParser);
-
-        //creation du document splitter pour decouper le fichier 30 pour overlap comme demandee
-        DocumentSplitter documentSplitter = DocumentSplitters.recursive(300, 30);
-
-        //list des segments de type textsegment
-        List<TextSegment> segments = documentSplitter.split(document);
-
         //creation du model d'embedding
         EmbeddingModel embeddingModel = new AllMiniLmL6V2EmbeddingModel();
 
-        //creation des embeddings pour les segments
-        Response<List<Embedding>> embeddingsResponse = embeddingModel.embedAll(segments);
-        List<Embedding> embeddings = embeddingsResponse.content();
-
-        //creation du magasin d'embeddings en memoire
-        EmbeddingStore<TextSegment> embeddingStore = new InMemoryEmbeddingStore<>();
-
-        //ajout des embeddings avec leurs segments
-        embeddingStore.addAll(embeddings, segments);
+        //magasin d'embeddings : index persistant remappe si le pdf n'a pas change (parse 300/30 + embed sinon)
+        EmbeddingStore<TextSegment> embeddingStore = IndexEmbeddings.chargerOuCreer(pathRessource, embeddingModel);
 
 
         //Phase 2 :
@@ -87,8 +63,11 @@ public class Logging {
                 .minScore(0.5)
                 .build();
 
-        //creation de memoire de 10 msgs
-        MessageWindowChatMemory chatMemory = MessageWindowChatMemory.withMaxMessages(10);
+        //memoire bornee en tokens : les anciens tours sont resumes en arriere-plan par le meme modele
+        MemoireResumee chatMemory = MemoireResumee.builder()
+                .resumeur(model)
+                .budgetTokens(2000)
+                .build();
 
 
         //creation de lassistant
@@ -116,17 +95,7 @@ public class Logging {
                 System.out.println("==================================================");
             }
         }
-
-    }
-
-    private static void configureLogger() {
-        // Configure le logger sous-jacent (java.util.logging)
-        Logger packageLogger = Logger.getLogger("dev.langchain4j");
-        packageLogger.setLevel(Level.FINE); // Ajuster niveau
-        // Ajouter un handler pour la console pour faire afficher les logs
-        ConsoleHandler handler = new ConsoleHandler();
-        handler.setLevel(Level.FINE);
-        packageLogger.addHandler(handler);
+        journal.close();
     }
 
     private static Path getPathRessource(String cheminRessource) {
@@ -1,18 +1,9 @@
 package ma.emsi.ketoun.test3;
 
-import dev.langchain4j.data.document.Document;
-import dev.langchain4j.data.document.DocumentParser;
-import dev.langchain4j.data.document.DocumentSplitter;
-import dev.langchain4j.data.document.loader.FileSystemDocumentLoader;
-import dev.langchain4j.data.document.parser.apache.tika.ApacheTikaDocumentParser;
-import dev.langchain4j.data.document.splitter.DocumentSplitters;
-import dev.langchain4j.data.embedding.Embedding;
 import dev.langchain4j.data.segment.TextSegment;
-import dev.langchain4j.memory.chat.MessageWindowChatMemory;
 import dev.langchain4j.model.embedding.EmbeddingModel;
 import dev.langchain4j.model.embedding.onnx.allminilml6v2.AllMiniLmL6V2EmbeddingModel;
 import dev.langchain4j.model.googleai.GoogleAiGeminiChatModel;
-import dev.langchain4j.model.output.Response;
 import dev.langchain4j.rag.DefaultRetrievalAugmentor;
 import dev.langchain4j.rag.RetrievalAugmentor;
 import dev.langchain4j.rag.content.retriever.ContentRetriever;
@@ -21,21 +12,36 @@ import dev.langchain4j.rag.query.router.LanguageModelQueryRouter;
 import dev.langchain4j.rag.query.router.QueryRouter;
 import dev.langchain4j.service.AiServices;
 import dev.langchain4j.store.embedding.EmbeddingStore;
-import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
 import ma.emsi.ketoun.Interfaces.Assistant;
+import ma.emsi.ketoun.cache.EmbeddingModelEnCache;
+import ma.emsi.ketoun.contexte.AgregateurBudgete;
+import ma.emsi.ketoun.journal.JournalEchanges;
+import ma.emsi.ketoun.lexical.IndexBm25;
+import ma.emsi.ketoun.lexical.RetrieverHybride;
+import ma.emsi.ketoun.memoire.MemoireResumee;
+import ma.emsi.ketoun.metriques.EcouteurMetriquesChat;
+import ma.emsi.ketoun.metriques.RegistreMetriques;
+import ma.emsi.ketoun.routage.RouteurEmbeddings;
+import ma.emsi.ketoun.routage.RouteurParallele;
+import ma.emsi.ketoun.routage.RouteurSpeculatif;
+import ma.emsi.ketoun.store.IndexEmbeddings;
+import ma.emsi.ketoun.store.MappedEmbeddingStore;
 import ma.emsi.ketoun.test1.RagNaif;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.net.URLConnection;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Scanner;
-import java.util.logging.ConsoleHandler;
-import java.util.logging.Level;
-import java.util.logging.Logger;
 
 public class TestRoutage {
     public static void main(String[] args) {
@@ -43,23 +49,16 @@ public class TestRoutage {
         test.execute();
     }
 
-    private static void configureLogger() {
-        // Configure le logger sous-jacent (java.util.logging)
-        Logger packageLogger = Logger.getLogger("dev.langchain4j");
-        packageLogger.setLevel(Level.FINE); // Ajuster niveau
-        // Ajouter un handler pour la console pour faire afficher les logs
-        ConsoleHandler handler = new ConsoleHandler();
-        handler.setLevel(Level.FINE);
-        packageLogger.addHandler(handler);
-    }
-
-    private static Path getPathRessource(String cheminRessource) {
+    public static Path getPathRessource(String cheminRessource) {
         Path pathRessource;
         try {
             URL fileUrl = RagNaif.class.getResource(cheminRessource);
             if (fileUrl == null) {
                 throw new RuntimeException("Impossible de trouver le fichier " + cheminRessource);
             }
+            if ("jar".equals(fileUrl.getProtocol())) {
+                return extraireRessource(fileUrl, cheminRessource);
+            }
             pathRessource = Paths.get(fileUrl.toURI());
         } catch (URISyntaxException e) {
             throw new RuntimeException(e);
@@ -67,6 +66,24 @@ public class TestRoutage {
         return pathRessource;
     }
 
+    //lance depuis un jar (profil cds) : la ressource est copiee a cote des index, sous le meme nom de fichier
+    private static Path extraireRessource(URL fileUrl, String cheminRessource) {
+        Path copie = IndexEmbeddings.repertoire().resolve("ressources").resolve(Paths.get(cheminRessource).getFileName());
+        try {
+            URLConnection connexion = fileUrl.openConnection();
+            if (Files.isRegularFile(copie) && Files.size(copie) == connexion.getContentLengthLong()) {
+                return copie;
+            }
+            Files.createDirectories(copie.getParent());
+            try (InputStream entree = connexion.getInputStream()) {
+                Files.copy(entree, copie, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return copie;
+    }
+
     public void execute() {
         //retrait de la cle du env local
         String apiKey = System.getenv("GEMINI_KEY");
@@ -75,12 +92,15 @@ public class TestRoutage {
             return;
         }
 
+        //journal asynchrone des echanges dans logs/echanges.log : 1 sur 10, messages tronques et masques
+        JournalEchanges journal = JournalEchanges.builder().build();
+
         // Creation du Model avec le builder
         GoogleAiGeminiChatModel model = GoogleAiGeminiChatModel.builder()
                 .apiKey(apiKey)
                 .modelName("gemini-2.5-flash")
-                .logRequestsAndResponses(true)
                 .temperature(0.7)
+                .listeners(List.of(new EcouteurMetriquesChat(), journal))
                 .build();
 
         // creation du modèle d'embedding
@@ -88,19 +108,24 @@ public class TestRoutage {
 
         //creation des embeddins store
         EmbeddingStore<TextSegment> embeddingStore1 = creerEmbeddingStore("/rag.pdf", embeddingModel);
-        EmbeddingStore<TextSegment> embeddingStore2 = creerEmbeddingStore("/autre.pdf", embeddingModel);
+        MappedEmbeddingStore embeddingStore2 = creerEmbeddingStore("/autre.pdf", embeddingModel);
+
+        //modele d'embedding des requetes avec cache, partage par les retrievers
+        EmbeddingModel embeddingModelRequetes = new EmbeddingModelEnCache(embeddingModel, 1000);
 
         //creation des content retrievers
         ContentRetriever contentRetriever1 = EmbeddingStoreContentRetriever.builder()
                 .embeddingStore(embeddingStore1)
-                .embeddingModel(embeddingModel)
+                .embeddingModel(embeddingModelRequetes)
                 .maxResults(2)
                 .minScore(0.5)
                 .build();
 
-        ContentRetriever contentRetriever2 = EmbeddingStoreContentRetriever.builder()
+        //recherche hybride (embeddings + BM25) : les codes d'examen Oracle (1Z0-...) sont des termes exacts
+        ContentRetriever contentRetriever2 = RetrieverHybride.builder()
                 .embeddingStore(embeddingStore2)
-                .embeddingModel(embeddingModel)
+                .embeddingModel(embeddingModelRequetes)
+                .indexBm25(IndexBm25.construire(embeddingStore2.segments()))
                 .maxResults(2)
                 .minScore(0.5)
                 .build();
@@ -120,16 +145,34 @@ public class TestRoutage {
                 "Ce retriever contient des informations sur une certif oracle. "
         );
 
-        //creation du queryrouter
-        QueryRouter queryRouter = new LanguageModelQueryRouter(model, retrieverDescriptions);
+        //creation du queryrouter : routage local par embeddings, Gemini seulement si la confiance est faible
+        QueryRouter routeurEmbeddings = RouteurEmbeddings.builder()
+                .embeddingModel(embeddingModelRequetes)
+                .retrieverDescriptions(retrieverDescriptions)
+                //repli LLM speculatif : les deux stores sont interroges pendant que Gemini choisit
+                .repli(RouteurSpeculatif.builder()
+                        .delegue(new LanguageModelQueryRouter(model, retrieverDescriptions))
+                        .probables(List.of(contentRetriever1, contentRetriever2))
+                        .build())
+                .build();
+
+        //les stores choisis sont interroges en parallele avec un delai chacun
+        QueryRouter queryRouter = RouteurParallele.builder()
+                .delegue(routeurEmbeddings)
+                .build();
 
         //creation du retrieval augmentor avec builder
+        //contenus dedupliques, fusionnes et bornes a un budget de tokens avant d'entrer dans le prompt
         RetrievalAugmentor retrievalAugmentor = DefaultRetrievalAugmentor.builder()
                 .queryRouter(queryRouter)
+                .contentAggregator(AgregateurBudgete.builder().build())
                 .build();
 
-        //creation de memoire de 10 msgs
-        MessageWindowChatMemory chatMemory = MessageWindowChatMemory.withMaxMessages(10);
+        //memoire bornee en tokens : les anciens tours sont resumes en arriere-plan par le meme modele
+        MemoireResumee chatMemory = MemoireResumee.builder()
+                .resumeur(model)
+                .budgetTokens(2000)
+                .build();
 
 
         //creation de lassistant
@@ -140,6 +183,9 @@ public class TestRoutage {
                 .build();
 
 
+        //pas de cache semantique ici : l'assistant a une memoire de chat, la meme question n'appelle pas
+        //forcement la meme reponse d'une conversation a l'autre
+
         // Questions en temps réel
         try (Scanner scanner = new Scanner(System.in)) {
             while (true) {
@@ -153,40 +199,25 @@ public class TestRoutage {
                 if ("fin".equalsIgnoreCase(question)) {
                     break;
                 }
+                //latences et tokens depuis le demarrage
+                if ("metriques".equalsIgnoreCase(question)) {
+                    RegistreMetriques.global().afficher(System.out);
+                    continue;
+                }
                 String reponse = assistant.chat(question);
                 System.out.println("Assistant : " + reponse);
                 System.out.println("==================================================");
             }
         }
+        journal.close();
     }
 
-    public static EmbeddingStore<TextSegment> creerEmbeddingStore(String cheminFichier, EmbeddingModel embeddingModel) {
+    public static MappedEmbeddingStore creerEmbeddingStore(String cheminFichier, EmbeddingModel embeddingModel) {
         // Récupération du Path
         Path pathRessource = getPathRessource(cheminFichier);
 
-        // Parser
-        DocumentParser documentParser = new ApacheTikaDocumentParser();
-
-        // Chargement du document
-        Document document = FileSystemDocumentLoader.loadDocument(pathRessource, documentParser);
-
-        // Splitter
-        DocumentSplitter documentSplitter = DocumentSplitters.recursive(300, 30);
-
-        // Découpage en segments
-        List<TextSegment> segments = documentSplitter.split(document);
-
-        // Création des embeddings
-        Response<List<Embedding>> embeddingsResponse = embeddingModel.embedAll(segments);
-        List<Embedding> embeddings = embeddingsResponse.content();
-
-        // Création du store
-        EmbeddingStore<TextSegment> embeddingStore = new InMemoryEmbeddingStore<>();
-
-        // Ajout des embeddings
-        embeddingStore.addAll(embeddings, segments);
-
-        return embeddingStore;
+        // Index persistant : mappe directement si le hash du fichier correspond, sinon parse/split/embed
+        return IndexEmbeddings.chargerOuCreer(pathRessource, embeddingModel);
     }
 
 }
@@ -1,6 +1,5 @@
 package ma.emsi.ketoun.test4;
 
-import dev.langchain4j.data.segment.TextSegment;
 import dev.langchain4j.model.chat.ChatModel;
 import dev.langchain4j.model.embedding.EmbeddingModel;
 import dev.langchain4j.model.embedding.onnx.allminilml6v2.AllMiniLmL6V2EmbeddingModel;
@@ -14,8 +13,14 @@ import dev.langchain4j.rag.query.Query;
 import dev.langchain4j.rag.query.router.QueryRouter;
 import dev.langchain4j.service.AiServices;
 import dev.langchain4j.service.SystemMessage;
-import dev.langchain4j.store.embedding.EmbeddingStore;
 import ma.emsi.ketoun.Interfaces.AssistantPasRAG;
+import ma.emsi.ketoun.cache.CacheSemantique;
+import ma.emsi.ketoun.cache.EmbeddingModelEnCache;
+import ma.emsi.ketoun.contexte.AgregateurBudgete;
+import ma.emsi.ketoun.journal.JournalEchanges;
+import ma.emsi.ketoun.routage.RouteurEmbeddings;
+import ma.emsi.ketoun.routage.RouteurSpeculatif;
+import ma.emsi.ketoun.store.MappedEmbeddingStore;
 import ma.emsi.ketoun.test3.TestRoutage;
 
 import java.util.Collections;
@@ -34,24 +39,30 @@ public class TestPasRag {
             return;
         }
 
+        //journal asynchrone des echanges dans logs/echanges.log : 1 sur 10, messages tronques et masques
+        JournalEchanges journal = JournalEchanges.builder().build();
+
         // Creation du Model avec le builder
         GoogleAiGeminiChatModel model = GoogleAiGeminiChatModel.builder()
                 .apiKey(apiKey)
                 .modelName("gemini-2.5-flash")
-                .logRequestsAndResponses(true)
+                .listeners(List.of(journal))
                 .temperature(0.7)
                 .build();
 
 
         //creation embeding model et store
         EmbeddingModel embeddingModel = new AllMiniLmL6V2EmbeddingModel();
-        EmbeddingStore<TextSegment> embeddingStore1 = TestRoutage.creerEmbeddingStore("/rag.pdf", embeddingModel);
+        MappedEmbeddingStore embeddingStore1 = TestRoutage.creerEmbeddingStore("/rag.pdf", embeddingModel);
+
 
+        //modele d'embedding des requetes avec cache, partage par les retrievers et le cache semantique
+        EmbeddingModel embeddingModelRequetes = new EmbeddingModelEnCache(embeddingModel, 1000);
 
         //content retriever
         ContentRetriever contentRetriever = EmbeddingStoreContentRetriever.builder()
                 .embeddingStore(embeddingStore1)
-                .embeddingModel(embeddingModel)
+                .embeddingModel(embeddingModelRequetes)
                 .maxResults(2)
                 .minScore(0.5)
                 .build();
@@ -79,12 +90,24 @@ public class TestPasRag {
         }
 
 
-        //creation du queryrouter
-        QueryRouter router = new QueryRouterPourEviterRag();
+        //creation du queryrouter : decision locale par embeddings, la question n'est posee a Gemini
+        //que si la requete n'est ni clairement sur l'IA ni clairement hors sujet
+        QueryRouter router = RouteurEmbeddings.builder()
+                .embeddingModel(embeddingModelRequetes)
+                .retrieverDescriptions(Map.of(contentRetriever,
+                        "Intelligence artificielle, RAG (Retrieval Augmented Generation), fine tuning, " +
+                                "embeddings, recherche sémantique, modèles de langage et ingénierie des prompts."))
+                //pendant que Gemini tranche, la recherche tourne deja : si la reponse est "oui" elle est prete
+                .repli(RouteurSpeculatif.builder()
+                        .delegue(new QueryRouterPourEviterRag())
+                        .probables(List.of(contentRetriever))
+                        .build())
+                .build();
 
         //creation du retrieval augmentor avec builder
         RetrievalAugmentor retrievalAugmentor = DefaultRetrievalAugmentor.builder()
                 .queryRouter(router)
+                .contentAggregator(AgregateurBudgete.builder().build())
                 .build();
 
         AssistantPasRAG assistant = AiServices.builder(AssistantPasRAG.class)
@@ -92,6 +115,14 @@ public class TestPasRag {
                 .retrievalAugmentor(retrievalAugmentor)
                 .build();
 
+        //cache semantique devant l'assistant (sans memoire) : meme question ou paraphrase sur le meme index
+        //-> pas d'appel a Gemini
+        CacheSemantique cache = CacheSemantique.builder()
+                .embeddingModel(embeddingModelRequetes)
+                .stores(List.of(embeddingStore1))
+                .build();
+        AssistantPasRAG assistantAvecCache = question -> cache.repondre(question, assistant::chat);
+
         // Questions en temps réel
         try (Scanner scanner = new Scanner(System.in)) {
             while (true) {
@@ -105,10 +136,11 @@ public class TestPasRag {
                 if ("fin".equalsIgnoreCase(question)) {
                     break;
                 }
-                String reponse = assistant.chat(question);
+                String reponse = assistantAvecCache.chat(question);
                 System.out.println("Assistant : " + reponse);
                 System.out.println("==================================================");
             }
         }
+        journal.close();
     }
 }
\ No newline at end of file
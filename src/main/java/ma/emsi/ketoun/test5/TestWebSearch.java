@@ -1,29 +1,25 @@
 package ma.emsi.ketoun.test5;
 
-import dev.langchain4j.data.document.Document;
-import dev.langchain4j.data.document.DocumentParser;
-import dev.langchain4j.data.document.DocumentSplitter;
-import dev.langchain4j.data.document.loader.FileSystemDocumentLoader;
-import dev.langchain4j.data.document.parser.apache.tika.ApacheTikaDocumentParser;
-import dev.langchain4j.data.document.splitter.DocumentSplitters;
-import dev.langchain4j.data.embedding.Embedding;
 import dev.langchain4j.data.segment.TextSegment;
-import dev.langchain4j.memory.chat.MessageWindowChatMemory;
 import dev.langchain4j.model.embedding.EmbeddingModel;
 import dev.langchain4j.model.embedding.onnx.allminilml6v2.AllMiniLmL6V2EmbeddingModel;
 import dev.langchain4j.model.googleai.GoogleAiGeminiChatModel;
-import dev.langchain4j.model.output.Response;
 import dev.langchain4j.rag.DefaultRetrievalAugmentor;
 import dev.langchain4j.rag.RetrievalAugmentor;
 import dev.langchain4j.rag.content.retriever.ContentRetriever;
 import dev.langchain4j.rag.content.retriever.EmbeddingStoreContentRetriever;
 import dev.langchain4j.rag.content.retriever.WebSearchContentRetriever;
 import dev.langchain4j.rag.query.router.DefaultQueryRouter;
+import dev.langchain4j.rag.query.router.QueryRouter;
 import dev.langchain4j.service.AiServices;
 import dev.langchain4j.store.embedding.EmbeddingStore;
-import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
 import dev.langchain4j.web.search.WebSearchEngine;
 import ma.emsi.ketoun.Interfaces.Assistant;
+import ma.emsi.ketoun.cache.WebSearchEngineEnCache;
+import ma.emsi.ketoun.contexte.AgregateurBudgete;
+import ma.emsi.ketoun.memoire.MemoireResumee;
+import ma.emsi.ketoun.routage.RouteurParallele;
+import ma.emsi.ketoun.store.IndexEmbeddings;
 import dev.langchain4j.web.search.tavily.TavilyWebSearchEngine;
 
 
@@ -31,7 +27,7 @@ import java.net.URISyntaxException;
 import java.net.URL;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.List;
+import java.time.Duration;
 import java.util.Scanner;
 
 public class TestWebSearch {
@@ -61,30 +57,11 @@ public class TestWebSearch {
         //recuperation du fichier
         Path pathRessource = getPathRessource("/rag.pdf");
 
-        //creation du parser pour PDF
-        DocumentParser documentParser = new ApacheTikaDocumentParser();
-
-        //chargement du fichier avec le parser en param
-        Document document = FileSystemDocumentLoader.loadDocument(pathRessource, documentParser);
-
-        //creation du document splitter pour decouper le fichier 30 pour overlap comme demandee
-        DocumentSplitter documentSplitter = DocumentSplitters.recursive(300, 30);
-
-        //list des segments de type textsegment
-        List<TextSegment> segments = documentSplitter.split(document);
-
         //creation du model d'embedding
         EmbeddingModel embeddingModel = new AllMiniLmL6V2EmbeddingModel();
 
-        //creation des embeddings pour les segments
-        Response<List<Embedding>> embeddingsResponse = embeddingModel.embedAll(segments);
-        List<Embedding> embeddings = embeddingsResponse.content();
-
-        //creation du magasin d'embeddings en memoire
-        EmbeddingStore<TextSegment> embeddingStore = new InMemoryEmbeddingStore<>();
-
-        //ajout des embeddings avec leurs segments
-        embeddingStore.addAll(embeddings, segments);
+        //magasin d'embeddings : index persistant remappe si le pdf n'a pas change (parse 300/30 + embed sinon)
+        EmbeddingStore<TextSegment> embeddingStore = IndexEmbeddings.chargerOuCreer(pathRessource, embeddingModel);
 
 
         //Phase 2 :
@@ -97,9 +74,13 @@ public class TestWebSearch {
                 .build();
 
         // declaration du webseach
-        WebSearchEngine tavilyWebSearchEngine = TavilyWebSearchEngine
-                .builder()
-                .apiKey(tavilyKey)
+        //cache devant Tavily : requetes repetees servies localement (1 h, aussi sur disque), doublons simultanes fusionnes
+        WebSearchEngine tavilyWebSearchEngine = WebSearchEngineEnCache.builder()
+                .delegue(TavilyWebSearchEngine.builder()
+                        .apiKey(tavilyKey)
+                        .build())
+                .ttl(Duration.ofHours(1))
+                .repertoire(IndexEmbeddings.repertoire().resolve("web"))
                 .build();
 
         //creation du content retriever avec le websearch retriever
@@ -109,16 +90,29 @@ public class TestWebSearch {
                 .build();
 
 
-        //declaration du queryrouter
-        DefaultQueryRouter queryRouter = new DefaultQueryRouter(contentRetriever, webSearchContentRetriever);
+        //declaration du queryrouter : pdf et web interroges en parallele, chacun avec son delai
+        QueryRouter queryRouter = RouteurParallele.builder()
+                .delegue(new DefaultQueryRouter(contentRetriever, webSearchContentRetriever))
+                .delai(contentRetriever, Duration.ofSeconds(1))
+                .delai(webSearchContentRetriever, Duration.ofSeconds(3))
+                .delaiGlobal(Duration.ofSeconds(3))
+                .build();
 
         //creation du retrieval augmentor avec builder
+        //les 3 resultats Tavily peuvent etre longs : contexte borne a 800 tokens, stats affichees a chaque question
         RetrievalAugmentor retrievalAugmentor = DefaultRetrievalAugmentor.builder()
                 .queryRouter(queryRouter)
+                .contentAggregator(AgregateurBudgete.builder()
+                        .budgetTokens(800)
+                        .ecouteur(statistiques -> System.out.println("Contexte : " + statistiques))
+                        .build())
                 .build();
 
-        //creation de memoire de 10 msgs
-        MessageWindowChatMemory chatMemory = MessageWindowChatMemory.withMaxMessages(10);
+        //memoire bornee en tokens : les anciens tours sont resumes en arriere-plan par le meme modele
+        MemoireResumee chatMemory = MemoireResumee.builder()
+                .resumeur(model)
+                .budgetTokens(2000)
+                .build();
 
 
         //creation de lassistant
@@ -0,0 +1,99 @@
+package ma.emsi.ketoun.test6;
+
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.memory.chat.MessageWindowChatMemory;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.embedding.onnx.allminilml6v2.AllMiniLmL6V2EmbeddingModel;
+import dev.langchain4j.model.googleai.GoogleAiGeminiStreamingChatModel;
+import dev.langchain4j.rag.content.retriever.ContentRetriever;
+import dev.langchain4j.rag.content.retriever.EmbeddingStoreContentRetriever;
+import dev.langchain4j.service.AiServices;
+import dev.langchain4j.service.TokenStream;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import ma.emsi.ketoun.Interfaces.AssistantPasRAGStreaming;
+import ma.emsi.ketoun.Interfaces.AssistantStreaming;
+import ma.emsi.ketoun.cache.EmbeddingModelEnCache;
+import ma.emsi.ketoun.metriques.EcouteurMetriquesChat;
+import ma.emsi.ketoun.metriques.RegistreMetriques;
+import ma.emsi.ketoun.streaming.LecteurStreaming;
+import ma.emsi.ketoun.streaming.MesureStreaming;
+import ma.emsi.ketoun.test3.TestRoutage;
+
+import java.util.List;
+import java.util.Scanner;
+import java.util.function.Function;
+
+//meme RAG que RagNaif mais la reponse s'affiche au fil des tokens
+//argument "pasrag" : assistant IA sans retriever (prompt systeme de AssistantPasRAG)
+public class TestStreaming {
+
+    public static void main(String[] args) {
+
+        //retrait de la cle du env local
+        String apiKey = System.getenv("GEMINI_KEY");
+        if (apiKey == null) {
+            System.err.println("No Key!");
+            return;
+        }
+
+        // Creation du Model de streaming avec le builder
+        GoogleAiGeminiStreamingChatModel model = GoogleAiGeminiStreamingChatModel.builder()
+                .apiKey(apiKey)
+                .modelName("gemini-2.5-flash")
+                .temperature(0.7)
+                .listeners(List.of(new EcouteurMetriquesChat()))
+                .build();
+
+        Function<String, TokenStream> assistant;
+        if (args.length > 0 && "pasrag".equalsIgnoreCase(args[0])) {
+            AssistantPasRAGStreaming assistantPasRag = AiServices.builder(AssistantPasRAGStreaming.class)
+                    .streamingChatModel(model)
+                    .build();
+            assistant = assistantPasRag::chat;
+        } else {
+            //creation du model d'embedding et du store (index persistant)
+            EmbeddingModel embeddingModel = new AllMiniLmL6V2EmbeddingModel();
+            EmbeddingStore<TextSegment> embeddingStore = TestRoutage.creerEmbeddingStore("/rag.pdf", embeddingModel);
+
+            ContentRetriever contentRetriever = EmbeddingStoreContentRetriever.builder()
+                    .embeddingStore(embeddingStore)
+                    .embeddingModel(new EmbeddingModelEnCache(embeddingModel, 1000))
+                    .maxResults(2)
+                    .minScore(0.5)
+                    .build();
+
+            //creation de lassistant avec memoire de 10 msgs
+            AssistantStreaming assistantRag = AiServices.builder(AssistantStreaming.class)
+                    .streamingChatModel(model)
+                    .contentRetriever(contentRetriever)
+                    .chatMemory(MessageWindowChatMemory.withMaxMessages(10))
+                    .build();
+            assistant = assistantRag::chat;
+        }
+
+        //questions en temps reel
+        try (Scanner scanner = new Scanner(System.in)) {
+            while (true) {
+                System.out.println("==================================================");
+                System.out.println("Posez votre question : ");
+                String question = scanner.nextLine();
+                if (question.isBlank()) {
+                    continue;
+                }
+                System.out.println("==================================================");
+                if ("fin".equalsIgnoreCase(question)) {
+                    break;
+                }
+                //latences et tokens depuis le demarrage
+                if ("metriques".equalsIgnoreCase(question)) {
+                    RegistreMetriques.global().afficher(System.out);
+                    continue;
+                }
+                System.out.print("Assistant : ");
+                MesureStreaming mesure = LecteurStreaming.afficher(() -> assistant.apply(question), System.out);
+                System.out.println("(" + mesure + ")");
+                System.out.println("==================================================");
+            }
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package ma.emsi.ketoun.test7;
+
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.embedding.onnx.allminilml6v2.AllMiniLmL6V2EmbeddingModel;
+import dev.langchain4j.model.googleai.GoogleAiGeminiChatModel;
+import dev.langchain4j.rag.content.retriever.ContentRetriever;
+import dev.langchain4j.rag.content.retriever.EmbeddingStoreContentRetriever;
+import dev.langchain4j.service.AiServices;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import ma.emsi.ketoun.Interfaces.AssistantSession;
+import ma.emsi.ketoun.cache.EmbeddingModelEnCache;
+import ma.emsi.ketoun.demarrage.ChronologieDemarrage;
+import ma.emsi.ketoun.demarrage.Prechauffage;
+import ma.emsi.ketoun.embedding.EmbeddingModelParLots;
+import ma.emsi.ketoun.metriques.EcouteurMetriquesChat;
+import ma.emsi.ketoun.serveur.ServeurAssistant;
+import ma.emsi.ketoun.serveur.StockSessions;
+import ma.emsi.ketoun.store.IndexEmbeddings;
+import ma.emsi.ketoun.store.MappedEmbeddingStore;
+import ma.emsi.ketoun.test3.TestRoutage;
+import ma.emsi.ketoun.util.ChatModelFactice;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+//le RAG de RagNaif servi en HTTP a plusieurs utilisateurs a la fois
+//modeles, store et retriever sont construits une seule fois et partages, seule la memoire est par session
+//arguments : [port=8080] [--factice] (modele local sans cle, pour les tests de charge avec GenerateurCharge)
+//            [--entrainement] (demarre, prechauffe puis quitte : run d'entrainement de l'archive CDS, voir cds.sh)
+//demarrage rapide : modele ONNX et store se chargent en parallele, embedding, recherche, assistant et HTTP sont
+//prechauffes avant d'annoncer le serveur pret, et la chronologie du demarrage est affichee
+public class ServeurRag {
+
+    public static void main(String[] args) {
+        ChronologieDemarrage chronologie = ChronologieDemarrage.depuisJvm();
+        List<String> arguments = Arrays.asList(args);
+        boolean factice = arguments.contains("--factice");
+        boolean entrainement = arguments.contains("--entrainement");
+        int port = arguments.stream()
+                .filter(a -> !a.startsWith("--"))
+                .findFirst()
+                .map(Integer::parseInt)
+                .orElse(8080);
+
+        //chargements lents en parallele ; le store n'attend le modele que si l'index est a refaire
+        CompletableFuture<EmbeddingModel> chargementModele = chronologie.enParallele("modele ONNX",
+                AllMiniLmL6V2EmbeddingModel::new);
+        Path pdf = TestRoutage.getPathRessource("/rag.pdf");
+        CompletableFuture<MappedEmbeddingStore> chargementStore = chronologie.enParallele("store rag.pdf",
+                () -> IndexEmbeddings.chargerOuCreer(pdf, AllMiniLmL6V2EmbeddingModel.class, chargementModele::join));
+        //Tika n'est utile au demarrage que si l'index est a refaire, et le store le charge alors lui-meme pendant
+        //que le modele ONNX se charge ; le precharger a cote ralentit le chemin critique sur une petite machine.
+        //le run d'entrainement le charge pour que l'archive CDS contienne ses classes
+        CompletableFuture<Void> chargementTika = entrainement ? chronologie.enParallele("tika", () -> {
+            Prechauffage.tika();
+            return null;
+        }) : null;
+
+        ChatModel model;
+        if (factice) {
+            model = new ChatModelFactice(Duration.ofMillis(200));
+        } else {
+            //retrait de la cle du env local
+            String apiKey = System.getenv("GEMINI_KEY");
+            if (apiKey == null) {
+                System.err.println("No Key!");
+                return;
+            }
+            model = chronologie.etape("modele de chat", () -> GoogleAiGeminiChatModel.builder()
+                    .apiKey(apiKey)
+                    .modelName("gemini-2.5-flash")
+                    .temperature(0.7)
+                    .listeners(List.of(new EcouteurMetriquesChat()))
+                    .build());
+        }
+
+        //model d'embedding et store (index persistant)
+        EmbeddingModel embeddingModel = chronologie.attendre("modele ONNX", chargementModele);
+        EmbeddingStore<TextSegment> embeddingStore = chronologie.attendre("store rag.pdf", chargementStore);
+
+        //les questions concurrentes sont embeddees par lots (3 ms d'attente max) plutot qu'une par une
+        EmbeddingModelParLots embeddingModelParLots = EmbeddingModelParLots.builder()
+                .delegue(embeddingModel)
+                .build();
+
+        ContentRetriever contentRetriever = EmbeddingStoreContentRetriever.builder()
+                .embeddingStore(embeddingStore)
+                .embeddingModel(new EmbeddingModelEnCache(embeddingModelParLots, 1000))
+                .maxResults(2)
+                .minScore(0.5)
+                .build();
+
+        //une memoire de 10 msgs par session, 10000 sessions max, oubliees apres 30 min d'inactivite
+        StockSessions sessions = new StockSessions(10_000, Duration.ofMinutes(30));
+
+        AssistantSession assistant = chronologie.etape("assistant", () -> AiServices.builder(AssistantSession.class)
+                .chatModel(model)
+                .contentRetriever(contentRetriever)
+                .chatMemoryProvider(sessions)
+                .build());
+        //une session evincee du stock doit aussi l'etre de la table des memoires d'AiServices
+        sessions.surEviction(assistant::evictChatMemory);
+
+        //la premiere requete ne doit pas payer l'initialisation ONNX ni le JIT : embedding (par le chemin par lots
+        //des requetes, sans remplir leur cache) et recherche sur des questions synthetiques, puis la chaine complete
+        //sur un assistant jetable (sessions a part, modele de chat local : aucun appel a Gemini)
+        chronologie.etape("prechauffage embedding", () -> Prechauffage.embeddingEtRecherche(
+                embeddingModelParLots, embeddingStore, 20, Duration.ofMillis(500)));
+        chronologie.etape("prechauffage assistant", () -> {
+            AssistantSession assistantJetable = AiServices.builder(AssistantSession.class)
+                    .chatModel(new ChatModelFactice(Duration.ZERO))
+                    .contentRetriever(EmbeddingStoreContentRetriever.builder()
+                            .embeddingStore(embeddingStore)
+                            .embeddingModel(embeddingModelParLots)
+                            .maxResults(2)
+                            .minScore(0.5)
+                            .build())
+                    .chatMemoryProvider(new StockSessions(10, Duration.ofMinutes(1)))
+                    .build();
+            return Prechauffage.questions(question -> assistantJetable.chat("prechauffage", question),
+                    20, Duration.ofSeconds(1));
+        });
+        if (entrainement) {
+            chronologie.attendre("tika", chargementTika);
+        }
+
+        ServeurAssistant serveur = chronologie.etape("http", () -> new ServeurAssistant(port, assistant, sessions).demarrer());
+        chronologie.etape("prechauffage http", () -> Prechauffage.http(serveur.port()));
+        chronologie.pret();
+        chronologie.afficher(System.out);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            serveur.close();
+            embeddingModelParLots.close();
+            System.out.println(embeddingModelParLots);
+        }));
+        System.out.println("Serveur pret sur http://localhost:" + serveur.port() + " (POST /chat?session=<id>, GET /sante, GET /metriques)");
+        if (entrainement) {
+            System.exit(0);
+        }
+    }
+}
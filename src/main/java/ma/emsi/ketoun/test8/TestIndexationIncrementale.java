@@ -0,0 +1,69 @@
+package ma.emsi.ketoun.test8;
+
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.embedding.onnx.allminilml6v2.AllMiniLmL6V2EmbeddingModel;
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.content.retriever.ContentRetriever;
+import dev.langchain4j.rag.content.retriever.EmbeddingStoreContentRetriever;
+import dev.langchain4j.rag.query.Query;
+import ma.emsi.ketoun.ingestion.IndexeurIncremental;
+import ma.emsi.ketoun.store.FloatArrayEmbeddingStore;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Scanner;
+
+//index vivant d'un repertoire de documents : modifier, ajouter ou supprimer un fichier pendant l'execution
+//ne re-embedde que les segments touches ; les questions voient toujours un index complet
+//argument : repertoire des documents (defaut ./documents)
+public class TestIndexationIncrementale {
+
+    public static void main(String[] args) {
+        Path repertoire = Path.of(args.length > 0 ? args[0] : "documents");
+        if (!Files.isDirectory(repertoire)) {
+            System.err.println("Repertoire introuvable : " + repertoire.toAbsolutePath());
+            return;
+        }
+
+        EmbeddingModel embeddingModel = new AllMiniLmL6V2EmbeddingModel();
+        FloatArrayEmbeddingStore embeddingStore = new FloatArrayEmbeddingStore();
+
+        ContentRetriever contentRetriever = EmbeddingStoreContentRetriever.builder()
+                .embeddingStore(embeddingStore)
+                .embeddingModel(embeddingModel)
+                .maxResults(3)
+                .minScore(0.5)
+                .build();
+
+        try (IndexeurIncremental indexeur = IndexeurIncremental.builder()
+                .embeddingModel(embeddingModel)
+                .embeddingStore(embeddingStore)
+                .ecouteur(statistiques -> System.out.println("[index] " + statistiques))
+                .build()
+                .surveiller(repertoire);
+             Scanner scanner = new Scanner(System.in)) {
+            while (true) {
+                System.out.println("==================================================");
+                System.out.println("Posez votre question (" + embeddingStore.size() + " segments indexes) : ");
+                String question = scanner.nextLine();
+                if (question.isBlank()) {
+                    continue;
+                }
+                System.out.println("==================================================");
+                if ("fin".equalsIgnoreCase(question)) {
+                    break;
+                }
+                //resynchronisation complete a la demande (evenements perdus, disque reseau...)
+                if ("resync".equalsIgnoreCase(question)) {
+                    indexeur.synchroniserRepertoire(repertoire)
+                            .forEach(statistiques -> System.out.println("[index] " + statistiques));
+                    continue;
+                }
+                for (Content content : contentRetriever.retrieve(Query.from(question))) {
+                    System.out.println("- " + content.textSegment().text().replace('\n', ' '));
+                }
+                System.out.println("==================================================");
+            }
+        }
+    }
+}
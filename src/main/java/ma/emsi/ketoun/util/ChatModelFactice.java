@@ -0,0 +1,52 @@
+package ma.emsi.ketoun.util;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.chat.request.ChatRequest;
+import dev.langchain4j.model.chat.response.ChatResponse;
+import dev.langchain4j.model.output.FinishReason;
+import dev.langchain4j.model.output.TokenUsage;
+
+import java.time.Duration;
+import java.util.List;
+
+//ChatModel local pour les tests de charge et les benchmarks : pas de cle, pas de reseau
+//repond apres une latence fixe en reprenant la derniere question
+public class ChatModelFactice implements ChatModel {
+
+    private final Duration latence;
+
+    public ChatModelFactice(Duration latence) {
+        this.latence = latence;
+    }
+
+    @Override
+    public ChatResponse doChat(ChatRequest chatRequest) {
+        if (!latence.isZero()) {
+            try {
+                Thread.sleep(latence);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+        }
+        List<ChatMessage> messages = chatRequest.messages();
+        String question = "";
+        int caracteres = 0;
+        for (ChatMessage message : messages) {
+            if (message instanceof UserMessage userMessage && userMessage.hasSingleText()) {
+                question = userMessage.singleText();
+                caracteres += question.length();
+            }
+        }
+        String reponse = "Reponse factice a : " + question;
+        //estimation grossiere : ~4 caracteres par token
+        return ChatResponse.builder()
+                .aiMessage(AiMessage.from(reponse))
+                .tokenUsage(new TokenUsage(caracteres / 4, reponse.length() / 4))
+                .finishReason(FinishReason.STOP)
+                .build();
+    }
+}
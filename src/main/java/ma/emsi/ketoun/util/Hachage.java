@@ -0,0 +1,48 @@
+package ma.emsi.ketoun.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+public final class Hachage {
+
+    private Hachage() {
+    }
+
+    //hash SHA-256 du contenu d'un fichier, lu par blocs pour ne pas tout charger en memoire
+    public static byte[] sha256(Path fichier) {
+        MessageDigest digest = nouveauDigest();
+        byte[] tampon = new byte[64 * 1024];
+        try (InputStream in = Files.newInputStream(fichier)) {
+            int lus;
+            while ((lus = in.read(tampon)) != -1) {
+                digest.update(tampon, 0, lus);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return digest.digest();
+    }
+
+    public static byte[] sha256(String texte) {
+        return nouveauDigest().digest(texte.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static String hex(byte[] hash) {
+        return HexFormat.of().formatHex(hash);
+    }
+
+    private static MessageDigest nouveauDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package ma.emsi.ketoun.util;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.segment.TextSegment;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+//encodage binaire compact d'un TextSegment (texte + metadonnees typees)
+public final class SegmentsBinaires {
+
+    private static final byte TYPE_STRING = 'S';
+    private static final byte TYPE_INTEGER = 'I';
+    private static final byte TYPE_LONG = 'L';
+    private static final byte TYPE_FLOAT = 'F';
+    private static final byte TYPE_DOUBLE = 'D';
+    private static final byte TYPE_UUID = 'U';
+
+    private SegmentsBinaires() {
+    }
+
+    public static void ecrire(TextSegment segment, DataOutput out) throws IOException {
+        ecrireChaine(segment.text(), out);
+        Map<String, Object> metadonnees = segment.metadata().toMap();
+        out.writeInt(metadonnees.size());
+        for (Map.Entry<String, Object> entree : metadonnees.entrySet()) {
+            ecrireChaine(entree.getKey(), out);
+            Object valeur = entree.getValue();
+            if (valeur instanceof Integer i) {
+                out.writeByte(TYPE_INTEGER);
+                out.writeInt(i);
+            } else if (valeur instanceof Long l) {
+                out.writeByte(TYPE_LONG);
+                out.writeLong(l);
+            } else if (valeur instanceof Float f) {
+                out.writeByte(TYPE_FLOAT);
+                out.writeFloat(f);
+            } else if (valeur instanceof Double d) {
+                out.writeByte(TYPE_DOUBLE);
+                out.writeDouble(d);
+            } else if (valeur instanceof UUID u) {
+                out.writeByte(TYPE_UUID);
+                out.writeLong(u.getMostSignificantBits());
+                out.writeLong(u.getLeastSignificantBits());
+            } else {
+                out.writeByte(TYPE_STRING);
+                ecrireChaine(String.valueOf(valeur), out);
+            }
+        }
+    }
+
+    //lecture a partir de la position courante du buffer (qui avance)
+    public static TextSegment lire(ByteBuffer in) {
+        String texte = lireChaine(in);
+        int nombre = in.getInt();
+        Map<String, Object> metadonnees = new HashMap<>(nombre * 2);
+        for (int i = 0; i < nombre; i++) {
+            String cle = lireChaine(in);
+            byte type = in.get();
+            Object valeur = switch (type) {
+                case TYPE_INTEGER -> in.getInt();
+                case TYPE_LONG -> in.getLong();
+                case TYPE_FLOAT -> in.getFloat();
+                case TYPE_DOUBLE -> in.getDouble();
+                case TYPE_UUID -> new UUID(in.getLong(), in.getLong());
+                case TYPE_STRING -> lireChaine(in);
+                default -> throw new IllegalStateException("Type de metadonnee inconnu : " + type);
+            };
+            metadonnees.put(cle, valeur);
+        }
+        return TextSegment.from(texte, Metadata.from(metadonnees));
+    }
+
+    private static void ecrireChaine(String valeur, DataOutput out) throws IOException {
+        byte[] octets = valeur.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(octets.length);
+        out.write(octets);
+    }
+
+    private static String lireChaine(ByteBuffer in) {
+        byte[] octets = new byte[in.getInt()];
+        in.get(octets);
+        return new String(octets, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,54 @@
+package ma.emsi.ketoun.util;
+
+import dev.langchain4j.web.search.WebSearchEngine;
+import dev.langchain4j.web.search.WebSearchInformationResult;
+import dev.langchain4j.web.search.WebSearchOrganicResult;
+import dev.langchain4j.web.search.WebSearchRequest;
+import dev.langchain4j.web.search.WebSearchResults;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+//WebSearchEngine local pour les tests et les benchmarks : pas de cle Tavily, pas de reseau
+//repond apres une latence fixe avec des resultats deduits de la requete, et compte les appels recus
+public class WebSearchEngineFactice implements WebSearchEngine {
+
+    private final Duration latence;
+    private final AtomicLong appels = new AtomicLong();
+
+    public WebSearchEngineFactice(Duration latence) {
+        this.latence = latence;
+    }
+
+    @Override
+    public WebSearchResults search(WebSearchRequest webSearchRequest) {
+        appels.incrementAndGet();
+        if (!latence.isZero()) {
+            try {
+                Thread.sleep(latence);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+        }
+        int nombre = webSearchRequest.maxResults() == null ? 5 : webSearchRequest.maxResults();
+        String termes = webSearchRequest.searchTerms();
+        List<WebSearchOrganicResult> resultats = new ArrayList<>(nombre);
+        for (int i = 0; i < nombre; i++) {
+            resultats.add(WebSearchOrganicResult.from("Resultat " + (i + 1) + " pour " + termes,
+                    URI.create("https://exemple.test/" + Math.abs(termes.hashCode()) + "/" + i),
+                    "Extrait " + (i + 1) + " sur " + termes,
+                    "Contenu factice numero " + (i + 1) + " a propos de : " + termes,
+                    Map.of("source", "factice")));
+        }
+        return WebSearchResults.from(WebSearchInformationResult.from((long) nombre), resultats);
+    }
+
+    public long appels() {
+        return appels.get();
+    }
+}